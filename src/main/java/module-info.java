@@ -65,6 +65,9 @@
  * @since 0.0.1
  */
 module org.piengine.util {
+	requires jdk.jfr;
+
 	exports org.piengine.util;
+	exports org.piengine.util.concurrent;
 	exports org.piengine.util.concurrent.locks;
 }
\ No newline at end of file
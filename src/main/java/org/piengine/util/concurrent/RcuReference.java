@@ -0,0 +1,699 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.piengine.util.concurrent.locks.Lockable;
+import org.piengine.util.concurrent.locks.Locked;
+
+/**
+ * A read-copy-update reference, for large and mostly immutable structures such
+ * as material tables and spatial indexes. Readers never block: they enter a
+ * read-side critical section, which only increments a striped counter, and use
+ * whatever version is current. Writers copy, modify and publish a new version,
+ * serialized by a writer mutex.
+ *
+ * <p>
+ * A grace period ends once every reader that could have seen an old version
+ * has left its critical section. {@link #synchronize()} waits for one, after
+ * which versions unpublished before the call are unreachable from readers. If
+ * a reclaimer is given, old versions are handed to it after their grace period,
+ * so that pooled buffers can be recycled.
+ * </p>
+ *
+ * <pre>{@code
+ * RcuReference<Materials> materials = new RcuReference<>(initial, pool::recycle);
+ *
+ * Material m = materials.read(t -> t.lookup(id));
+ * materials.update(t -> t.with(id, material));
+ * }</pre>
+ *
+ * <p>
+ * The write side is available as a {@link Lockable}, see {@link #lockable()},
+ * so that existing call sites can migrate: {@link #set(Object)} within its
+ * write lock publishes a version, and the old versions published under the
+ * lock are reclaimed after a single grace period once the outermost write
+ * lock is released. Its read lock enters a read-side critical section and
+ * never blocks.
+ * A thread must not wait for a grace period, or release a write lock with
+ * versions to reclaim, from within its own read-side critical section.
+ * </p>
+ *
+ * @param <T> the value type
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class RcuReference<T> {
+
+	/**
+	 * The Class ReadLock. Read-side critical sections through the {@link Lock}
+	 * interface, remembering the phase entered per thread. Nested sections
+	 * enter the phase of the outermost one, so that a thread never has
+	 * sections open in both phases and each unlock exits the phase its section
+	 * entered.
+	 */
+	private final class ReadLock implements Lock {
+
+		/** The per thread critical section counts, by phase. */
+		private final ThreadLocal<int[]> nesting = ThreadLocal.withInitial(() -> new int[2]);
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			int[] counts = nesting.get();
+			if (counts[0] > 0)
+				counts[enter(0)]++;
+			else if (counts[1] > 0)
+				counts[enter(1)]++;
+			else
+				counts[enter()]++;
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() {
+			lock();
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, always
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			lock();
+			return true;
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, always
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) {
+			lock();
+			return true;
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			int[] counts = nesting.get();
+			int phase = (counts[0] > 0) ? 0 : 1;
+			if (counts[phase] == 0)
+				throw new IllegalMonitorStateException("Thread is not in a read-side critical section");
+
+			counts[phase]--;
+			exit(phase);
+		}
+	}
+
+	/**
+	 * The Class WriteLock. Serializes writers and reclaims the versions they
+	 * unpublished once the outermost hold is released.
+	 */
+	private final class WriteLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			mutex.lock();
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			mutex.lockInterruptibly();
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			return mutex.newCondition();
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			return mutex.tryLock();
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			return mutex.tryLock(time, unit);
+		}
+
+		/**
+		 * Unlock. On the outermost hold, waits for a grace period after the
+		 * mutex is released and then reclaims the unpublished versions.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (!mutex.isHeldByCurrentThread())
+				throw new IllegalMonitorStateException("Thread does not hold write lock");
+
+			List<T> reclaim = null;
+			if (mutex.getHoldCount() == 1 && !retired.isEmpty()) {
+				reclaim = new ArrayList<>(retired);
+				retired.clear();
+			}
+			mutex.unlock();
+
+			if (reclaim != null) {
+				synchronize();
+				reclaim.forEach(reclaimer);
+			}
+		}
+	}
+
+	/**
+	 * The Class WriteSide. The {@link Lockable} view, for call sites migrating
+	 * from a read write lock.
+	 */
+	private final class WriteSide implements Lockable<Locked, Locked> {
+
+		/**
+		 * Lock for read. Enters a read-side critical section, which never blocks.
+		 *
+		 * @return the locked
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead()
+		 */
+		@Override
+		public Locked lockForRead() {
+			return readLocked[enter()];
+		}
+
+		/**
+		 * Lock for read. Enters a read-side critical section, which never blocks.
+		 *
+		 * @param timeout the timeout, not used
+		 * @param unit    the unit
+		 * @return the locked
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForRead(long timeout, TimeUnit unit) {
+			return readLocked[enter()];
+		}
+
+		/**
+		 * Lock for upgrade. Readers never block, so this is the write lock.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade()
+		 */
+		@Override
+		public Locked lockForUpgrade() throws InterruptedException {
+			return lockForWrite();
+		}
+
+		/**
+		 * Lock for upgrade. Readers never block, so this is the write lock.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForUpgrade(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			return lockForWrite(timeout, unit);
+		}
+
+		/**
+		 * Lock for write. Serializes writers; readers are not blocked.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite()
+		 */
+		@Override
+		public Locked lockForWrite() throws InterruptedException {
+			writeLock.lockInterruptibly();
+
+			return writeLocked;
+		}
+
+		/**
+		 * Lock for write.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!writeLock.tryLock(timeout, unit))
+				throw new TimeoutException();
+
+			return writeLocked;
+		}
+
+		/**
+		 * Read lock, entering read-side critical sections.
+		 *
+		 * @return the lock
+		 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+		 */
+		@Override
+		public Lock readLock() {
+			return readLock;
+		}
+
+		/**
+		 * Try optimistic read.
+		 *
+		 * @return the version of the current value
+		 * @see org.piengine.util.concurrent.locks.Lockable#tryOptimisticRead()
+		 */
+		@Override
+		public long tryOptimisticRead() {
+			return version;
+		}
+
+		/**
+		 * Validate.
+		 *
+		 * @param stamp the stamp
+		 * @return true, if no value has been published since the stamp was issued
+		 * @see org.piengine.util.concurrent.locks.Lockable#validate(long)
+		 */
+		@Override
+		public boolean validate(long stamp) {
+			return version == stamp;
+		}
+
+		/**
+		 * Write lock. The outermost release reclaims the versions unpublished under
+		 * the lock, after a grace period.
+		 *
+		 * @return the lock
+		 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+		 */
+		@Override
+		public Lock writeLock() {
+			return writeLock;
+		}
+	}
+
+	/** The number of longs between stripes, keeping each on its own cache line. */
+	private static final int STRIDE = 16;
+
+	/** Offset of the enter count of a phase within a stripe. */
+	private static final int ENTERS = 0;
+
+	/** Offset of the exit count of a phase within a stripe. */
+	private static final int EXITS = 1;
+
+	/** The maximum number of stripes. */
+	private static final int MAX_STRIPES = 64;
+
+	/** Spins while waiting for a grace period before yielding. */
+	private static final int SPINS = 256;
+
+	/** Yields while waiting for a grace period before parking. */
+	private static final int YIELDS = 64;
+
+	/** The park time while waiting for a grace period. */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Gets the stripe count, a power of two covering twice the available
+	 * processors.
+	 *
+	 * @return the stripe count
+	 */
+	private static int stripeCount() {
+		int n = Math.min(MAX_STRIPES, 2 * Runtime.getRuntime().availableProcessors());
+
+		return Integer.highestOneBit(n - 1) << 1;
+	}
+
+	/** The current value. */
+	private volatile T value;
+
+	/** The number of versions published, for optimistic reads. */
+	private volatile long version = 1L;
+
+	/** The phase new readers enter, flipped by each grace period. */
+	private volatile int phase;
+
+	/** The enter and exit counts, per stripe and phase. */
+	private final AtomicLongArray counts;
+
+	/** The stripe mask. */
+	private final int mask;
+
+	/** Serializes writers. */
+	private final ReentrantLock mutex = new ReentrantLock();
+
+	/** Serializes grace periods. */
+	private final ReentrantLock gracePeriod = new ReentrantLock();
+
+	/** The versions unpublished under the write lock, guarded by the mutex. */
+	private final List<T> retired = new ArrayList<>();
+
+	/** The reclaimer, or null if versions are left to the garbage collector. */
+	private final Consumer<? super T> reclaimer;
+
+	/** The read lock view. */
+	private final Lock readLock = new ReadLock();
+
+	/** The write lock view. */
+	private final Lock writeLock = new WriteLock();
+
+	/** The read locked tokens, by phase. */
+	private final Locked[] readLocked = {
+			() -> exit(0),
+			() -> exit(1)
+	};
+
+	/** The write locked. */
+	private final Locked writeLocked = () -> writeLock.unlock();
+
+	/** The lockable view. */
+	private final Lockable<Locked, Locked> lockable = new WriteSide();
+
+	/**
+	 * Instantiates a new RCU reference, leaving old versions to the garbage
+	 * collector.
+	 *
+	 * @param initial the initial value
+	 */
+	public RcuReference(T initial) {
+		this(initial, null);
+	}
+
+	/**
+	 * Instantiates a new RCU reference.
+	 *
+	 * @param initial   the initial value
+	 * @param reclaimer receives each old version once no reader can reach it,
+	 *                  or null
+	 */
+	public RcuReference(T initial, Consumer<? super T> reclaimer) {
+		int stripes = stripeCount();
+
+		this.value = initial;
+		this.reclaimer = reclaimer;
+		this.mask = stripes - 1;
+		this.counts = new AtomicLongArray(stripes * STRIDE);
+	}
+
+	/**
+	 * Gets the count index for the current thread.
+	 *
+	 * @param phase the phase
+	 * @param kind  {@link #ENTERS} or {@link #EXITS}
+	 * @return the index
+	 */
+	private int index(int phase, int kind) {
+		long h = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+
+		return ((int) (h >>> 32) & mask) * STRIDE + (phase << 1) + kind;
+	}
+
+	/**
+	 * Enters a read-side critical section.
+	 *
+	 * @return the phase entered
+	 */
+	private int enter() {
+		return enter(phase);
+	}
+
+	/**
+	 * Enters a read-side critical section in a given phase. Only safe for the
+	 * current phase, or for a phase the thread is already in, which a grace
+	 * period cannot complete without anyway.
+	 *
+	 * @param phase the phase
+	 * @return the phase entered
+	 */
+	private int enter(int phase) {
+		counts.getAndIncrement(index(phase, ENTERS)); // full fence before the value is read
+
+		return phase;
+	}
+
+	/**
+	 * Exits a read-side critical section.
+	 *
+	 * @param phase the phase entered
+	 */
+	private void exit(int phase) {
+		counts.getAndIncrement(index(phase, EXITS));
+	}
+
+	/**
+	 * Checks if no reader remains in a phase. Exits are summed before enters, so
+	 * that a reader moving between stripes cannot make the phase look drained.
+	 *
+	 * @param phase the phase
+	 * @return true, if drained
+	 */
+	private boolean isDrained(int phase) {
+		long exits = 0, enters = 0;
+		for (int i = (phase << 1) + EXITS; i < counts.length(); i += STRIDE)
+			exits += counts.get(i);
+		for (int i = (phase << 1) + ENTERS; i < counts.length(); i += STRIDE)
+			enters += counts.get(i);
+
+		return enters == exits;
+	}
+
+	/**
+	 * Waits for a grace period: every read-side critical section in progress
+	 * when called has completed on return. New readers enter the other phase,
+	 * so they cannot hold up the wait. The wait is not interruptible; the
+	 * interrupt status is preserved.
+	 */
+	public void synchronize() {
+		gracePeriod.lock();
+		try {
+			int old = phase;
+			phase = old ^ 1;
+
+			boolean interrupted = false;
+			for (int spins = 0; !isDrained(old); spins++) {
+				if (spins < SPINS)
+					Thread.onSpinWait();
+				else if (spins < SPINS + YIELDS)
+					Thread.yield();
+				else {
+					LockSupport.parkNanos(this, PARK_NANOS);
+					interrupted |= Thread.interrupted();
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		} finally {
+			gracePeriod.unlock();
+		}
+	}
+
+	/**
+	 * Gets the current value. Outside of a read-side critical section, a value
+	 * that is handed to a reclaimer may be recycled while still in use.
+	 *
+	 * @return the value
+	 */
+	public T get() {
+		return value;
+	}
+
+	/**
+	 * Applies a function to the current value within a read-side critical
+	 * section. Never blocks.
+	 *
+	 * @param <R>    the result type
+	 * @param reader the reader, which must not retain the value
+	 * @return the result
+	 */
+	public <R> R read(Function<? super T, ? extends R> reader) {
+		int p = enter();
+		try {
+			return reader.apply(value);
+		} finally {
+			exit(p);
+		}
+	}
+
+	/**
+	 * Publishes a new value. Under the write lock, the old value is reclaimed
+	 * when the outermost write lock is released; otherwise it is reclaimed before
+	 * returning.
+	 *
+	 * @param newValue the new value
+	 */
+	public void set(T newValue) {
+		writeLock.lock();
+		try {
+			publish(newValue);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Publishes the value computed from the current one, which must not be
+	 * modified in place. The old value is reclaimed as by {@link #set(Object)}.
+	 *
+	 * @param updater the updater
+	 * @return the new value
+	 */
+	public T update(UnaryOperator<T> updater) {
+		writeLock.lock();
+		try {
+			T newValue = updater.apply(value);
+			publish(newValue);
+
+			return newValue;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the {@link Lockable} view of this reference. Its write lock
+	 * serializes writers and reclaims what they unpublished; its read lock
+	 * enters a read-side critical section.
+	 *
+	 * @return the lockable
+	 */
+	public Lockable<Locked, Locked> lockable() {
+		return lockable;
+	}
+
+	/**
+	 * Publishes a value while holding the mutex, retiring the old one.
+	 *
+	 * @param newValue the new value
+	 */
+	private void publish(T newValue) {
+		T old = value;
+		if (old == newValue)
+			return;
+
+		value = newValue;
+		version++;
+
+		if (reclaimer != null && old != null)
+			retired.add(old);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "RcuReference [version=" + version + ", value=" + value + "]";
+	}
+}
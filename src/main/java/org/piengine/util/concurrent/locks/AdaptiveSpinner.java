@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded, adaptive spinning ahead of a blocking acquisition. Critical sections
+ * are often shorter than a park and unpark round trip, so a contended thread
+ * first waits actively for the lock to become free, and parks only if it does
+ * not within the spin budget.
+ *
+ * <p>
+ * The budget is learned per lock: successful spins pull it towards twice the
+ * number of iterations they needed, failed spins shrink it, so locks held for
+ * long stop spinning altogether. Virtual threads yield their carrier instead
+ * of spinning on it, for a few rounds only. On a single processor nothing
+ * spins.
+ * </p>
+ *
+ * <p>
+ * Budget updates are racy by design; a lost update only delays adaptation.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+final class AdaptiveSpinner {
+
+	/** Whether spinning can ever pay off on this machine. */
+	private static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+	/** The smallest spin budget, keeping adaptation possible. */
+	private static final int MIN_SPINS = 16;
+
+	/** The largest spin budget, a few microseconds on current hardware. */
+	private static final int MAX_SPINS = 4096;
+
+	/** The initial spin budget. */
+	private static final int INITIAL_SPINS = 256;
+
+	/** The maximum number of carrier yields for a virtual thread. */
+	private static final int MAX_YIELDS = 8;
+
+	/** The current spin budget. */
+	private int budget = INITIAL_SPINS;
+
+	/** The number of contended acquisitions that spun. */
+	private final LongAdder spins = new LongAdder();
+
+	/** The number of spins that ended with the lock free. */
+	private final LongAdder successes = new LongAdder();
+
+	/** The total number of spin iterations. */
+	private final LongAdder iterations = new LongAdder();
+
+	/**
+	 * Waits actively while {@code busy} reports the lock as held, within the
+	 * spin budget.
+	 *
+	 * @param busy reports whether the lock is still held
+	 * @return true, if the lock was observed free
+	 */
+	boolean spinWhile(BooleanSupplier busy) {
+		if (!busy.getAsBoolean())
+			return true;
+
+		if (!MULTIPROCESSOR)
+			return false;
+
+		spins.increment();
+
+		boolean virtual = Thread.currentThread().isVirtual();
+		int limit = virtual ? MAX_YIELDS : budget;
+		for (int i = 1; i <= limit; i++) {
+			if (virtual)
+				Thread.yield();
+			else
+				Thread.onSpinWait();
+
+			if (!busy.getAsBoolean()) {
+				iterations.add(i);
+				successes.increment();
+				if (!virtual)
+					budget = Math.min(MAX_SPINS, budget + ((2 * i - budget) >> 3) + 1);
+				return true;
+			}
+		}
+
+		iterations.add(limit);
+		if (!virtual)
+			budget = Math.max(MIN_SPINS, budget - (budget >> 2));
+		return false;
+	}
+
+	/**
+	 * Takes a snapshot of the spin statistics.
+	 *
+	 * @return the statistics
+	 */
+	SpinStats stats() {
+		return new SpinStats(budget, spins.sum(), successes.sum(), iterations.sum());
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Support for asynchronous lock acquisition. A contended acquisition waits on
+ * a virtual thread, so that it never blocks the caller, a carrier, or a
+ * platform worker. The future completes with a {@link Hold}, which belongs to
+ * no thread and may be released by any thread, exactly once.
+ *
+ * <p>
+ * Locks that track their holds per thread either detach the hold from the
+ * acquiring thread, see
+ * {@link UpgradableReadWriteLock#readLockAsync(Executor)}, or, for any other
+ * {@link Lockable}, keep the acquiring virtual thread parked as the owner until
+ * the hold is released, see {@link #holding(Callable, Executor)}.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+final class AsyncAcquisition {
+
+	/**
+	 * A lock hold owned by no particular thread, released at most once.
+	 */
+	static final class Hold implements Locked {
+
+		/** Releases the hold. */
+		private final Runnable release;
+
+		/** Whether the hold was released. */
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		/**
+		 * Instantiates a new hold.
+		 *
+		 * @param release releases the hold
+		 */
+		Hold(Runnable release) {
+			this.release = release;
+		}
+
+		/**
+		 * Close.
+		 *
+		 * @see org.piengine.util.concurrent.locks.Locked#close()
+		 */
+		@Override
+		public void close() {
+			unlock();
+		}
+
+		/**
+		 * Unlock, from any thread.
+		 *
+		 * @throws IllegalMonitorStateException if already unlocked
+		 * @see org.piengine.util.concurrent.locks.Locked#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (!released.compareAndSet(false, true))
+				throw new IllegalMonitorStateException("Hold already released");
+
+			release.run();
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Hold [released=" + released + "]";
+		}
+	}
+
+	/** Creates the virtual threads that wait for contended locks. */
+	private static final ThreadFactory WAITERS = Thread.ofVirtual().name("lock-async-", 0).factory();
+
+	/**
+	 * Waits for a latch, preserving the interrupt status.
+	 *
+	 * @param latch the latch
+	 */
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Completes a future with a hold, on the executor if given, or releases the
+	 * hold if the future was already completed or cancelled.
+	 *
+	 * @param future   the future
+	 * @param hold     the hold
+	 * @param executor the executor, or null to complete on the current thread
+	 */
+	private static void complete(CompletableFuture<Locked> future, Hold hold, Executor executor) {
+		if (executor == null) {
+			if (!future.complete(hold))
+				hold.unlock();
+			return;
+		}
+
+		try {
+			executor.execute(() -> {
+				if (!future.complete(hold))
+					hold.unlock();
+			});
+		} catch (RejectedExecutionException e) {
+			hold.unlock();
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Returns a future for a hold acquired without waiting.
+	 *
+	 * @param hold     the hold
+	 * @param executor the executor, or null to complete at once
+	 * @return the future
+	 */
+	static CompletableFuture<Locked> completed(Hold hold, Executor executor) {
+		CompletableFuture<Locked> future = new CompletableFuture<>();
+		complete(future, hold, executor);
+
+		return future;
+	}
+
+	/**
+	 * Acquires a lock on a virtual thread, which stays parked as the owner until
+	 * the hold is released and then releases the lock itself. Works with any
+	 * {@link Lockable}, at the cost of a parked virtual thread per hold.
+	 *
+	 * @param acquirer acquires the lock, blocking
+	 * @param executor the executor, or null to complete on the waiting thread
+	 * @return the future
+	 */
+	static CompletableFuture<Locked> holding(Callable<? extends Locked> acquirer, Executor executor) {
+		CompletableFuture<Locked> future = new CompletableFuture<>();
+
+		WAITERS.newThread(() -> {
+			Locked held;
+			try {
+				held = acquirer.call();
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+				return;
+			}
+
+			Thread owner = Thread.currentThread();
+			CountDownLatch released = new CountDownLatch(1);
+			CountDownLatch unlocked = new CountDownLatch(1);
+			Runnable unlock = () -> {
+				try {
+					held.unlock();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					unlocked.countDown();
+				}
+			};
+
+			complete(future, new Hold(() -> {
+				if (Thread.currentThread() == owner) {
+					// Released by a dependent stage running on the owner
+					unlock.run();
+					released.countDown();
+				} else {
+					released.countDown();
+					awaitUninterruptibly(unlocked);
+				}
+			}), executor);
+
+			awaitUninterruptibly(released);
+			if (unlocked.getCount() != 0)
+				unlock.run();
+		}).start();
+
+		return future;
+	}
+
+	/**
+	 * Acquires a lock on a virtual thread, which hands the detached hold to the
+	 * future and ends.
+	 *
+	 * @param acquirer acquires the lock, blocking, and detaches it from the
+	 *                 acquiring thread
+	 * @param executor the executor, or null to complete on the waiting thread
+	 * @return the future
+	 */
+	static CompletableFuture<Locked> detached(Callable<Hold> acquirer, Executor executor) {
+		CompletableFuture<Locked> future = new CompletableFuture<>();
+
+		WAITERS.newThread(() -> {
+			Hold hold;
+			try {
+				hold = acquirer.call();
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+				return;
+			}
+
+			complete(future, hold, executor);
+		}).start();
+
+		return future;
+	}
+
+	/**
+	 * Instantiates a new async acquisition.
+	 */
+	private AsyncAcquisition() {
+	}
+}
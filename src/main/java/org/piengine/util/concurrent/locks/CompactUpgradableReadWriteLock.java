@@ -0,0 +1,983 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A compact read-write lock with the same read, upgrade and write modes as
+ * {@link UpgradableReadWriteLock}, for data structures that need a lock per
+ * element, such as the nodes of a large scene graph.
+ *
+ * <p>
+ * The whole lock state is a single {@code long}, updated with a compare-and-set,
+ * plus a reference to the thread owning the upgrade or write lock, which fits
+ * into the alignment gap after the object header. With compressed references,
+ * an idle lock takes 24 bytes, no more than a boxed {@code Long}. Threads that
+ * have to wait do not inflate the lock itself, they park in a global table of
+ * wait queues shared by all compact locks, which a release only visits if a
+ * waiter flagged the lock.
+ * </p>
+ *
+ * <p>
+ * The {@link Lock} views returned by {@link #readLock()}, {@link #writeLock()}
+ * and {@link #upgradeLock()} are created on each call, so they do not add to the
+ * footprint of the lock. Code locking repeatedly should keep the views, as
+ * {@link Lockable.LockableSupport} does.
+ * </p>
+ *
+ * <p>
+ * The savings come at the price of what the compact lock cannot track:
+ * </p>
+ * <ul>
+ * <li>Read holds are not recorded per thread. A thread holding only the read
+ * lock must not acquire the upgrade or the write lock, as it would wait for
+ * itself. Take the upgrade lock up front for an atomic upgrade instead.</li>
+ * <li>Waiting threads are not ordered, like
+ * {@link UpgradableReadWriteLock.Policy#NON_FAIR}: new readers barge in as long
+ * as no writer holds the lock.</li>
+ * <li>There is no reader bias, no optimistic reading and no condition
+ * support.</li>
+ * </ul>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class CompactUpgradableReadWriteLock implements ReadWriteLock {
+
+	/**
+	 * The global wait queues. A waiting thread enqueues in the bucket of its lock
+	 * and flags the lock state, so that releases of locks without waiters never
+	 * touch the table.
+	 */
+	private static final class ParkingLot {
+
+		/**
+		 * A bucket of waiters for all locks hashing to it, in arrival order.
+		 */
+		private static final class Bucket {
+
+			/** Guards the queue. */
+			final ReentrantLock lock = new ReentrantLock();
+
+			/** The first waiter. */
+			Waiter head;
+
+			/** The last waiter. */
+			Waiter tail;
+
+			/**
+			 * Adds a waiter.
+			 *
+			 * @param w     the waiter
+			 * @param front whether to add it ahead of all others
+			 */
+			void enqueue(Waiter w, boolean front) {
+				if (head == null) {
+					head = tail = w;
+				} else if (front) {
+					w.next = head;
+					head = w;
+				} else {
+					tail.next = w;
+					tail = w;
+				}
+			}
+
+			/**
+			 * Checks if any thread waits for a lock.
+			 *
+			 * @param owner the lock
+			 * @return true, if a waiter of the lock is queued
+			 */
+			boolean hasWaiters(Object owner) {
+				for (Waiter w = head; w != null; w = w.next) {
+					if (w.owner == owner)
+						return true;
+				}
+				return false;
+			}
+
+			/**
+			 * Removes a waiter.
+			 *
+			 * @param w the waiter
+			 * @return true, if it was queued
+			 */
+			boolean remove(Waiter w) {
+				Waiter prev = null;
+				for (Waiter p = head; p != null; prev = p, p = p.next) {
+					if (p != w)
+						continue;
+
+					if (prev == null)
+						head = p.next;
+					else
+						prev.next = p.next;
+					if (tail == p)
+						tail = prev;
+					p.next = null;
+					return true;
+				}
+				return false;
+			}
+		}
+
+		/**
+		 * A parked thread.
+		 */
+		private static final class Waiter {
+
+			/** The lock waited for. */
+			final Object owner;
+
+			/** The mode waited for. */
+			final int mode;
+
+			/** The waiting thread. */
+			final Thread thread = Thread.currentThread();
+
+			/** The next waiter in the bucket. */
+			Waiter next;
+
+			/** Set once the waiter was dequeued to retry. */
+			volatile boolean woken;
+
+			/**
+			 * Instantiates a new waiter.
+			 *
+			 * @param owner the lock waited for
+			 * @param mode  the mode waited for
+			 */
+			Waiter(Object owner, int mode) {
+				this.owner = owner;
+				this.mode = mode;
+			}
+		}
+
+		/** The number of buckets, a power of two. */
+		private static final int SIZE = 256;
+
+		/** The buckets. */
+		private static final Bucket[] BUCKETS = new Bucket[SIZE];
+
+		static {
+			for (int i = 0; i < SIZE; i++)
+				BUCKETS[i] = new Bucket();
+		}
+
+		/**
+		 * Gets the bucket of a lock.
+		 *
+		 * @param lock the lock
+		 * @return the bucket
+		 */
+		private static Bucket bucket(Object lock) {
+			int h = System.identityHashCode(lock) * 0x9E3779B9;
+
+			return BUCKETS[(h >>> 24) & (SIZE - 1)];
+		}
+
+		/**
+		 * Parks the current thread until a release wakes it, the deadline passes
+		 * or it is interrupted.
+		 *
+		 * @param lock     the lock
+		 * @param mode     the mode waited for
+		 * @param front    whether to queue ahead of the other waiters, for threads
+		 *                 that were woken but lost the race for the lock
+		 * @param timed    whether the deadline applies
+		 * @param deadline the {@link System#nanoTime()} at which to give up
+		 * @return true, if woken by a release, or if the lock became free before
+		 *         the thread parked
+		 */
+		static boolean park(CompactUpgradableReadWriteLock lock, int mode, boolean front, boolean timed,
+				long deadline) {
+			Bucket b = bucket(lock);
+			Waiter w = new Waiter(lock, mode);
+
+			b.lock.lock();
+			try {
+				// Flag the lock before the last check, any release after it will visit us
+				if (!lock.flagWaitersIfBusy(mode))
+					return true;
+				b.enqueue(w, front);
+			} finally {
+				b.lock.unlock();
+			}
+
+			Thread current = w.thread;
+			while (!w.woken) {
+				if (timed) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0L)
+						break;
+					LockSupport.parkNanos(lock, remaining);
+				} else {
+					LockSupport.park(lock);
+				}
+
+				if (current.isInterrupted())
+					break;
+			}
+
+			if (w.woken)
+				return true;
+
+			b.lock.lock();
+			try {
+				if (!b.remove(w))
+					return true; // Woken concurrently
+
+				if (!b.hasWaiters(lock))
+					lock.clearWaiters();
+				return false;
+			} finally {
+				b.lock.unlock();
+			}
+		}
+
+		/**
+		 * Wakes the waiters of a lock that a release may have let through. A
+		 * converting upgrade lock owner goes first and alone. Otherwise either
+		 * the first waiting writer, or the readers and at most one upgrader
+		 * queued ahead of it.
+		 *
+		 * @param lock the lock
+		 */
+		static void unpark(CompactUpgradableReadWriteLock lock) {
+			Bucket b = bucket(lock);
+
+			b.lock.lock();
+			try {
+				Waiter first = null;
+				for (Waiter w = b.head; w != null; w = w.next) {
+					if (w.owner != lock)
+						continue;
+					if (w.mode == CONVERT) {
+						first = w;
+						break;
+					}
+					if (first == null)
+						first = w;
+				}
+
+				if (first == null) {
+					lock.clearWaiters();
+					return;
+				}
+
+				if (first.mode == CONVERT || first.mode == WRITE) {
+					wake(b, first);
+				} else {
+					boolean upgrader = false;
+					for (Waiter w = first, next; w != null; w = next) {
+						next = w.next;
+						if (w.owner != lock)
+							continue;
+						if (w.mode == WRITE)
+							break;
+						if (w.mode == UPGRADE) {
+							if (upgrader)
+								continue;
+							upgrader = true;
+						}
+						wake(b, w);
+					}
+				}
+
+				if (!b.hasWaiters(lock))
+					lock.clearWaiters();
+			} finally {
+				b.lock.unlock();
+			}
+		}
+
+		/**
+		 * Dequeues and unparks a waiter. Called holding the bucket lock.
+		 *
+		 * @param b the bucket
+		 * @param w the waiter
+		 */
+		private static void wake(Bucket b, Waiter w) {
+			b.remove(w);
+			w.woken = true;
+			LockSupport.unpark(w.thread);
+		}
+
+		/**
+		 * Not instantiable.
+		 */
+		private ParkingLot() {
+		}
+	}
+
+	/**
+	 * The Class ReadLock.
+	 */
+	private final class ReadLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			acquireUninterruptibly(READ);
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			acquire(READ, true, false, 0L);
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			return tryAcquire(Thread.currentThread(), READ);
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			return acquire(READ, true, true, unit.toNanos(time));
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			releaseRead();
+		}
+	}
+
+	/**
+	 * The Class UpgradeLock.
+	 */
+	private final class UpgradeLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			acquireUninterruptibly(UPGRADE);
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			acquire(UPGRADE, true, false, 0L);
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			return tryAcquire(Thread.currentThread(), UPGRADE);
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			return acquire(UPGRADE, true, true, unit.toNanos(time));
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			releaseUpgrade();
+		}
+	}
+
+	/**
+	 * The Class WriteLock. The upgrade lock owner converts to the write lock
+	 * atomically, once the readers have left.
+	 */
+	private final class WriteLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			acquireUninterruptibly(WRITE);
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			acquire(WRITE, true, false, 0L);
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			return tryAcquire(Thread.currentThread(), WRITE);
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			return acquire(WRITE, true, true, unit.toNanos(time));
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			releaseWrite();
+		}
+	}
+
+	/** The mask of the read hold count. */
+	private static final long READ_MASK = 0xFFFF_FFFFL;
+
+	/** Set while threads may be parked on this lock. */
+	private static final long WAITERS = 1L << 32;
+
+	/** The shift of the reentrant upgrade hold count. */
+	private static final int UPGRADE_SHIFT = 33;
+
+	/** One upgrade hold. */
+	private static final long UPGRADE_UNIT = 1L << UPGRADE_SHIFT;
+
+	/** The maximum upgrade hold count. */
+	private static final long MAX_UPGRADE = 0x7FFFL;
+
+	/** The mask of the upgrade hold count. */
+	private static final long UPGRADE_MASK = MAX_UPGRADE << UPGRADE_SHIFT;
+
+	/** The shift of the reentrant write hold count. */
+	private static final int WRITE_SHIFT = 48;
+
+	/** One write hold. */
+	private static final long WRITE_UNIT = 1L << WRITE_SHIFT;
+
+	/** The maximum write hold count. */
+	private static final long MAX_WRITE = 0xFFFFL;
+
+	/** Waits for the read lock. */
+	private static final int READ = 0;
+
+	/** Waits for the upgrade lock. */
+	private static final int UPGRADE = 1;
+
+	/** Waits for the write lock. */
+	private static final int WRITE = 2;
+
+	/** Waits, as the upgrade lock owner, for the readers to leave. */
+	private static final int CONVERT = 3;
+
+	/** Spins ahead of parking, shared by all compact locks. */
+	private static final AdaptiveSpinner SPINNER = new AdaptiveSpinner();
+
+	/** The state var handle. */
+	private static final VarHandle STATE;
+
+	static {
+		try {
+			STATE = MethodHandles.lookup().findVarHandle(CompactUpgradableReadWriteLock.class, "state", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * The lock state: the read hold count of all threads in the low 32 bits,
+	 * then the {@link #WAITERS} flag, the upgrade hold count and the write hold
+	 * count.
+	 */
+	private volatile long state;
+
+	/**
+	 * The owner of the upgrade or write lock. Only written by the owner, so that
+	 * any other thread reading it never mistakes itself for the owner.
+	 */
+	private Thread owner;
+
+	/**
+	 * Instantiates a new compact upgradable read write lock.
+	 */
+	public CompactUpgradableReadWriteLock() {
+	}
+
+	/**
+	 * Acquires the lock in a mode, parking while it is busy.
+	 *
+	 * @param mode          the mode
+	 * @param interruptible whether to give up if interrupted
+	 * @param timed         whether to give up after {@code nanos}
+	 * @param nanos         the maximum time to wait
+	 * @return true, if acquired, or false if timed out
+	 * @throws InterruptedException if interruptible and interrupted
+	 */
+	private boolean acquire(int mode, boolean interruptible, boolean timed, long nanos) throws InterruptedException {
+		Thread current = Thread.currentThread();
+		if (interruptible && Thread.interrupted())
+			throw new InterruptedException();
+
+		if (tryAcquire(current, mode))
+			return true;
+
+		if (timed && nanos <= 0L)
+			return false;
+
+		// The upgrade lock owner waits for the readers only
+		if (mode == WRITE && owner == current)
+			mode = CONVERT;
+
+		int waitMode = mode;
+		BooleanSupplier busy = () -> isBusy(waitMode);
+		long deadline = timed ? System.nanoTime() + nanos : 0L;
+		boolean interrupted = false;
+		boolean front = false;
+		try {
+			for (;;) {
+				if (SPINNER.spinWhile(busy) && tryAcquire(current, mode))
+					return true;
+
+				front = ParkingLot.park(this, mode, front, timed, deadline);
+				if (tryAcquire(current, mode))
+					return true;
+
+				if (Thread.interrupted()) {
+					if (interruptible) {
+						passWakeup();
+						throw new InterruptedException();
+					}
+					interrupted = true;
+				}
+
+				if (timed && deadline - System.nanoTime() <= 0L) {
+					passWakeup();
+					return false;
+				}
+			}
+		} finally {
+			if (interrupted)
+				current.interrupt();
+		}
+	}
+
+	/**
+	 * Acquires the lock in a mode, ignoring interrupts.
+	 *
+	 * @param mode the mode
+	 */
+	private void acquireUninterruptibly(int mode) {
+		try {
+			acquire(mode, false, false, 0L);
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Clears the waiters flag. Called holding the bucket lock, once no waiter of
+	 * this lock is left in it.
+	 */
+	private void clearWaiters() {
+		long s;
+		do {
+			s = state;
+		} while ((s & WAITERS) != 0L && !STATE.compareAndSet(this, s, s & ~WAITERS));
+	}
+
+	/**
+	 * Flags the lock as having waiters, unless it is free for the mode anyway.
+	 * Called holding the bucket lock, ahead of parking.
+	 *
+	 * @param mode the mode waited for
+	 * @return true, if the thread should park
+	 */
+	private boolean flagWaitersIfBusy(int mode) {
+		for (;;) {
+			long s = state;
+			if (!isBusy(s, mode))
+				return false;
+			if ((s & WAITERS) != 0L || STATE.compareAndSet(this, s, s | WAITERS))
+				return true;
+		}
+	}
+
+	/**
+	 * Gets the number of read holds of all threads.
+	 *
+	 * @return the read lock count
+	 */
+	public int getReadLockCount() {
+		return (int) (state & READ_MASK);
+	}
+
+	/**
+	 * Gets the number of reentrant write holds on this lock by the current
+	 * thread.
+	 *
+	 * @return the write hold count, or zero if the current thread does not hold
+	 *         the write lock
+	 */
+	public int getWriteHoldCount() {
+		return (owner == Thread.currentThread()) ? (int) (state >>> WRITE_SHIFT) : 0;
+	}
+
+	/**
+	 * Checks if the lock is held in a way that keeps a mode from being acquired.
+	 *
+	 * @param mode the mode
+	 * @return true, if busy
+	 */
+	private boolean isBusy(int mode) {
+		return isBusy(state, mode);
+	}
+
+	/**
+	 * Checks if a state keeps a mode from being acquired, disregarding
+	 * reentrancy.
+	 *
+	 * @param s    the state
+	 * @param mode the mode
+	 * @return true, if busy
+	 */
+	private static boolean isBusy(long s, int mode) {
+		return switch (mode) {
+		case READ -> (s >>> WRITE_SHIFT) != 0L;
+		case UPGRADE -> (s & ~(READ_MASK | WAITERS)) != 0L;
+		case CONVERT -> (s & READ_MASK) != 0L;
+		default -> (s & ~WAITERS) != 0L;
+		};
+	}
+
+	/**
+	 * Checks if the current thread holds the upgrade lock.
+	 *
+	 * @return true, if held by the current thread
+	 */
+	public boolean isUpgradeLockHeldByCurrentThread() {
+		return owner == Thread.currentThread() && (state & UPGRADE_MASK) != 0L;
+	}
+
+	/**
+	 * Checks if any thread holds the write lock.
+	 *
+	 * @return true, if write locked
+	 */
+	public boolean isWriteLocked() {
+		return (state >>> WRITE_SHIFT) != 0L;
+	}
+
+	/**
+	 * Checks if the current thread holds the write lock.
+	 *
+	 * @return true, if held by the current thread
+	 */
+	public boolean isWriteLockedByCurrentThread() {
+		return owner == Thread.currentThread() && isWriteLocked();
+	}
+
+	/**
+	 * Wakes the next waiters on behalf of a thread that gives up after a release
+	 * may have woken it, so that the wakeup is not lost.
+	 */
+	private void passWakeup() {
+		if ((state & WAITERS) != 0L)
+			ParkingLot.unpark(this);
+	}
+
+	/**
+	 * Returns a new view of the read lock.
+	 *
+	 * @return the read lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+	 */
+	@Override
+	public Lock readLock() {
+		return new ReadLock();
+	}
+
+	/**
+	 * Releases one read hold.
+	 *
+	 * @throws IllegalMonitorStateException if the lock is not read locked
+	 */
+	private void releaseRead() {
+		for (;;) {
+			long s = state;
+			if ((s & READ_MASK) == 0L)
+				throw new IllegalMonitorStateException("Lock is not read locked");
+
+			if (STATE.compareAndSet(this, s, s - 1L)) {
+				// Only writers and a converting upgrader wait for readers
+				if ((s & READ_MASK) == 1L && (s & WAITERS) != 0L)
+					ParkingLot.unpark(this);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Releases one upgrade hold.
+	 *
+	 * @throws IllegalMonitorStateException if the current thread does not hold
+	 *                                      the upgrade lock
+	 */
+	private void releaseUpgrade() {
+		if (!isUpgradeLockHeldByCurrentThread())
+			throw new IllegalMonitorStateException("Thread does not hold upgrade lock");
+
+		long s = state;
+		boolean last = (s & UPGRADE_MASK) == UPGRADE_UNIT;
+		if (last && (s >>> WRITE_SHIFT) == 0L)
+			owner = null;
+
+		// Only the owner changes the upgrade and write bits, others add readers or flag waiters
+		s = (long) STATE.getAndAdd(this, -UPGRADE_UNIT);
+		if (last && (s & WAITERS) != 0L)
+			ParkingLot.unpark(this);
+	}
+
+	/**
+	 * Releases one write hold.
+	 *
+	 * @throws IllegalMonitorStateException if the current thread does not hold
+	 *                                      the write lock
+	 */
+	private void releaseWrite() {
+		if (!isWriteLockedByCurrentThread())
+			throw new IllegalMonitorStateException("Thread does not hold write lock");
+
+		long s = state;
+		boolean last = (s >>> WRITE_SHIFT) == 1L;
+		if (last && (s & UPGRADE_MASK) == 0L)
+			owner = null;
+
+		s = (long) STATE.getAndAdd(this, -WRITE_UNIT);
+		if (last && (s & WAITERS) != 0L)
+			ParkingLot.unpark(this);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		long s = state;
+
+		return "CompactUpgradableReadWriteLock [Write locks = " + (s >>> WRITE_SHIFT)
+				+ ", Read locks = " + (s & READ_MASK) + "]";
+	}
+
+	/**
+	 * Attempts to acquire the lock in a mode without waiting. Reentrant
+	 * acquisitions by the owner of the upgrade or write lock always succeed.
+	 *
+	 * @param current the current thread
+	 * @param mode    the mode
+	 * @return true, if acquired
+	 */
+	private boolean tryAcquire(Thread current, int mode) {
+		for (;;) {
+			long s = state;
+			long w = s >>> WRITE_SHIFT;
+			long u = (s & UPGRADE_MASK) >>> UPGRADE_SHIFT;
+			boolean owned = (w != 0L || u != 0L) && owner == current;
+
+			long next;
+			switch (mode) {
+			case READ:
+				if (w != 0L && !owned)
+					return false;
+				if ((s & READ_MASK) == READ_MASK)
+					throw new Error("Maximum lock count exceeded");
+				next = s + 1L;
+				break;
+
+			case UPGRADE:
+				if ((w != 0L || u != 0L) && !owned)
+					return false;
+				if (u == MAX_UPGRADE)
+					throw new Error("Maximum lock count exceeded");
+				next = s + UPGRADE_UNIT;
+				break;
+
+			default:
+				if (w != 0L || u != 0L) {
+					if (!owned || (w == 0L && (s & READ_MASK) != 0L))
+						return false;
+				} else if ((s & READ_MASK) != 0L) {
+					return false;
+				}
+				if (w == MAX_WRITE)
+					throw new Error("Maximum lock count exceeded");
+				next = s + WRITE_UNIT;
+				break;
+			}
+
+			if (STATE.compareAndSet(this, s, next)) {
+				if (mode != READ && !owned)
+					owner = current;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns a new view of the upgrade lock. The upgrade lock coexists with
+	 * readers, excludes other upgraders and writers, and converts to the write
+	 * lock atomically. Must not be acquired while holding only the read lock.
+	 *
+	 * @return the upgrade lock
+	 */
+	public Lock upgradeLock() {
+		return new UpgradeLock();
+	}
+
+	/**
+	 * Returns a new view of the write lock. Must not be acquired while holding
+	 * only the read lock.
+	 *
+	 * @return the write lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+	 */
+	@Override
+	public Lock writeLock() {
+		return new WriteLock();
+	}
+}
@@ -0,0 +1,701 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A multi-granularity lock for one node of a tree, such as a scene graph. Each
+ * node can be locked in one of five modes, and locking a node first locks all
+ * of its ancestors, from the root down, in the matching intention mode. A
+ * thread reading a leaf and a thread writing a sibling subtree therefore meet
+ * only in compatible intention modes on their common ancestors and proceed in
+ * parallel, while write locking the root still locks the whole tree in a
+ * single operation.
+ *
+ * <p>
+ * The modes, and the intention mode each one takes on the ancestors:
+ * </p>
+ * <ul>
+ * <li>{@link Mode#IS}, intention shared: some descendant will be read.</li>
+ * <li>{@link Mode#IX}, intention exclusive: some descendant will be
+ * written.</li>
+ * <li>{@link Mode#S}, shared: the whole subtree is read. Takes IS above.</li>
+ * <li>{@link Mode#SIX}, shared with intention exclusive: the whole subtree is
+ * read and parts of it will be written. Takes IX above. This is the upgrade
+ * mode, converting to {@link Mode#X} once the other readers have left.</li>
+ * <li>{@link Mode#X}, exclusive: the whole subtree is written. Takes IX
+ * above.</li>
+ * </ul>
+ *
+ * <p>
+ * Modes are granted as soon as they are compatible with the modes held by
+ * other threads, without ordering waiting threads, like
+ * {@link UpgradableReadWriteLock.Policy#NON_FAIR}. The owner of {@link Mode#X}
+ * or {@link Mode#SIX} on a node may lock it again in any mode. A thread that
+ * needs to write what it read must take {@link Mode#SIX} up front, as a thread
+ * holding {@link Mode#S} or {@link Mode#IS} that asks for a writing mode on the
+ * same path waits for itself.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class HierarchicalLock implements Lockable<Locked, Locked> {
+
+	/**
+	 * The lock modes.
+	 */
+	public enum Mode {
+
+		/** Intention shared. */
+		IS,
+
+		/** Intention exclusive. */
+		IX,
+
+		/** Shared. */
+		S,
+
+		/** Shared with intention exclusive. */
+		SIX,
+
+		/** Exclusive. */
+		X;
+
+		/**
+		 * Gets the intention mode this mode takes on every ancestor.
+		 *
+		 * @return {@link #IS} for the reading modes, {@link #IX} for the others
+		 */
+		public Mode intention() {
+			return (this == IS || this == S) ? IS : IX;
+		}
+
+		/**
+		 * Checks if this mode can be held by one thread while another thread holds
+		 * the other mode on the same node.
+		 *
+		 * @param other the other mode
+		 * @return true, if compatible
+		 */
+		public boolean isCompatibleWith(Mode other) {
+			return switch (this) {
+			case IS -> other != X;
+			case IX -> other == IS || other == IX;
+			case S -> other == IS || other == S;
+			case SIX -> other == IS;
+			case X -> false;
+			};
+		}
+	}
+
+	/**
+	 * A {@link Lock} view locking the path to this node in one mode.
+	 */
+	private final class PathLock implements Lock {
+
+		/** The mode. */
+		private final Mode mode;
+
+		/**
+		 * Instantiates a new path lock.
+		 *
+		 * @param mode the mode
+		 */
+		PathLock(Mode mode) {
+			this.mode = mode;
+		}
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					acquirePath(mode, false, 0L);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			acquirePath(mode, false, 0L);
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			return tryAcquirePath(mode);
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			return acquirePath(mode, true, System.nanoTime() + unit.toNanos(time));
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			releasePath(mode);
+		}
+	}
+
+	/** The parent, or null for the root. */
+	private final HierarchicalLock parent;
+
+	/** Guards the mode counts. */
+	private final ReentrantLock sync = new ReentrantLock();
+
+	/** Signalled when a mode is released. */
+	private final Condition released = sync.newCondition();
+
+	/** The number of threads waiting on this node. */
+	private int waiters;
+
+	/** The number of {@link Mode#IS} holds. */
+	private int isCount;
+
+	/** The number of {@link Mode#IX} holds. */
+	private int ixCount;
+
+	/** The number of {@link Mode#S} holds. */
+	private int sCount;
+
+	/** The number of {@link Mode#SIX} holds, all by {@link #owner}. */
+	private int sixCount;
+
+	/** The number of {@link Mode#X} holds, all by {@link #owner}. */
+	private int xCount;
+
+	/** The thread holding {@link Mode#SIX} or {@link Mode#X}, or null. */
+	private Thread owner;
+
+	/** The number of {@link Mode#IS} holds taken by {@link #owner} while owning. */
+	private int ownerIsCount;
+
+	/** The read lock view, locking in {@link Mode#S}. */
+	private final Lock readLock = new PathLock(Mode.S);
+
+	/** The write lock view, locking in {@link Mode#X}. */
+	private final Lock writeLock = new PathLock(Mode.X);
+
+	/** Unlocks the path in each mode, indexed by ordinal. */
+	private final Locked[] unlockers = new Locked[Mode.values().length];
+
+	/**
+	 * Instantiates a new root lock.
+	 */
+	public HierarchicalLock() {
+		this(null);
+	}
+
+	/**
+	 * Instantiates a new lock below a parent.
+	 *
+	 * @param parent the parent, or null for a root
+	 */
+	public HierarchicalLock(HierarchicalLock parent) {
+		this.parent = parent;
+		for (Mode mode : Mode.values())
+			unlockers[mode.ordinal()] = () -> releasePath(mode);
+	}
+
+	/**
+	 * Locks the ancestors in the intention mode, then this node.
+	 *
+	 * @param mode     the mode
+	 * @param timed    whether the deadline applies
+	 * @param deadline the {@link System#nanoTime()} at which to give up
+	 * @return true, if acquired, or false if timed out with nothing held
+	 * @throws InterruptedException the interrupted exception, with nothing held
+	 */
+	private boolean acquirePath(Mode mode, boolean timed, long deadline) throws InterruptedException {
+		if (parent != null && !parent.acquirePath(mode.intention(), timed, deadline))
+			return false;
+
+		boolean acquired = false;
+		try {
+			acquired = acquire(mode, timed, deadline);
+			return acquired;
+		} finally {
+			if (!acquired && parent != null)
+				parent.releasePath(mode.intention());
+		}
+	}
+
+	/**
+	 * Locks this node alone, waiting until the mode is compatible.
+	 *
+	 * @param mode     the mode
+	 * @param timed    whether the deadline applies
+	 * @param deadline the {@link System#nanoTime()} at which to give up
+	 * @return true, if acquired
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private boolean acquire(Mode mode, boolean timed, long deadline) throws InterruptedException {
+		Thread current = Thread.currentThread();
+		sync.lockInterruptibly();
+		try {
+			if (!canGrant(mode, current)) {
+				waiters++;
+				try {
+					do {
+						if (!timed) {
+							released.await();
+						} else {
+							long remaining = deadline - System.nanoTime();
+							if (remaining <= 0L)
+								return false;
+							released.awaitNanos(remaining);
+						}
+					} while (!canGrant(mode, current));
+				} finally {
+					waiters--;
+				}
+			}
+
+			grant(mode, current);
+			return true;
+		} finally {
+			sync.unlock();
+		}
+	}
+
+	/**
+	 * Checks if a mode can be granted to a thread. Called holding the sync lock.
+	 * The owner of {@link Mode#X} holds the node alone and may take any mode. The
+	 * owner of {@link Mode#SIX} shares it only with {@link Mode#IS} holders and
+	 * may take any mode but {@link Mode#X} while they remain, not counting the
+	 * {@link Mode#IS} holds it took itself, such as by locking a child.
+	 *
+	 * @param mode    the mode
+	 * @param current the current thread
+	 * @return true, if grantable
+	 */
+	private boolean canGrant(Mode mode, Thread current) {
+		if (owner == current)
+			return xCount > 0 || mode != Mode.X || isCount == ownerIsCount;
+
+		if (xCount > 0)
+			return false;
+
+		return switch (mode) {
+		case IS -> true;
+		case IX -> sCount == 0 && sixCount == 0;
+		case S -> ixCount == 0 && sixCount == 0;
+		case SIX -> ixCount == 0 && sCount == 0 && sixCount == 0;
+		case X -> isCount == 0 && ixCount == 0 && sCount == 0 && sixCount == 0;
+		};
+	}
+
+	/**
+	 * Gets the hold count of a mode. Called holding the sync lock.
+	 *
+	 * @param mode the mode
+	 * @return the hold count
+	 */
+	private int count(Mode mode) {
+		return switch (mode) {
+		case IS -> isCount;
+		case IX -> ixCount;
+		case S -> sCount;
+		case SIX -> sixCount;
+		case X -> xCount;
+		};
+	}
+
+	/**
+	 * Gets the number of threads, or reentrant holds, holding this node in a
+	 * mode.
+	 *
+	 * @param mode the mode
+	 * @return the hold count
+	 */
+	public int getHoldCount(Mode mode) {
+		sync.lock();
+		try {
+			return count(mode);
+		} finally {
+			sync.unlock();
+		}
+	}
+
+	/**
+	 * Gets the parent.
+	 *
+	 * @return the parent, or null for a root
+	 */
+	public HierarchicalLock getParent() {
+		return parent;
+	}
+
+	/**
+	 * Records a granted mode. Called holding the sync lock.
+	 *
+	 * @param mode    the mode
+	 * @param current the current thread
+	 */
+	private void grant(Mode mode, Thread current) {
+		switch (mode) {
+		case IS -> {
+			isCount++;
+			if (owner == current)
+				ownerIsCount++;
+		}
+		case IX -> ixCount++;
+		case S -> sCount++;
+		case SIX -> {
+			sixCount++;
+			owner = current;
+		}
+		case X -> {
+			xCount++;
+			owner = current;
+		}
+		}
+	}
+
+	/**
+	 * Locks the path to this node in a mode.
+	 *
+	 * @param mode the mode
+	 * @return the locked, unlocking the path
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public Locked lock(Mode mode) throws InterruptedException {
+		acquirePath(mode, false, 0L);
+
+		return unlockers[mode.ordinal()];
+	}
+
+	/**
+	 * Locks the path to this node in a mode, within the given waiting time.
+	 *
+	 * @param mode    the mode
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked, unlocking the path
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 */
+	public Locked lock(Mode mode, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!acquirePath(mode, true, System.nanoTime() + unit.toNanos(timeout)))
+			throw new TimeoutException();
+
+		return unlockers[mode.ordinal()];
+	}
+
+	/**
+	 * Lock for read, in {@link Mode#S}.
+	 *
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead()
+	 */
+	@Override
+	public Locked lockForRead() throws InterruptedException {
+		return lock(Mode.S);
+	}
+
+	/**
+	 * Lock for read, in {@link Mode#S}.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead(long,
+	 *      java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Locked lockForRead(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return lock(Mode.S, timeout, unit);
+	}
+
+	/**
+	 * Lock for upgrade, in {@link Mode#SIX}.
+	 *
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade()
+	 */
+	@Override
+	public Locked lockForUpgrade() throws InterruptedException {
+		return lock(Mode.SIX);
+	}
+
+	/**
+	 * Lock for upgrade, in {@link Mode#SIX}.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade(long,
+	 *      java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Locked lockForUpgrade(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return lock(Mode.SIX, timeout, unit);
+	}
+
+	/**
+	 * Lock for write, in {@link Mode#X}.
+	 *
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite()
+	 */
+	@Override
+	public Locked lockForWrite() throws InterruptedException {
+		return lock(Mode.X);
+	}
+
+	/**
+	 * Lock for write, in {@link Mode#X}.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite(long,
+	 *      java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Locked lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return lock(Mode.X, timeout, unit);
+	}
+
+	/**
+	 * Creates a child lock.
+	 *
+	 * @return the child
+	 */
+	public HierarchicalLock newChild() {
+		return new HierarchicalLock(this);
+	}
+
+	/**
+	 * Read lock, locking the path in {@link Mode#S}.
+	 *
+	 * @return the lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+	 */
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	/**
+	 * Unlocks this node, then the ancestors, in the reverse order of locking.
+	 *
+	 * @param mode the mode this node was locked in
+	 */
+	private void releasePath(Mode mode) {
+		release(mode);
+		if (parent != null)
+			parent.releasePath(mode.intention());
+	}
+
+	/**
+	 * Unlocks this node alone.
+	 *
+	 * @param mode the mode
+	 * @throws IllegalMonitorStateException if the node is not held in the mode,
+	 *                                      or by another thread for an exclusive
+	 *                                      mode
+	 */
+	private void release(Mode mode) {
+		sync.lock();
+		try {
+			boolean exclusive = (mode == Mode.SIX || mode == Mode.X);
+			if (count(mode) == 0 || (exclusive && owner != Thread.currentThread()))
+				throw new IllegalMonitorStateException("Thread does not hold " + mode + " lock");
+
+			switch (mode) {
+			case IS -> {
+				isCount--;
+				if (owner == Thread.currentThread() && ownerIsCount > 0)
+					ownerIsCount--;
+			}
+			case IX -> ixCount--;
+			case S -> sCount--;
+			case SIX -> sixCount--;
+			case X -> xCount--;
+			}
+
+			if (sixCount == 0 && xCount == 0) {
+				owner = null;
+				ownerIsCount = 0;
+			}
+			if (waiters > 0)
+				released.signalAll();
+		} finally {
+			sync.unlock();
+		}
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		sync.lock();
+		try {
+			return "HierarchicalLock [IS=" + isCount + ", IX=" + ixCount + ", S=" + sCount
+					+ ", SIX=" + sixCount + ", X=" + xCount + "]";
+		} finally {
+			sync.unlock();
+		}
+	}
+
+	/**
+	 * Locks this node alone without waiting.
+	 *
+	 * @param mode the mode
+	 * @return true, if acquired
+	 */
+	private boolean tryAcquire(Mode mode) {
+		Thread current = Thread.currentThread();
+		if (!sync.tryLock())
+			return false;
+		try {
+			if (!canGrant(mode, current))
+				return false;
+
+			grant(mode, current);
+			return true;
+		} finally {
+			sync.unlock();
+		}
+	}
+
+	/**
+	 * Locks the path to this node without waiting.
+	 *
+	 * @param mode the mode
+	 * @return true, if acquired, or false with nothing held
+	 */
+	private boolean tryAcquirePath(Mode mode) {
+		if (parent != null && !parent.tryAcquirePath(mode.intention()))
+			return false;
+
+		if (tryAcquire(mode))
+			return true;
+
+		if (parent != null)
+			parent.releasePath(mode.intention());
+		return false;
+	}
+
+	/**
+	 * Optimistic reads are not supported.
+	 *
+	 * @return always zero
+	 * @see org.piengine.util.concurrent.locks.Lockable#tryOptimisticRead()
+	 */
+	@Override
+	public long tryOptimisticRead() {
+		return 0L;
+	}
+
+	/**
+	 * Optimistic reads are not supported.
+	 *
+	 * @param stamp the stamp
+	 * @return always false
+	 * @see org.piengine.util.concurrent.locks.Lockable#validate(long)
+	 */
+	@Override
+	public boolean validate(long stamp) {
+		return false;
+	}
+
+	/**
+	 * Write lock, locking the path in {@link Mode#X}.
+	 *
+	 * @return the lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+	 */
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+}
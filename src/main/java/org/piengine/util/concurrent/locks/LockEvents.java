@@ -0,0 +1,229 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events of {@link UpgradableReadWriteLock}. Each event is
+ * only instantiated while a recording has it enabled, so that a disabled event
+ * costs a single flag check. Thresholds, which drop events shorter than the
+ * given duration, can be changed in the recording settings, for example
+ * {@code org.piengine.LockHeld#threshold=5 ms}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+final class LockEvents {
+
+	/**
+	 * A thread waited to acquire a lock.
+	 */
+	@Name("org.piengine.LockContended")
+	@Label("Lock Contended")
+	@Category({ "PiEngine", "Locks" })
+	@Description("A thread waited to acquire a lock")
+	@Threshold("1 ms")
+	@StackTrace(true)
+	static final class Contended extends Event {
+
+		/** The lock name. */
+		@Label("Lock")
+		String lock;
+
+		/** The mode acquired. */
+		@Label("Mode")
+		String mode;
+	}
+
+	/**
+	 * A lock was held exclusively for a long time.
+	 */
+	@Name("org.piengine.LockHeld")
+	@Label("Lock Held")
+	@Category({ "PiEngine", "Locks" })
+	@Description("The write or upgrade lock was held for longer than the threshold")
+	@Threshold("20 ms")
+	@StackTrace(true)
+	static final class Held extends Event {
+
+		/** The lock name. */
+		@Label("Lock")
+		String lock;
+
+		/** The mode held. */
+		@Label("Mode")
+		String mode;
+	}
+
+	/**
+	 * A thread upgraded to the write lock.
+	 */
+	@Name("org.piengine.LockUpgrade")
+	@Label("Lock Upgrade")
+	@Category({ "PiEngine", "Locks" })
+	@Description("Time from giving up the read or upgrade lock to obtaining the write lock")
+	@Threshold("0 ms")
+	@StackTrace(true)
+	static final class Upgrade extends Event {
+
+		/** The lock name. */
+		@Label("Lock")
+		String lock;
+
+		/** The mode upgraded from. */
+		@Label("From")
+		String from;
+	}
+
+	/** The read mode. */
+	static final String READ = "read";
+
+	/** The upgrade mode. */
+	static final String UPGRADE = "upgrade";
+
+	/** The write mode. */
+	static final String WRITE = "write";
+
+	/** The contended event type. */
+	private static final EventType CONTENDED = EventType.getEventType(Contended.class);
+
+	/** The held event type. */
+	private static final EventType HELD = EventType.getEventType(Held.class);
+
+	/** The upgrade event type. */
+	private static final EventType UPGRADE_TYPE = EventType.getEventType(Upgrade.class);
+
+	/**
+	 * Begins timing an acquisition that may wait.
+	 *
+	 * @return the event, or null if not enabled
+	 */
+	static Contended beginContended() {
+		if (!CONTENDED.isEnabled())
+			return null;
+
+		Contended event = new Contended();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Begins timing an exclusive hold.
+	 *
+	 * @return the event, or null if not enabled
+	 */
+	static Held beginHeld() {
+		if (!HELD.isEnabled())
+			return null;
+
+		Held event = new Held();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Begins timing an upgrade.
+	 *
+	 * @return the event, or null if not enabled
+	 */
+	static Upgrade beginUpgrade() {
+		if (!UPGRADE_TYPE.isEnabled())
+			return null;
+
+		Upgrade event = new Upgrade();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Commits an acquisition, if it waited longer than the threshold.
+	 *
+	 * @param event the event, or null
+	 * @param lock  the lock
+	 * @param mode  the mode acquired
+	 */
+	static void commit(Contended event, UpgradableReadWriteLock lock, String mode) {
+		if (event == null)
+			return;
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.lock = lock.getEventName();
+			event.mode = mode;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commits an exclusive hold, if it lasted longer than the threshold.
+	 *
+	 * @param event the event, or null
+	 * @param lock  the lock
+	 * @param mode  the mode held
+	 */
+	static void commit(Held event, UpgradableReadWriteLock lock, String mode) {
+		if (event == null)
+			return;
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.lock = lock.getEventName();
+			event.mode = mode;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commits an upgrade, if it took longer than the threshold.
+	 *
+	 * @param event the event, or null
+	 * @param lock  the lock
+	 * @param from  the mode upgraded from
+	 */
+	static void commit(Upgrade event, UpgradableReadWriteLock lock, String from) {
+		if (event == null)
+			return;
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.lock = lock.getEventName();
+			event.from = from;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Instantiates a new lock events.
+	 */
+	private LockEvents() {
+	}
+}
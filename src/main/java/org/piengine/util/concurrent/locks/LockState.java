@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+/**
+ * A snapshot of the state of a lock, for monitoring. Taking a snapshot reads
+ * the lock state word once and a few plain fields, without locking, so it is
+ * cheap enough to poll many locks at high frequency. Snapshots can be reused,
+ * see {@link UpgradableReadWriteLock#snapshot(LockState)}, so that polling
+ * allocates nothing while no thread is queued.
+ *
+ * <p>
+ * The counts derived from the state word are consistent with each other. The
+ * owners and queue lengths are read separately and may be slightly out of date
+ * while the lock changes hands.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class LockState {
+
+	/** The read count. */
+	private int readCount;
+
+	/** The write hold count. */
+	private int writeHoldCount;
+
+	/** The write lock owner. */
+	private Thread owner;
+
+	/** Whether the upgrade lock is held. */
+	private boolean upgradeLocked;
+
+	/** The upgrade lock owner. */
+	private Thread upgradeOwner;
+
+	/** Whether the upgrade lock owner is waiting to convert. */
+	private boolean upgradeInProgress;
+
+	/** The number of queued readers. */
+	private int queuedReaders;
+
+	/** The number of queued writers. */
+	private int queuedWriters;
+
+	/** The number of threads queued for the upgrade lock. */
+	private int queuedUpgraders;
+
+	/**
+	 * Instantiates a new, empty lock state, to be filled by a snapshot.
+	 */
+	public LockState() {
+	}
+
+	/**
+	 * Sets all fields from a snapshot.
+	 *
+	 * @param readCount         the read count
+	 * @param writeHoldCount    the write hold count
+	 * @param owner             the write lock owner, or null
+	 * @param upgradeLocked     whether the upgrade lock is held
+	 * @param upgradeOwner      the upgrade lock owner, or null
+	 * @param upgradeInProgress whether the upgrade lock owner is converting
+	 * @param queuedReaders     the number of queued readers
+	 * @param queuedWriters     the number of queued writers
+	 * @param queuedUpgraders   the number of threads queued for the upgrade
+	 *                          lock
+	 * @return this lock state
+	 */
+	LockState set(int readCount, int writeHoldCount, Thread owner,
+			boolean upgradeLocked, Thread upgradeOwner, boolean upgradeInProgress,
+			int queuedReaders, int queuedWriters, int queuedUpgraders) {
+		this.readCount = readCount;
+		this.writeHoldCount = writeHoldCount;
+		this.owner = owner;
+		this.upgradeLocked = upgradeLocked;
+		this.upgradeOwner = upgradeOwner;
+		this.upgradeInProgress = upgradeInProgress;
+		this.queuedReaders = queuedReaders;
+		this.queuedWriters = queuedWriters;
+		this.queuedUpgraders = queuedUpgraders;
+
+		return this;
+	}
+
+	/**
+	 * Gets the number of read holds of all threads, not counting reader biased
+	 * holds, which are kept outside the lock state.
+	 *
+	 * @return the read count
+	 */
+	public int getReadCount() {
+		return readCount;
+	}
+
+	/**
+	 * Gets the reentrant write hold count of the owner.
+	 *
+	 * @return the write hold count, zero if not write locked
+	 */
+	public int getWriteHoldCount() {
+		return writeHoldCount;
+	}
+
+	/**
+	 * Checks if the write lock is held.
+	 *
+	 * @return true, if write locked
+	 */
+	public boolean isWriteLocked() {
+		return writeHoldCount != 0;
+	}
+
+	/**
+	 * Gets the thread holding the write lock.
+	 *
+	 * @return the owner, or null if not write locked or held asynchronously
+	 */
+	public Thread getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Checks if the upgrade lock is held.
+	 *
+	 * @return true, if upgrade locked
+	 */
+	public boolean isUpgradeLocked() {
+		return upgradeLocked;
+	}
+
+	/**
+	 * Gets the thread holding the upgrade lock.
+	 *
+	 * @return the upgrade owner, or null
+	 */
+	public Thread getUpgradeOwner() {
+		return upgradeOwner;
+	}
+
+	/**
+	 * Checks if the upgrade lock owner is waiting for readers to drain, to
+	 * convert to the write lock.
+	 *
+	 * @return true, if an upgrade is in progress
+	 */
+	public boolean isUpgradeInProgress() {
+		return upgradeInProgress;
+	}
+
+	/**
+	 * Gets the number of readers waiting, queued or held back by the reader
+	 * gate.
+	 *
+	 * @return the queued readers
+	 */
+	public int getQueuedReaders() {
+		return queuedReaders;
+	}
+
+	/**
+	 * Gets the number of writers queued for the write lock.
+	 *
+	 * @return the queued writers
+	 */
+	public int getQueuedWriters() {
+		return queuedWriters;
+	}
+
+	/**
+	 * Gets the number of threads queued for the upgrade lock.
+	 *
+	 * @return the queued upgraders
+	 */
+	public int getQueuedUpgraders() {
+		return queuedUpgraders;
+	}
+
+	/**
+	 * Checks if any thread is waiting for the lock in any mode.
+	 *
+	 * @return true, if contended
+	 */
+	public boolean hasWaiters() {
+		return queuedReaders != 0 || queuedWriters != 0 || queuedUpgraders != 0 || upgradeInProgress;
+	}
+
+	/**
+	 * To string. Lists the hold counts, followed by whatever else is set.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder(64)
+				.append("Write locks = ").append(writeHoldCount)
+				.append(", Read locks = ").append(readCount);
+
+		if (owner != null)
+			b.append(", Owner = ").append(owner.getName());
+		if (upgradeLocked)
+			b.append(", Upgrade owner = ").append(upgradeOwner == null ? "?" : upgradeOwner.getName());
+		if (upgradeInProgress)
+			b.append(", Converting");
+		if (queuedReaders != 0)
+			b.append(", Queued readers = ").append(queuedReaders);
+		if (queuedWriters != 0)
+			b.append(", Queued writers = ").append(queuedWriters);
+		if (queuedUpgraders != 0)
+			b.append(", Queued upgraders = ").append(queuedUpgraders);
+
+		return b.toString();
+	}
+}
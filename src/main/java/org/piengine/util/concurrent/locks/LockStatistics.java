@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.piengine.util.concurrent.locks.LockStats.Mode;
+
+/**
+ * Collects the acquisition statistics of a lock. All counters are
+ * {@link LongAdder}s, which spread concurrent updates over striped cells, so
+ * that collecting statistics on a busy lock does not add a contention point of
+ * its own. Cells are only allocated once updates collide.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ * @see LockStats
+ */
+final class LockStatistics {
+
+	/** The number of modes. */
+	private static final int MODES = Mode.values().length;
+
+	/**
+	 * Creates an array of counters.
+	 *
+	 * @param length the length
+	 * @return the counters
+	 */
+	private static LongAdder[] counters(int length) {
+		LongAdder[] counters = new LongAdder[length];
+		for (int i = 0; i < length; i++)
+			counters[i] = new LongAdder();
+
+		return counters;
+	}
+
+	/**
+	 * Sums an array of counters.
+	 *
+	 * @param counters the counters
+	 * @return the sums
+	 */
+	private static long[] sums(LongAdder[] counters) {
+		long[] sums = new long[counters.length];
+		for (int i = 0; i < counters.length; i++)
+			sums[i] = counters[i].sum();
+
+		return sums;
+	}
+
+	/** The wait time histograms, per mode. */
+	private final LongAdder[][] waits = new LongAdder[MODES][];
+
+	/** The total wait times, per mode. */
+	private final LongAdder[] waitNanos = counters(MODES);
+
+	/** The failed try locks, per mode. */
+	private final LongAdder[] failedTryLocks = counters(MODES);
+
+	/** The upgrades, per mode upgraded from. */
+	private final LongAdder[] upgrades = counters(MODES);
+
+	/**
+	 * Instantiates a new, empty lock statistics collector.
+	 */
+	LockStatistics() {
+		for (int i = 0; i < MODES; i++)
+			waits[i] = counters(LockStats.BUCKETS);
+	}
+
+	/**
+	 * Records an acquisition that did not block.
+	 *
+	 * @param mode the mode
+	 */
+	void acquired(Mode mode) {
+		waits[mode.ordinal()][0].increment();
+	}
+
+	/**
+	 * Records an acquisition that may have blocked.
+	 *
+	 * @param mode  the mode
+	 * @param start the {@link System#nanoTime()} before the acquisition
+	 */
+	void acquired(Mode mode, long start) {
+		long nanos = System.nanoTime() - start;
+
+		waits[mode.ordinal()][LockStats.bucket(nanos)].increment();
+		if (nanos > 0L)
+			waitNanos[mode.ordinal()].add(nanos);
+	}
+
+	/**
+	 * Records a failed try lock.
+	 *
+	 * @param mode the mode
+	 */
+	void failed(Mode mode) {
+		failedTryLocks[mode.ordinal()].increment();
+	}
+
+	/**
+	 * Takes a snapshot.
+	 *
+	 * @param name the lock name, or null
+	 * @return the lock stats
+	 */
+	LockStats snapshot(String name) {
+		long[][] w = new long[MODES][];
+		for (int i = 0; i < MODES; i++)
+			w[i] = sums(waits[i]);
+
+		return new LockStats(name, w, sums(waitNanos), sums(failedTryLocks), sums(upgrades));
+	}
+
+	/**
+	 * Records an upgrade to the write lock.
+	 *
+	 * @param from the mode upgraded from
+	 */
+	void upgraded(Mode from) {
+		upgrades[from.ordinal()].increment();
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.Locale;
+
+/**
+ * A snapshot of the acquisition statistics of a lock, for export to a metrics
+ * system. Statistics are only collected while enabled on the lock, see
+ * {@link UpgradableReadWriteLock#setStatisticsEnabled(boolean)}, and are
+ * cumulative from then on until reset.
+ *
+ * <p>
+ * Every successful acquisition is counted in the wait time histogram of its
+ * mode, with acquisitions that did not block in the first bucket. Those that
+ * waited {@link #CONTENDED_NANOS} or longer are counted as contended. The
+ * counters are read one at a time while the lock is in use, so they are only
+ * approximately consistent with each other.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class LockStats {
+
+	/**
+	 * A lock mode.
+	 */
+	public enum Mode {
+
+		/** The read lock. */
+		READ,
+
+		/** The upgrade lock. */
+		UPGRADE,
+
+		/** The write lock. */
+		WRITE,
+	}
+
+	/**
+	 * Receives the statistics of a lock, to bridge them to a metrics system.
+	 * Metrics are named by the {@code METRIC_} constants of {@link LockStats}.
+	 *
+	 * @see LockStats#exportTo(Exporter)
+	 */
+	public interface Exporter {
+
+		/**
+		 * Receives a cumulative counter.
+		 *
+		 * @param lock   the lock name, or null
+		 * @param metric the metric name
+		 * @param mode   the lock mode, or for upgrades the mode upgraded from
+		 * @param value  the value
+		 */
+		void counter(String lock, String metric, Mode mode, long value);
+
+		/**
+		 * Receives a cumulative histogram.
+		 *
+		 * @param lock        the lock name, or null
+		 * @param metric      the metric name
+		 * @param mode        the lock mode
+		 * @param upperBounds the exclusive upper bound of each bucket, in
+		 *                    nanoseconds
+		 * @param counts      the count of each bucket
+		 * @param sum         the sum of all recorded values, in nanoseconds
+		 */
+		void histogram(String lock, String metric, Mode mode, long[] upperBounds, long[] counts, long sum);
+	}
+
+	/** The acquisitions counter, per mode. */
+	public static final String METRIC_ACQUISITIONS = "acquisitions";
+
+	/** The contended acquisitions counter, per mode. */
+	public static final String METRIC_CONTENDED = "contended";
+
+	/** The failed try lock counter, per mode. */
+	public static final String METRIC_FAILED_TRY_LOCKS = "failed_try_locks";
+
+	/** The upgrades to the write lock counter, per mode upgraded from. */
+	public static final String METRIC_UPGRADES = "upgrades";
+
+	/** The wait time histogram, per mode. */
+	public static final String METRIC_WAIT_TIME = "wait_time";
+
+	/** The number of wait time histogram buckets. */
+	public static final int BUCKETS = 24;
+
+	/**
+	 * The wait, in nanoseconds, from which an acquisition is counted as
+	 * contended. Also the upper bound of the first bucket.
+	 */
+	public static final long CONTENDED_NANOS = 1024L;
+
+	/** The bucket upper bounds. */
+	private static final long[] UPPER_BOUNDS = new long[BUCKETS];
+
+	static {
+		for (int i = 0; i < BUCKETS - 1; i++)
+			UPPER_BOUNDS[i] = CONTENDED_NANOS << i;
+		UPPER_BOUNDS[BUCKETS - 1] = Long.MAX_VALUE;
+	}
+
+	/** The number of modes. */
+	private static final int MODES = Mode.values().length;
+
+	/**
+	 * Gets the bucket of a wait. Bucket zero holds waits shorter than
+	 * {@link #CONTENDED_NANOS}, and each following bucket doubles the bound.
+	 *
+	 * @param nanos the wait in nanoseconds
+	 * @return the bucket
+	 */
+	static int bucket(long nanos) {
+		if (nanos <= 0L)
+			return 0;
+
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / CONTENDED_NANOS));
+	}
+
+	/**
+	 * Gets the exclusive upper bound of a wait time histogram bucket. The last
+	 * bucket is unbounded.
+	 *
+	 * @param bucket the bucket
+	 * @return the upper bound in nanoseconds
+	 */
+	public static long getUpperBound(int bucket) {
+		return UPPER_BOUNDS[bucket];
+	}
+
+	/** The lock name. */
+	private final String name;
+
+	/** The wait time histograms, per mode. */
+	private final long[][] waits;
+
+	/** The total wait times, per mode. */
+	private final long[] waitNanos;
+
+	/** The failed try locks, per mode. */
+	private final long[] failedTryLocks;
+
+	/** The upgrades, per mode upgraded from. */
+	private final long[] upgrades;
+
+	/**
+	 * Instantiates a new, empty lock stats snapshot.
+	 *
+	 * @param name the lock name, or null
+	 */
+	LockStats(String name) {
+		this(name, new long[MODES][BUCKETS], new long[MODES], new long[MODES], new long[MODES]);
+	}
+
+	/**
+	 * Instantiates a new lock stats snapshot.
+	 *
+	 * @param name           the lock name, or null
+	 * @param waits          the wait time histograms, per mode
+	 * @param waitNanos      the total wait times, per mode
+	 * @param failedTryLocks the failed try locks, per mode
+	 * @param upgrades       the upgrades, per mode upgraded from
+	 */
+	LockStats(String name, long[][] waits, long[] waitNanos, long[] failedTryLocks, long[] upgrades) {
+		this.name = name;
+		this.waits = waits;
+		this.waitNanos = waitNanos;
+		this.failedTryLocks = failedTryLocks;
+		this.upgrades = upgrades;
+	}
+
+	/**
+	 * Exports all metrics, for each mode, to an exporter.
+	 *
+	 * @param exporter the exporter
+	 */
+	public void exportTo(Exporter exporter) {
+		long[] bounds = UPPER_BOUNDS.clone();
+
+		for (Mode mode : Mode.values()) {
+			exporter.counter(name, METRIC_ACQUISITIONS, mode, getAcquisitions(mode));
+			exporter.counter(name, METRIC_CONTENDED, mode, getContended(mode));
+			exporter.counter(name, METRIC_FAILED_TRY_LOCKS, mode, getFailedTryLocks(mode));
+			if (mode != Mode.WRITE)
+				exporter.counter(name, METRIC_UPGRADES, mode, getUpgrades(mode));
+			exporter.histogram(name, METRIC_WAIT_TIME, mode, bounds, getWaitHistogram(mode), getWaitNanos(mode));
+		}
+	}
+
+	/**
+	 * Gets the number of acquisitions of a mode, including reentrant ones.
+	 *
+	 * @param mode the mode
+	 * @return the acquisitions
+	 */
+	public long getAcquisitions(Mode mode) {
+		long sum = 0L;
+		for (long count : waits[mode.ordinal()])
+			sum += count;
+
+		return sum;
+	}
+
+	/**
+	 * Gets the number of acquisitions of a mode that waited at least
+	 * {@link #CONTENDED_NANOS}.
+	 *
+	 * @param mode the mode
+	 * @return the contended acquisitions
+	 */
+	public long getContended(Mode mode) {
+		return getAcquisitions(mode) - waits[mode.ordinal()][0];
+	}
+
+	/**
+	 * Gets the number of try locks of a mode that failed, either at once or
+	 * after timing out.
+	 *
+	 * @param mode the mode
+	 * @return the failed try locks
+	 */
+	public long getFailedTryLocks(Mode mode) {
+		return failedTryLocks[mode.ordinal()];
+	}
+
+	/**
+	 * Gets the lock name.
+	 *
+	 * @return the name, or null
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the total number of upgrades to the write lock.
+	 *
+	 * @return the upgrades
+	 */
+	public long getUpgrades() {
+		return upgrades[Mode.READ.ordinal()] + upgrades[Mode.UPGRADE.ordinal()];
+	}
+
+	/**
+	 * Gets the number of write lock acquisitions by a thread holding the given
+	 * mode, the read lock or the upgrade lock.
+	 *
+	 * @param from the mode upgraded from
+	 * @return the upgrades
+	 */
+	public long getUpgrades(Mode from) {
+		return upgrades[from.ordinal()];
+	}
+
+	/**
+	 * Gets the wait time histogram of a mode, see {@link #getUpperBound(int)}.
+	 *
+	 * @param mode the mode
+	 * @return a copy of the bucket counts
+	 */
+	public long[] getWaitHistogram(Mode mode) {
+		return waits[mode.ordinal()].clone();
+	}
+
+	/**
+	 * Gets the total time spent waiting for a mode.
+	 *
+	 * @param mode the mode
+	 * @return the wait time in nanoseconds
+	 */
+	public long getWaitNanos(Mode mode) {
+		return waitNanos[mode.ordinal()];
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("LockStats [");
+		if (name != null)
+			b.append("name=").append(name).append(", ");
+
+		for (Mode mode : Mode.values()) {
+			String m = mode.name().toLowerCase(Locale.ROOT);
+			b.append(m).append("=").append(getAcquisitions(mode))
+					.append(", ").append(m).append("Contended=").append(getContended(mode))
+					.append(", ").append(m).append("Failed=").append(getFailedTryLocks(mode))
+					.append(", ");
+		}
+
+		return b.append("upgrades=").append(getUpgrades()).append("]").toString();
+	}
+}
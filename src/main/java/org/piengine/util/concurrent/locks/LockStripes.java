@@ -0,0 +1,681 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import org.piengine.util.concurrent.locks.Locked.LockedSupport;
+import org.piengine.util.concurrent.locks.UpgradableReadWriteLock.Policy;
+
+/**
+ * A fixed table of {@link UpgradableReadWriteLock}s shared by any number of
+ * keys, for objects that are too many or too small to each embed a lock. Keys
+ * are hashed onto a power-of-two number of stripes, so memory stays constant
+ * however many objects are locked, at the price of unrelated keys that share a
+ * stripe also sharing its lock.
+ *
+ * <p>
+ * Because keys can collide, a thread that needs several keys at once must take
+ * them with one of the {@code lockAll} methods. These acquire the distinct
+ * stripes of the keys in ascending stripe order, which is the same for every
+ * thread, so striping adds no deadlocks. Taking a second key with a separate
+ * lock call while holding the first is only safe if it is known to map to the
+ * same stripe, or if all threads do so in the same stripe order.
+ * </p>
+ *
+ * <p>
+ * Each stripe counts its contended acquisitions, those that found the stripe
+ * busy or other threads queued, to help size the table.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class LockStripes {
+
+	/**
+	 * The locked returned by the {@code lockAll} methods, releasing the stripes
+	 * it holds once.
+	 */
+	private static final class HeldStripes implements Locked {
+
+		/** The held stripes, in stripe order, cleared as they are released. */
+		private final Stripe[] held;
+
+		/** Whether the stripes are write locked. */
+		private final boolean write;
+
+		/** Whether the stripes were released. */
+		private boolean released;
+
+		/**
+		 * Instantiates a new held stripes.
+		 *
+		 * @param held  the held stripes
+		 * @param write whether the stripes are write locked
+		 */
+		HeldStripes(Stripe[] held, boolean write) {
+			this.held = held;
+			this.write = write;
+		}
+
+		/**
+		 * Close.
+		 *
+		 * @see org.piengine.util.concurrent.locks.Locked#close()
+		 */
+		@Override
+		public void close() {
+			unlock();
+		}
+
+		/**
+		 * Unlocks all stripes in reverse order. Does nothing once released.
+		 *
+		 * @see org.piengine.util.concurrent.locks.Locked#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (released)
+				return;
+
+			released = true;
+			unlockAll(held, write);
+		}
+	}
+
+	/**
+	 * A stripe, handing out {@link Lockable} access to its lock and counting
+	 * contended acquisitions.
+	 */
+	private static final class Stripe implements Lockable<Locked, Locked> {
+
+		/** The lock. */
+		private final UpgradableReadWriteLock lock;
+
+		/** The read locked. */
+		private final Locked readLocked;
+
+		/** The upgrade locked. */
+		private final Locked upgradeLocked;
+
+		/** The write locked. */
+		private final Locked writeLocked;
+
+		/** The number of acquisitions that could not be granted right away. */
+		private final LongAdder contended = new LongAdder();
+
+		/**
+		 * Instantiates a new stripe.
+		 *
+		 * @param lock the lock
+		 */
+		Stripe(UpgradableReadWriteLock lock) {
+			this.lock = lock;
+			this.readLocked = new LockedSupport(lock.readLock());
+			this.upgradeLocked = new LockedSupport(lock.upgradeLock());
+			this.writeLocked = new LockedSupport(() -> lock.writeLock().unlock(), () -> {
+				lock.downgrade();
+				return readLocked;
+			});
+		}
+
+		/**
+		 * Acquires a lock, counting the acquisition as contended unless it is
+		 * granted at once. Only tries without waiting while no thread is queued,
+		 * so as not to barge ahead of waiting threads.
+		 *
+		 * @param l the lock
+		 * @throws InterruptedException the interrupted exception
+		 */
+		private void acquire(Lock l) throws InterruptedException {
+			if (!lock.hasQueuedThreads() && l.tryLock())
+				return;
+
+			contended.increment();
+			l.lockInterruptibly();
+		}
+
+		/**
+		 * Acquires a lock within the given waiting time, counting the acquisition
+		 * as contended unless it is granted at once.
+		 *
+		 * @param l       the lock
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 */
+		private void acquire(Lock l, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!lock.hasQueuedThreads() && l.tryLock())
+				return;
+
+			contended.increment();
+			if (!l.tryLock(timeout, unit))
+				throw new TimeoutException();
+		}
+
+		/**
+		 * Gets the name of the stripe lock.
+		 *
+		 * @return the name, or null
+		 * @see org.piengine.util.concurrent.locks.Lockable#getName()
+		 */
+		@Override
+		public String getName() {
+			return lock.getName();
+		}
+
+		/**
+		 * Lock for read async, detaching the hold from the acquiring thread.
+		 *
+		 * @param executor the executor
+		 * @return the future
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForReadAsync(java.util.concurrent.Executor)
+		 */
+		@Override
+		public CompletableFuture<Locked> lockForReadAsync(Executor executor) {
+			return lock.readLockAsync(executor);
+		}
+
+		/**
+		 * Lock for read.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead()
+		 */
+		@Override
+		public Locked lockForRead() throws InterruptedException {
+			acquire(lock.readLock());
+
+			return readLocked;
+		}
+
+		/**
+		 * Lock for read.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForRead(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			acquire(lock.readLock(), timeout, unit);
+
+			return readLocked;
+		}
+
+		/**
+		 * Lock for upgrade.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade()
+		 */
+		@Override
+		public Locked lockForUpgrade() throws InterruptedException {
+			acquire(lock.upgradeLock());
+
+			return upgradeLocked;
+		}
+
+		/**
+		 * Lock for upgrade.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForUpgrade(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			acquire(lock.upgradeLock(), timeout, unit);
+
+			return upgradeLocked;
+		}
+
+		/**
+		 * Lock for write async, detaching the lock from the acquiring thread.
+		 *
+		 * @param executor the executor
+		 * @return the future
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWriteAsync(java.util.concurrent.Executor)
+		 */
+		@Override
+		public CompletableFuture<Locked> lockForWriteAsync(Executor executor) {
+			return lock.writeLockAsync(executor);
+		}
+
+		/**
+		 * Lock for write.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite()
+		 */
+		@Override
+		public Locked lockForWrite() throws InterruptedException {
+			acquire(lock.writeLock());
+
+			return writeLocked;
+		}
+
+		/**
+		 * Lock for write.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			acquire(lock.writeLock(), timeout, unit);
+
+			return writeLocked;
+		}
+
+		/**
+		 * Read lock.
+		 *
+		 * @return the lock
+		 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+		 */
+		@Override
+		public Lock readLock() {
+			return lock.readLock();
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Stripe [lock=" + lock + ", contended=" + contended.sum() + "]";
+		}
+
+		/**
+		 * Try optimistic read.
+		 *
+		 * @return the stamp, or zero if not available
+		 * @see org.piengine.util.concurrent.locks.Lockable#tryOptimisticRead()
+		 */
+		@Override
+		public long tryOptimisticRead() {
+			return lock.tryOptimisticRead();
+		}
+
+		/**
+		 * Validate.
+		 *
+		 * @param stamp the stamp
+		 * @return true, if successful
+		 * @see org.piengine.util.concurrent.locks.Lockable#validate(long)
+		 */
+		@Override
+		public boolean validate(long stamp) {
+			return lock.validate(stamp);
+		}
+
+		/**
+		 * Write lock.
+		 *
+		 * @return the lock
+		 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+		 */
+		@Override
+		public Lock writeLock() {
+			return lock.writeLock();
+		}
+	}
+
+	/** The number of stripes per available processor, by default. */
+	private static final int STRIPES_PER_PROCESSOR = 4;
+
+	/** The stripes. */
+	private final Stripe[] stripes;
+
+	/** The stripe index mask. */
+	private final int mask;
+
+	/**
+	 * Instantiates a new lock stripes table with four stripes per available
+	 * processor and fair locks.
+	 */
+	public LockStripes() {
+		this(STRIPES_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Instantiates a new lock stripes table with fair locks.
+	 *
+	 * @param stripes the minimum number of stripes, rounded up to a power of two
+	 */
+	public LockStripes(int stripes) {
+		this(stripes, Policy.FAIR, false);
+	}
+
+	/**
+	 * Instantiates a new lock stripes table.
+	 *
+	 * @param stripes      the minimum number of stripes, rounded up to a power of
+	 *                     two
+	 * @param policy       the policy of every stripe's lock
+	 * @param readerBiased whether the stripe locks are reader-biased
+	 * @throws IllegalArgumentException if stripes is not positive or exceeds
+	 *                                  2^30
+	 */
+	public LockStripes(int stripes, Policy policy, boolean readerBiased) {
+		if (stripes <= 0 || stripes > (1 << 30))
+			throw new IllegalArgumentException("Invalid stripe count: " + stripes);
+
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes)
+			size <<= 1;
+
+		this.stripes = new Stripe[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++)
+			this.stripes[i] = new Stripe(new UpgradableReadWriteLock(policy, readerBiased));
+	}
+
+	/**
+	 * Gets the lockable of the stripe a key maps to.
+	 *
+	 * @param key the key, such as a node id
+	 * @return the lockable
+	 */
+	public Lockable<Locked, Locked> forKey(long key) {
+		return stripes[stripeIndex(key)];
+	}
+
+	/**
+	 * Gets the lockable of the stripe an object maps to, by identity.
+	 *
+	 * @param key the object
+	 * @return the lockable
+	 */
+	public Lockable<Locked, Locked> forKey(Object key) {
+		return stripes[stripeIndex(key)];
+	}
+
+	/**
+	 * Gets the number of contended acquisitions of a stripe, those that found it
+	 * busy or found other threads waiting for it.
+	 *
+	 * @param stripe the stripe index
+	 * @return the contention count
+	 */
+	public long getContentionCount(int stripe) {
+		return stripes[stripe].contended.sum();
+	}
+
+	/**
+	 * Gets a snapshot of the contention counts of all stripes.
+	 *
+	 * @return the contention counts, indexed by stripe
+	 */
+	public long[] getContentionCounts() {
+		long[] counts = new long[stripes.length];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = stripes[i].contended.sum();
+
+		return counts;
+	}
+
+	/**
+	 * Gets the lock of a stripe.
+	 *
+	 * @param stripe the stripe index
+	 * @return the lock
+	 */
+	UpgradableReadWriteLock getLock(int stripe) {
+		return stripes[stripe].lock;
+	}
+
+	/**
+	 * Gets the lock of a stripe lockable returned by {@link #forKey(long)}.
+	 *
+	 * @param lockable the lockable
+	 * @return the lock, or null if the lockable is not a stripe
+	 */
+	static UpgradableReadWriteLock lockOf(Lockable<?, ?> lockable) {
+		return (lockable instanceof Stripe stripe) ? stripe.lock : null;
+	}
+
+	/**
+	 * Gets the number of stripes.
+	 *
+	 * @return the stripe count, a power of two
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Names the stripes for lock events, as {@code name[index]}.
+	 *
+	 * @param name the name prefix, or null to report the identities
+	 */
+	public void setName(String name) {
+		for (int i = 0; i < stripes.length; i++)
+			stripes[i].lock.setName(name == null ? null : name + "[" + i + "]");
+	}
+
+	/**
+	 * Read locks the stripes of all keys, in stripe order.
+	 *
+	 * @param keys the keys
+	 * @return the locked, unlocking all of them in reverse order
+	 * @throws InterruptedException the interrupted exception, with none of the
+	 *                              stripes held
+	 */
+	public Locked lockAllForRead(long... keys) throws InterruptedException {
+		int[] indexes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			indexes[i] = stripeIndex(keys[i]);
+
+		return lockAll(indexes, false);
+	}
+
+	/**
+	 * Read locks the stripes of all objects, in stripe order.
+	 *
+	 * @param keys the objects
+	 * @return the locked, unlocking all of them in reverse order
+	 * @throws InterruptedException the interrupted exception, with none of the
+	 *                              stripes held
+	 */
+	public Locked lockAllForRead(Collection<?> keys) throws InterruptedException {
+		int[] indexes = new int[keys.size()];
+		int i = 0;
+		for (Object key : keys)
+			indexes[i++] = stripeIndex(key);
+
+		return lockAll(indexes, false);
+	}
+
+	/**
+	 * Write locks the stripes of all keys, in stripe order.
+	 *
+	 * @param keys the keys
+	 * @return the locked, unlocking all of them in reverse order
+	 * @throws InterruptedException the interrupted exception, with none of the
+	 *                              stripes held
+	 */
+	public Locked lockAllForWrite(long... keys) throws InterruptedException {
+		int[] indexes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			indexes[i] = stripeIndex(keys[i]);
+
+		return lockAll(indexes, true);
+	}
+
+	/**
+	 * Write locks the stripes of all objects, in stripe order.
+	 *
+	 * @param keys the objects
+	 * @return the locked, unlocking all of them in reverse order
+	 * @throws InterruptedException the interrupted exception, with none of the
+	 *                              stripes held
+	 */
+	public Locked lockAllForWrite(Collection<?> keys) throws InterruptedException {
+		int[] indexes = new int[keys.size()];
+		int i = 0;
+		for (Object key : keys)
+			indexes[i++] = stripeIndex(key);
+
+		return lockAll(indexes, true);
+	}
+
+	/**
+	 * Locks the distinct stripes among {@code indexes} in ascending order.
+	 *
+	 * @param indexes the stripe indexes, sorted in place
+	 * @param write   whether to write lock
+	 * @return the locked, unlocking all of them in reverse order
+	 * @throws InterruptedException the interrupted exception, with none of the
+	 *                              stripes held
+	 */
+	private Locked lockAll(int[] indexes, boolean write) throws InterruptedException {
+		Arrays.sort(indexes);
+
+		int count = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			if (i == 0 || indexes[i] != indexes[i - 1])
+				indexes[count++] = indexes[i];
+		}
+
+		Stripe[] held = new Stripe[count];
+		try {
+			for (int i = 0; i < count; i++) {
+				Stripe stripe = stripes[indexes[i]];
+				if (write)
+					stripe.lockForWrite();
+				else
+					stripe.lockForRead();
+				held[i] = stripe;
+			}
+		} catch (InterruptedException | RuntimeException | Error e) {
+			try {
+				unlockAll(held, write);
+			} catch (RuntimeException | Error suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+
+		return new HeldStripes(held, write);
+	}
+
+	/**
+	 * Gets the index of the stripe a key maps to.
+	 *
+	 * @param key the key
+	 * @return the stripe index
+	 */
+	public int stripeIndex(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+
+		// The high half depends on all bits of the key
+		return (int) (h >>> 32) & mask;
+	}
+
+	/**
+	 * Gets the index of the stripe an object maps to, by identity.
+	 *
+	 * @param key the object
+	 * @return the stripe index
+	 */
+	public int stripeIndex(Object key) {
+		return stripeIndex(System.identityHashCode(key));
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LockStripes [stripes=" + stripes.length + "]";
+	}
+
+	/**
+	 * Unlock all. Releases the held stripes in reverse order and clears them. A
+	 * failure to release one stripe does not keep the others held; the first
+	 * failure is rethrown once all are released, with any later ones
+	 * suppressed.
+	 *
+	 * @param held  the held stripes, with null for those not held
+	 * @param write whether the stripes are write locked
+	 */
+	private static void unlockAll(Stripe[] held, boolean write) {
+		Throwable failure = null;
+		for (int i = held.length - 1; i >= 0; i--) {
+			if (held[i] != null) {
+				Stripe stripe = held[i];
+				held[i] = null;
+				try {
+					if (write)
+						stripe.lock.writeLock().unlock();
+					else
+						stripe.lock.readLock().unlock();
+				} catch (RuntimeException | Error e) {
+					if (failure == null)
+						failure = e;
+					else
+						failure.addSuppressed(e);
+				}
+			}
+		}
+
+		if (failure instanceof RuntimeException e)
+			throw e;
+		if (failure instanceof Error e)
+			throw e;
+	}
+}
@@ -0,0 +1,540 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.piengine.util.concurrent.locks.LockStats.Mode;
+import org.piengine.util.concurrent.locks.Lockable.LockableSupport;
+
+/**
+ * Reports write and upgrade holds that last longer than a threshold, such as a
+ * scene write lock held across I/O, along with the stack of the owning thread.
+ * Each long hold is reported once, on the watchdog thread.
+ *
+ * <p>
+ * A registered lock only records the {@link System#nanoTime()} each write or
+ * upgrade hold starts at, and clears it on release. A single daemon thread
+ * checks the registered locks, each at most once per threshold, scheduling
+ * the checks on a hashed timing wheel so that a tick only visits the locks due
+ * then. A hold is reported within one tick of becoming too long, a quarter of
+ * the threshold but no less than a millisecond.
+ * </p>
+ *
+ * <p>
+ * Locks are held weakly, and a lock can only be registered with one watchdog
+ * at a time. Holds already in progress when a lock is registered are not
+ * watched. Asynchronous holds, which belong to no thread, are reported without
+ * a stack.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class LockWatchdog implements AutoCloseable {
+
+	/**
+	 * A hold that lasted longer than the threshold.
+	 */
+	public static final class Report {
+
+		/** The lock name. */
+		private final String lockName;
+
+		/** The mode. */
+		private final Mode mode;
+
+		/** The owner. */
+		private final Thread owner;
+
+		/** The time held, in nanoseconds. */
+		private final long heldNanos;
+
+		/** The owner stack trace. */
+		private final StackTraceElement[] stackTrace;
+
+		/**
+		 * Instantiates a new report.
+		 *
+		 * @param lockName   the lock name
+		 * @param mode       the mode
+		 * @param owner      the owner, or null
+		 * @param heldNanos  the time held, in nanoseconds
+		 * @param stackTrace the owner stack trace
+		 */
+		Report(String lockName, Mode mode, Thread owner, long heldNanos, StackTraceElement[] stackTrace) {
+			this.lockName = lockName;
+			this.mode = mode;
+			this.owner = owner;
+			this.heldNanos = heldNanos;
+			this.stackTrace = stackTrace;
+		}
+
+		/**
+		 * Gets the time the lock had been held for when the stack was captured.
+		 *
+		 * @param unit the unit
+		 * @return the time held
+		 */
+		public long getHeld(TimeUnit unit) {
+			return unit.convert(heldNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Gets the lock name, see {@link UpgradableReadWriteLock#setName(String)}.
+		 *
+		 * @return the lock name, or its identity if not named
+		 */
+		public String getLockName() {
+			return lockName;
+		}
+
+		/**
+		 * Gets the mode held, {@link Mode#WRITE} or {@link Mode#UPGRADE}.
+		 *
+		 * @return the mode
+		 */
+		public Mode getMode() {
+			return mode;
+		}
+
+		/**
+		 * Gets the thread holding the lock.
+		 *
+		 * @return the owner, or null for an asynchronous hold
+		 */
+		public Thread getOwner() {
+			return owner;
+		}
+
+		/**
+		 * Gets the stack of the owner, captured once the hold exceeded the
+		 * threshold.
+		 *
+		 * @return a copy of the stack trace, empty if there is no owner
+		 */
+		public StackTraceElement[] getStackTrace() {
+			return stackTrace.clone();
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Report [lock=" + lockName
+					+ ", mode=" + mode
+					+ ", owner=" + (owner == null ? null : owner.getName())
+					+ ", held=" + getHeld(TimeUnit.MILLISECONDS) + " ms"
+					+ "]";
+		}
+	}
+
+	/**
+	 * A registered lock, linked into a wheel slot. Only the watchdog thread
+	 * touches the scheduling and reporting fields.
+	 */
+	static final class Entry {
+
+		/** The lock. */
+		private final WeakReference<UpgradableReadWriteLock> lock;
+
+		/** The watchdog. */
+		private final LockWatchdog watchdog;
+
+		/** The start of the last write hold reported. */
+		private long writeReported;
+
+		/** The start of the last upgrade hold reported. */
+		private long upgradeReported;
+
+		/** The tick the entry is due at. */
+		private long dueTick;
+
+		/** The next entry in the same slot. */
+		private Entry next;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param watchdog the watchdog
+		 * @param lock     the lock
+		 */
+		Entry(LockWatchdog watchdog, UpgradableReadWriteLock lock) {
+			this.watchdog = watchdog;
+			this.lock = new WeakReference<>(lock);
+		}
+
+		/**
+		 * Unregisters the lock, if still registered by this entry.
+		 */
+		void unwatch() {
+			UpgradableReadWriteLock l = lock.get();
+			if (l != null)
+				l.compareAndSetWatch(this, null);
+		}
+	}
+
+	/** The number of wheel slots, a power of two. */
+	private static final int WHEEL_SIZE = 64;
+
+	/** The number of ticks per threshold. */
+	private static final int TICKS_PER_THRESHOLD = 4;
+
+	/** The shortest tick. */
+	private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * The longest threshold, so that deadlines computed from it cannot
+	 * overflow.
+	 */
+	private static final long MAX_THRESHOLD_NANOS = Long.MAX_VALUE / 4;
+
+	/** The stack of a hold without an owner. */
+	private static final StackTraceElement[] NO_STACK = new StackTraceElement[0];
+
+	/**
+	 * Gets the lock behind a lockable.
+	 *
+	 * @param lockable the lockable
+	 * @return the lock
+	 * @throws IllegalArgumentException if the lockable is not backed by an
+	 *                                  {@link UpgradableReadWriteLock}
+	 */
+	private static UpgradableReadWriteLock lockOf(Lockable<?, ?> lockable) {
+		UpgradableReadWriteLock lock = LockStripes.lockOf(lockable);
+		if (lock == null
+				&& lockable instanceof LockableSupport<?, ?> support
+				&& support.getReadWriteLock() instanceof UpgradableReadWriteLock upgradable)
+			lock = upgradable;
+
+		if (lock == null)
+			throw new IllegalArgumentException("Lockable not backed by an UpgradableReadWriteLock: " + lockable);
+
+		return lock;
+	}
+
+	/** The threshold, in nanoseconds. */
+	private final long thresholdNanos;
+
+	/** The tick duration, in nanoseconds. */
+	private final long tickNanos;
+
+	/** The report handler. */
+	private final Consumer<? super Report> handler;
+
+	/** The wheel slots, each a list of entries. */
+	private final Entry[] wheel = new Entry[WHEEL_SIZE];
+
+	/** Entries registered since the last tick. */
+	private final ConcurrentLinkedQueue<Entry> added = new ConcurrentLinkedQueue<>();
+
+	/** The time of tick zero. */
+	private long origin;
+
+	/** The current tick. */
+	private long tick;
+
+	/** The watchdog thread, started by the first registration. */
+	private Thread thread;
+
+	/** Whether closed. */
+	private volatile boolean closed;
+
+	/**
+	 * Instantiates a new lock watchdog.
+	 *
+	 * @param threshold the hold time from which holds are reported, clamped to
+	 *                  about 73 years
+	 * @param unit      the unit
+	 * @param handler   receives the reports, on the watchdog thread
+	 * @throws IllegalArgumentException if the threshold is not positive
+	 */
+	public LockWatchdog(long threshold, TimeUnit unit, Consumer<? super Report> handler) {
+		if (threshold <= 0L)
+			throw new IllegalArgumentException("Invalid threshold: " + threshold);
+
+		this.thresholdNanos = Math.min(MAX_THRESHOLD_NANOS, unit.toNanos(threshold));
+		this.tickNanos = Math.max(MIN_TICK_NANOS, thresholdNanos / TICKS_PER_THRESHOLD);
+		this.handler = Objects.requireNonNull(handler, "handler");
+	}
+
+	/**
+	 * Checks one mode of a lock.
+	 *
+	 * @param entry the entry
+	 * @param lock  the lock
+	 * @param mode  the mode
+	 * @param now   the current time
+	 * @return the time until the hold becomes too long, or
+	 *         {@link Long#MAX_VALUE} if not held or already reported
+	 */
+	private long check(Entry entry, UpgradableReadWriteLock lock, Mode mode, long now) {
+		long since = lock.getHoldStart(mode);
+		long reported = (mode == Mode.WRITE) ? entry.writeReported : entry.upgradeReported;
+		if (since == 0L || since == reported)
+			return Long.MAX_VALUE;
+
+		long remaining = thresholdNanos - (now - since);
+		if (remaining > 0L)
+			return remaining;
+
+		Thread owner = lock.getHoldOwner(mode);
+		StackTraceElement[] stack = (owner != null) ? owner.getStackTrace() : NO_STACK;
+
+		// The hold may have ended while the stack was captured
+		if (lock.getHoldStart(mode) != since)
+			return Long.MAX_VALUE;
+
+		if (mode == Mode.WRITE)
+			entry.writeReported = since;
+		else
+			entry.upgradeReported = since;
+
+		try {
+			handler.accept(new Report(lock.getEventName(), mode, owner, System.nanoTime() - since, stack));
+		} catch (RuntimeException e) {
+			Thread current = Thread.currentThread();
+			current.getUncaughtExceptionHandler().uncaughtException(current, e);
+		}
+
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Stops the watchdog thread and unregisters all locks.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		closed = true;
+
+		Thread t;
+		synchronized (this) {
+			t = thread;
+		}
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	/**
+	 * Checks the entries due at the current tick, and reschedules those still
+	 * registered.
+	 */
+	private void expire() {
+		int slot = (int) (tick & (WHEEL_SIZE - 1));
+		Entry entry = wheel[slot];
+		wheel[slot] = null;
+
+		long now = System.nanoTime();
+		while (entry != null) {
+			Entry next = entry.next;
+			if (entry.dueTick > tick) {
+				// Due in a later round of the wheel
+				entry.next = wheel[slot];
+				wheel[slot] = entry;
+
+			} else {
+				UpgradableReadWriteLock lock = entry.lock.get();
+				if (lock != null && lock.getWatch() == entry) {
+					long delay = Math.min(thresholdNanos, Math.min(
+							check(entry, lock, Mode.WRITE, now),
+							check(entry, lock, Mode.UPGRADE, now)));
+					schedule(entry, now + delay);
+				}
+			}
+			entry = next;
+		}
+	}
+
+	/**
+	 * Gets the threshold.
+	 *
+	 * @param unit the unit
+	 * @return the threshold
+	 */
+	public long getThreshold(TimeUnit unit) {
+		return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Registers a lockable backed by an {@link UpgradableReadWriteLock}, such as
+	 * a {@link LockableSupport} or a stripe of {@link LockStripes}.
+	 *
+	 * @param lockable the lockable
+	 * @throws IllegalArgumentException if the lockable is not backed by an
+	 *                                  {@link UpgradableReadWriteLock}
+	 * @throws IllegalStateException    if closed, or the lock is registered with
+	 *                                  another watchdog
+	 */
+	public void register(Lockable<?, ?> lockable) {
+		register(lockOf(lockable));
+	}
+
+	/**
+	 * Registers all stripes.
+	 *
+	 * @param stripes the stripes
+	 * @throws IllegalStateException if closed, or a stripe is registered with
+	 *                               another watchdog
+	 */
+	public void register(LockStripes stripes) {
+		for (int i = 0; i < stripes.getStripeCount(); i++)
+			register(stripes.getLock(i));
+	}
+
+	/**
+	 * Registers a lock. Registering a lock again has no effect.
+	 *
+	 * @param lock the lock
+	 * @throws IllegalStateException if closed, or the lock is registered with
+	 *                               another watchdog
+	 */
+	public void register(UpgradableReadWriteLock lock) {
+		if (closed)
+			throw new IllegalStateException("Watchdog closed");
+
+		Entry entry = new Entry(this, lock);
+		if (!lock.compareAndSetWatch(null, entry)) {
+			Entry current = lock.getWatch();
+			if (current != null && current.watchdog == this)
+				return;
+
+			throw new IllegalStateException("Lock registered with another watchdog: " + lock);
+		}
+
+		added.offer(entry);
+		synchronized (this) {
+			if (thread == null)
+				thread = Thread.ofPlatform()
+						.name("lock-watchdog")
+						.daemon()
+						.start(this::run);
+		}
+
+		if (closed)
+			entry.unwatch();
+	}
+
+	/**
+	 * Runs the watchdog thread.
+	 */
+	private void run() {
+		origin = System.nanoTime();
+
+		while (!closed) {
+			long delay = origin + tick * tickNanos - System.nanoTime();
+			if (delay > 0L) {
+				LockSupport.parkNanos(this, delay);
+				continue;
+			}
+
+			// A hold starting now is due at the earliest one threshold from now
+			long now = System.nanoTime();
+			for (Entry entry; (entry = added.poll()) != null;)
+				schedule(entry, now + thresholdNanos);
+
+			expire();
+			tick++;
+		}
+
+		for (Entry entry; (entry = added.poll()) != null;)
+			entry.unwatch();
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			for (Entry entry = wheel[i]; entry != null; entry = entry.next)
+				entry.unwatch();
+			wheel[i] = null;
+		}
+	}
+
+	/**
+	 * Links an entry into the slot of the first tick at or after a time, and
+	 * after the current tick.
+	 *
+	 * @param entry the entry
+	 * @param due   the time to check the entry at
+	 */
+	private void schedule(Entry entry, long due) {
+		long t = Math.max(tick + 1, Math.ceilDiv(due - origin, tickNanos));
+		int slot = (int) (t & (WHEEL_SIZE - 1));
+
+		entry.dueTick = t;
+		entry.next = wheel[slot];
+		wheel[slot] = entry;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LockWatchdog [threshold=" + getThreshold(TimeUnit.MILLISECONDS) + " ms"
+				+ ", closed=" + closed
+				+ "]";
+	}
+
+	/**
+	 * Unregisters a lockable.
+	 *
+	 * @param lockable the lockable
+	 * @throws IllegalArgumentException if the lockable is not backed by an
+	 *                                  {@link UpgradableReadWriteLock}
+	 */
+	public void unregister(Lockable<?, ?> lockable) {
+		unregister(lockOf(lockable));
+	}
+
+	/**
+	 * Unregisters all stripes.
+	 *
+	 * @param stripes the stripes
+	 */
+	public void unregister(LockStripes stripes) {
+		for (int i = 0; i < stripes.getStripeCount(); i++)
+			unregister(stripes.getLock(i));
+	}
+
+	/**
+	 * Unregisters a lock, if registered with this watchdog.
+	 *
+	 * @param lock the lock
+	 */
+	public void unregister(UpgradableReadWriteLock lock) {
+		Entry entry = lock.getWatch();
+		if (entry != null && entry.watchdog == this)
+			lock.compareAndSetWatch(entry, null);
+	}
+}
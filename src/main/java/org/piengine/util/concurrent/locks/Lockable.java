@@ -23,10 +23,18 @@
  */
 package org.piengine.util.concurrent.locks;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import org.piengine.util.concurrent.locks.Locked.LockedSupport;
@@ -41,6 +49,88 @@ import org.piengine.util.concurrent.locks.Locked.LockedSupport;
  */
 public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteLock {
 
+	/**
+	 * A request to read or write lock a {@link Lockable}, for
+	 * {@link Lockable#lockAll(LockRequest...)}.
+	 */
+	final class LockRequest {
+
+		/**
+		 * Requests the read lock.
+		 *
+		 * @param lockable the lockable
+		 * @return the lock request
+		 */
+		public static LockRequest read(Lockable<?, ?> lockable) {
+			return new LockRequest(lockable, false);
+		}
+
+		/**
+		 * Requests the write lock.
+		 *
+		 * @param lockable the lockable
+		 * @return the lock request
+		 */
+		public static LockRequest write(Lockable<?, ?> lockable) {
+			return new LockRequest(lockable, true);
+		}
+
+		/** The lockable. */
+		private final Lockable<?, ?> lockable;
+
+		/** Whether the write lock is requested. */
+		private final boolean write;
+
+		/**
+		 * Instantiates a new lock request.
+		 *
+		 * @param lockable the lockable
+		 * @param write    whether the write lock is requested
+		 */
+		private LockRequest(Lockable<?, ?> lockable, boolean write) {
+			this.lockable = Objects.requireNonNull(lockable, "lockable");
+			this.write = write;
+		}
+
+		/**
+		 * Acquires the requested lock, waiting if necessary.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 */
+		private Locked lock() throws InterruptedException {
+			return write ? lockable.lockForWrite() : lockable.lockForRead();
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "LockRequest [" + (write ? "write " : "read ") + lockable + "]";
+		}
+
+		/**
+		 * Acquires the requested lock if that is possible without waiting,
+		 * honoring the fairness policy of the lock.
+		 *
+		 * @return the locked, or null if the lock is busy
+		 * @throws InterruptedException the interrupted exception
+		 */
+		private Locked tryLock() throws InterruptedException {
+			try {
+				return write
+						? lockable.lockForWrite(0L, TimeUnit.NANOSECONDS)
+						: lockable.lockForRead(0L, TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				return null;
+			}
+		}
+	}
+
 	/**
 	 * The Class LockableReadWrite.
 	 */
@@ -59,7 +149,35 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 * @param rwLock the rw lock
 		 */
 		public LockableReadWrite(ReadWriteLock rwLock) {
-			super(rwLock, new LockedSupport(rwLock.readLock()), new LockedSupport(rwLock.writeLock()));
+			this(rwLock, new LockedSupport(rwLock.readLock()));
+		}
+
+		/**
+		 * Instantiates a new lockable read write.
+		 *
+		 * @param rwLock     the rw lock
+		 * @param readLocked the read locked
+		 */
+		private LockableReadWrite(ReadWriteLock rwLock, LockedSupport readLocked) {
+			super(rwLock, readLocked, writeLocked(rwLock, readLocked));
+		}
+
+		/**
+		 * Creates the write token, which downgrades to {@code readLocked} when
+		 * the lock is an {@link UpgradableReadWriteLock}.
+		 *
+		 * @param rwLock     the rw lock
+		 * @param readLocked the read locked
+		 * @return the write token
+		 */
+		private static LockedSupport writeLocked(ReadWriteLock rwLock, LockedSupport readLocked) {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				return new LockedSupport(() -> upgradable.writeLock().unlock(), () -> {
+					upgradable.downgrade();
+					return readLocked;
+				});
+
+			return new LockedSupport(rwLock.writeLock());
 		}
 
 	}
@@ -92,6 +210,35 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		/** The write locked. */
 		private final Supplier<W> writeLocked;
 
+		/** The name, if the rw lock cannot hold one. */
+		private volatile String name;
+
+		/**
+		 * Collects acquisition statistics while enabled, if the rw lock cannot
+		 * collect them itself, or null.
+		 */
+		private volatile LockStatistics statistics;
+
+		/** The statistics collected so far, kept while collection is disabled. */
+		private volatile LockStatistics collectedStatistics;
+
+		/**
+		 * The read lock of the rw lock, kept since some locks, such as
+		 * {@link CompactUpgradableReadWriteLock}, create their views on demand.
+		 */
+		private final Lock readLock;
+
+		/**
+		 * The upgrade lock, or the write lock if the rw lock has no upgrade mode.
+		 */
+		private final Lock upgradeLock;
+
+		/** The write lock of the rw lock. */
+		private final Lock writeLock;
+
+		/** The upgrade locked. */
+		private final Locked upgradeLocked;
+
 		/**
 		 * Instantiates a new lockable support.
 		 *
@@ -124,6 +271,15 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 			this.rwLock = rwLock;
 			this.readLocked = readLocked;
 			this.writeLocked = writeLocked;
+			this.readLock = rwLock.readLock();
+			this.writeLock = rwLock.writeLock();
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				this.upgradeLock = upgradable.upgradeLock();
+			else if (rwLock instanceof CompactUpgradableReadWriteLock compact)
+				this.upgradeLock = compact.upgradeLock();
+			else
+				this.upgradeLock = writeLock;
+			this.upgradeLocked = new LockedSupport(upgradeLock);
 		}
 
 		/**
@@ -136,6 +292,166 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 			this(new UpgradableReadWriteLock(), readLocked, writeLocked);
 		}
 
+		/**
+		 * Gets the name, kept by the rw lock if it is an
+		 * {@link UpgradableReadWriteLock}.
+		 *
+		 * @return the name, or null
+		 * @see org.piengine.util.concurrent.locks.Lockable#getName()
+		 */
+		@Override
+		public String getName() {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				return upgradable.getName();
+
+			return name;
+		}
+
+		/**
+		 * Gets the rw lock.
+		 *
+		 * @return the rw lock
+		 */
+		ReadWriteLock getReadWriteLock() {
+			return rwLock;
+		}
+
+		/**
+		 * Gets a snapshot of the acquisition statistics, see
+		 * {@link #setStatisticsEnabled(boolean)}.
+		 *
+		 * @return the lock stats, empty if statistics were never enabled
+		 */
+		public LockStats getStatistics() {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				return upgradable.getStatistics();
+
+			LockStatistics stats = collectedStatistics;
+			return (stats != null) ? stats.snapshot(name) : new LockStats(name);
+		}
+
+		/**
+		 * Checks if acquisition statistics are being collected.
+		 *
+		 * @return true, if statistics are enabled
+		 */
+		public boolean isStatisticsEnabled() {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				return upgradable.isStatisticsEnabled();
+
+			return statistics != null;
+		}
+
+		/**
+		 * Clears the collected acquisition statistics. Collection continues if
+		 * enabled.
+		 */
+		public synchronized void resetStatistics() {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable) {
+				upgradable.resetStatistics();
+				return;
+			}
+
+			collectedStatistics = (statistics != null) ? new LockStatistics() : null;
+			statistics = collectedStatistics;
+		}
+
+		/**
+		 * Enables or disables the collection of acquisition statistics, at any
+		 * time. An {@link UpgradableReadWriteLock} collects them itself, covering
+		 * every acquisition. For any other lock, only acquisitions through the
+		 * {@code lockFor} methods of this lockable are counted, none of them as
+		 * upgrades, and since contention cannot be observed directly, any
+		 * acquisition that took {@link LockStats#CONTENDED_NANOS} or longer counts
+		 * as contended.
+		 *
+		 * @param enabled true to collect statistics
+		 * @see UpgradableReadWriteLock#setStatisticsEnabled(boolean)
+		 */
+		public synchronized void setStatisticsEnabled(boolean enabled) {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable) {
+				upgradable.setStatisticsEnabled(enabled);
+				return;
+			}
+
+			if (enabled && collectedStatistics == null)
+				collectedStatistics = new LockStatistics();
+			statistics = enabled ? collectedStatistics : null;
+		}
+
+		/**
+		 * Acquires a lock, recording the acquisition if statistics are collected
+		 * here.
+		 *
+		 * @param lock the lock
+		 * @param mode the mode
+		 */
+		private void lock(Lock lock, LockStats.Mode mode) {
+			LockStatistics stats = statistics;
+			if (stats == null) {
+				lock.lock();
+				return;
+			}
+
+			long start = System.nanoTime();
+			lock.lock();
+			stats.acquired(mode, start);
+		}
+
+		/**
+		 * Acquires a lock within the given waiting time, recording the
+		 * acquisition or the failure if statistics are collected here.
+		 *
+		 * @param lock    the lock
+		 * @param mode    the mode
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 */
+		private void lock(Lock lock, LockStats.Mode mode, long timeout, TimeUnit unit)
+				throws InterruptedException, TimeoutException {
+			LockStatistics stats = statistics;
+			long start = (stats != null) ? System.nanoTime() : 0L;
+			if (!lock.tryLock(timeout, unit)) {
+				if (stats != null)
+					stats.failed(mode);
+				throw new TimeoutException();
+			}
+
+			if (stats != null)
+				stats.acquired(mode, start);
+		}
+
+		/**
+		 * Sets the name, which an {@link UpgradableReadWriteLock} reports in its
+		 * lock events.
+		 *
+		 * @param name the name, or null
+		 */
+		public void setName(String name) {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				upgradable.setName(name);
+			else
+				this.name = name;
+		}
+
+		/**
+		 * Lock for read async. Detaches the hold from the acquiring thread when
+		 * backed by an {@link UpgradableReadWriteLock}.
+		 *
+		 * @param executor the executor
+		 * @return the future
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForReadAsync(java.util.concurrent.Executor)
+		 */
+		@Override
+		public CompletableFuture<Locked> lockForReadAsync(Executor executor) {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				return upgradable.readLockAsync(executor);
+
+			return Lockable.super.lockForReadAsync(executor);
+		}
+
 		/**
 		 * Lock for read.
 		 *
@@ -145,7 +461,7 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 */
 		@Override
 		public R lockForRead() throws InterruptedException {
-			rwLock.readLock().lock();
+			lock(readLock, LockStats.Mode.READ);
 
 			return readLocked.get();
 		}
@@ -163,12 +479,60 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 */
 		@Override
 		public R lockForRead(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
-			if (!rwLock.readLock().tryLock(timeout, unit))
-				throw new TimeoutException();
+			lock(readLock, LockStats.Mode.READ, timeout, unit);
 
 			return readLocked.get();
 		}
 
+		/**
+		 * Lock for upgrade. Locks that have no upgrade mode are write locked
+		 * instead, which is stricter but preserves the upgrade guarantees.
+		 *
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade()
+		 */
+		@Override
+		public Locked lockForUpgrade() throws InterruptedException {
+			lock(upgradeLock, LockStats.Mode.UPGRADE);
+
+			return upgradeLocked;
+		}
+
+		/**
+		 * Lock for upgrade.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForUpgrade(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			lock(upgradeLock, LockStats.Mode.UPGRADE, timeout, unit);
+
+			return upgradeLocked;
+		}
+
+		/**
+		 * Lock for write async. Detaches the lock from the acquiring thread when
+		 * backed by an {@link UpgradableReadWriteLock}.
+		 *
+		 * @param executor the executor
+		 * @return the future
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWriteAsync(java.util.concurrent.Executor)
+		 */
+		@Override
+		public CompletableFuture<Locked> lockForWriteAsync(Executor executor) {
+			if (rwLock instanceof UpgradableReadWriteLock upgradable)
+				return upgradable.writeLockAsync(executor);
+
+			return Lockable.super.lockForWriteAsync(executor);
+		}
+
 		/**
 		 * Lock for write.
 		 *
@@ -178,7 +542,7 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 */
 		@Override
 		public W lockForWrite() throws InterruptedException {
-			rwLock.writeLock().lock();
+			lock(writeLock, LockStats.Mode.WRITE);
 
 			return writeLocked.get();
 		}
@@ -196,8 +560,7 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 */
 		@Override
 		public W lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
-			if (!rwLock.writeLock().tryLock(timeout, unit))
-				throw new TimeoutException();
+			lock(writeLock, LockStats.Mode.WRITE, timeout, unit);
 
 			return writeLocked.get();
 		}
@@ -210,7 +573,38 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 */
 		@Override
 		public Lock readLock() {
-			return rwLock.readLock();
+			return readLock;
+		}
+
+		/**
+		 * Try optimistic read. Only locks backed by an
+		 * {@link UpgradableReadWriteLock} support optimistic reads, for any other
+		 * lock this always returns zero.
+		 *
+		 * @return the stamp, or zero if not available
+		 * @see org.piengine.util.concurrent.locks.Lockable#tryOptimisticRead()
+		 */
+		@Override
+		public long tryOptimisticRead() {
+			if (rwLock instanceof UpgradableReadWriteLock versioned)
+				return versioned.tryOptimisticRead();
+
+			return 0L;
+		}
+
+		/**
+		 * Validate.
+		 *
+		 * @param stamp the stamp
+		 * @return true, if successful
+		 * @see org.piengine.util.concurrent.locks.Lockable#validate(long)
+		 */
+		@Override
+		public boolean validate(long stamp) {
+			if (rwLock instanceof UpgradableReadWriteLock versioned)
+				return versioned.validate(stamp);
+
+			return false;
 		}
 
 		/**
@@ -221,11 +615,110 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 		 */
 		@Override
 		public Lock writeLock() {
-			return rwLock.writeLock();
+			return writeLock;
 		}
 
 	}
 
+	/**
+	 * Locks many lockables at once, without risking deadlock. The requests are
+	 * ordered by {@link #lockRank()}, and requests for the same lockable are
+	 * merged, with a write request winning over a read request.
+	 *
+	 * <p>
+	 * The locks are first tried in rank order without waiting, so that the
+	 * uncontended case costs no more than taking each lock by hand. Once one is
+	 * busy, all locks taken so far are released, the thread waits for the busy
+	 * one alone and then tries the others, starting after it. No thread ever
+	 * waits while holding locks from the same call, so bulk acquisitions cannot
+	 * deadlock with each other, nor with threads that take a single lock.
+	 * </p>
+	 *
+	 * @param requests the lock requests
+	 * @return the locked, releasing all locks in reverse rank order
+	 * @throws InterruptedException the interrupted exception, with none of the
+	 *                              locks held
+	 */
+	static Locked lockAll(LockRequest... requests) throws InterruptedException {
+		LockRequest[] sorted = requests.clone();
+		Arrays.sort(sorted, Comparator.comparingLong(r -> r.lockable.lockRank()));
+
+		// Merge requests for the same lockable, which may not be adjacent if ranks tie
+		int n = 0;
+		next: for (LockRequest request : sorted) {
+			for (int i = n - 1; i >= 0 && sorted[i].lockable.lockRank() == request.lockable.lockRank(); i--) {
+				if (sorted[i].lockable == request.lockable) {
+					if (request.write)
+						sorted[i] = request;
+					continue next;
+				}
+			}
+			sorted[n++] = request;
+		}
+
+		Locked[] held = new Locked[n];
+		int start = 0;
+		boolean wait = false;
+		for (;;) {
+			int failed = -1;
+			boolean complete = false;
+			try {
+				for (int k = 0; k < n; k++) {
+					int i = (start + k) % n;
+					Locked locked = (wait && k == 0) ? sorted[i].lock() : sorted[i].tryLock();
+					if (locked == null) {
+						failed = i;
+						break;
+					}
+					held[i] = locked;
+				}
+				complete = (failed == -1);
+			} finally {
+				if (!complete)
+					unlockAll(held);
+			}
+
+			if (failed == -1)
+				return () -> unlockAll(held);
+
+			// Back off, then wait for the busy lock first
+			start = failed;
+			wait = true;
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Acquires the read lock without blocking the caller. The future completes
+	 * once the lock is granted, on the granting thread. See
+	 * {@link #lockForReadAsync(Executor)}.
+	 *
+	 * @return the future
+	 */
+	default CompletableFuture<Locked> lockForReadAsync() {
+		return lockForReadAsync(null);
+	}
+
+	/**
+	 * Acquires the read lock without blocking the caller. A contended
+	 * acquisition waits on a virtual thread. The returned {@link Locked} owns
+	 * the hold, rather than any thread, and may be released by any thread,
+	 * including the one the future completes on.
+	 *
+	 * <p>
+	 * By default, the virtual thread that acquired the lock stays parked as its
+	 * owner until the hold is released. Lockables backed by an
+	 * {@link UpgradableReadWriteLock} detach the hold instead.
+	 * </p>
+	 *
+	 * @param executor the executor to complete on, or null to complete on the
+	 *                 granting thread
+	 * @return the future
+	 */
+	default CompletableFuture<Locked> lockForReadAsync(Executor executor) {
+		return AsyncAcquisition.holding(this::lockForRead, executor);
+	}
+
 	/**
 	 * Lock for read.
 	 *
@@ -245,6 +738,66 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 	 */
 	R lockForRead(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException;
 
+	/**
+	 * Lock for upgrade. The upgrade lock coexists with readers but excludes
+	 * writers and other upgraders. While holding it, {@link #lockForWrite()}
+	 * upgrades atomically, so whatever was read under the upgrade lock is still
+	 * valid once the write lock is granted. Must not be called while holding
+	 * only a read lock.
+	 *
+	 * <p>
+	 * By default the write lock is taken instead. It keeps the same guarantee
+	 * but also excludes readers, and upgrading then relies on the write lock
+	 * being reentrant.
+	 * </p>
+	 *
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 */
+	default Locked lockForUpgrade() throws InterruptedException {
+		return lockForWrite();
+	}
+
+	/**
+	 * Lock for upgrade. By default the write lock is taken instead, as by
+	 * {@link #lockForUpgrade()}.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 */
+	default Locked lockForUpgrade(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return lockForWrite(timeout, unit);
+	}
+
+	/**
+	 * Acquires the write lock without blocking the caller. The future completes
+	 * once the lock is granted, on the granting thread. See
+	 * {@link #lockForWriteAsync(Executor)}.
+	 *
+	 * @return the future
+	 */
+	default CompletableFuture<Locked> lockForWriteAsync() {
+		return lockForWriteAsync(null);
+	}
+
+	/**
+	 * Acquires the write lock without blocking the caller. A contended
+	 * acquisition waits on a virtual thread. The returned {@link Locked} owns
+	 * the lock, rather than any thread, and may be released by any thread,
+	 * including the one the future completes on.
+	 *
+	 * @param executor the executor to complete on, or null to complete on the
+	 *                 granting thread
+	 * @return the future
+	 * @see #lockForReadAsync(Executor)
+	 */
+	default CompletableFuture<Locked> lockForWriteAsync(Executor executor) {
+		return AsyncAcquisition.holding(this::lockForWrite, executor);
+	}
+
 	/**
 	 * Lock for write.
 	 *
@@ -264,4 +817,257 @@ public interface Lockable<R extends Locked, W extends Locked> extends ReadWriteL
 	 */
 	W lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException;
 
+	/**
+	 * Gets the name of this lockable, reported by lock events and monitoring.
+	 * Lockables are unnamed by default.
+	 *
+	 * @return the name, or null if unnamed
+	 */
+	default String getName() {
+		return null;
+	}
+
+	/**
+	 * Gets the rank of this lockable, which orders acquisitions by
+	 * {@link #lockAll(LockRequest...)}. Defaults to the identity hash code.
+	 * Lockables with a natural, stable id, such as scene nodes, may return it
+	 * instead, to give bulk acquisitions the same order in every run and make
+	 * it safe to take them in rank order by hand as well.
+	 *
+	 * @return the rank
+	 */
+	default long lockRank() {
+		return System.identityHashCode(this);
+	}
+
+	/**
+	 * Reads optimistically, falling back to a read lock. The {@code reader} is
+	 * first run without any lock and its result is returned if no writer
+	 * intervened. Otherwise it is run again under {@link #lockForRead()}.
+	 * Because the first run may observe inconsistent state, {@code reader} must
+	 * be free of side effects and tolerate torn values.
+	 *
+	 * @param <T>    the result type
+	 * @param reader the reader
+	 * @return the value read
+	 * @throws InterruptedException the interrupted exception
+	 */
+	default <T> T readOptimistically(Supplier<T> reader) throws InterruptedException {
+		long stamp = tryOptimisticRead();
+		if (stamp != 0L) {
+			T value = reader.get();
+			if (validate(stamp))
+				return value;
+		}
+
+		R locked = lockForRead();
+		try {
+			return reader.get();
+		} finally {
+			locked.unlock();
+		}
+	}
+
+	/**
+	 * Applies a function under the read lock, acquiring and releasing it
+	 * internally. Unlike a {@code try} block over {@link #lockForRead()}, it
+	 * throws no checked exception: the lock is acquired uninterruptibly and an
+	 * interrupt received while waiting is re-asserted. Allocates nothing beyond
+	 * what {@link #lockForRead()} does.
+	 *
+	 * @param <T>    the result type
+	 * @param reader the reader, given the read locked token
+	 * @return the result of the reader
+	 */
+	default <T> T read(Function<? super R, ? extends T> reader) {
+		R locked = lockForReadUninterruptibly();
+		try {
+			return reader.apply(locked);
+		} finally {
+			unlockUninterruptibly(locked);
+		}
+	}
+
+	/**
+	 * Checks under the read lock whether a write is needed and, if so, writes
+	 * without letting another writer in between. Holds the upgrade lock
+	 * throughout, so concurrent readers are not blocked until the write itself.
+	 * Acquires uninterruptibly, as {@link #read(Function)} does.
+	 *
+	 * @param needsWrite tests, given the read locked token, whether to write
+	 * @param writer     the writer, given the write locked token
+	 * @return true, if written
+	 */
+	default boolean readThenMaybeWrite(Predicate<? super R> needsWrite, Consumer<? super W> writer) {
+		Locked upgrade = lockForUpgradeUninterruptibly();
+		try {
+			R read = lockForReadUninterruptibly();
+			boolean write;
+			try {
+				write = needsWrite.test(read);
+			} finally {
+				unlockUninterruptibly(read);
+			}
+
+			if (write)
+				write(writer);
+
+			return write;
+		} finally {
+			unlockUninterruptibly(upgrade);
+		}
+	}
+
+	/**
+	 * Applies a consumer under the write lock, acquiring and releasing it
+	 * internally. Acquires uninterruptibly, as {@link #read(Function)} does.
+	 *
+	 * @param writer the writer, given the write locked token
+	 */
+	default void write(Consumer<? super W> writer) {
+		W locked = lockForWriteUninterruptibly();
+		try {
+			writer.accept(locked);
+		} finally {
+			unlockUninterruptibly(locked);
+		}
+	}
+
+	/**
+	 * Acquires the read lock, retrying if interrupted and re-asserting the
+	 * interrupt once acquired.
+	 *
+	 * @return the r
+	 */
+	private R lockForReadUninterruptibly() {
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				try {
+					return lockForRead();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Acquires the upgrade lock, retrying if interrupted and re-asserting the
+	 * interrupt once acquired.
+	 *
+	 * @return the locked
+	 */
+	private Locked lockForUpgradeUninterruptibly() {
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				try {
+					return lockForUpgrade();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Acquires the write lock, retrying if interrupted and re-asserting the
+	 * interrupt once acquired.
+	 *
+	 * @return the w
+	 */
+	private W lockForWriteUninterruptibly() {
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				try {
+					return lockForWrite();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Unlocks, re-asserting an interrupt instead of throwing it.
+	 *
+	 * @param locked the locked
+	 */
+	private static void unlockUninterruptibly(Locked locked) {
+		try {
+			locked.unlock();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Unlock all. Releases the locks held by a bulk acquisition, in reverse
+	 * order, and clears them, so that releasing again does nothing. A failure to
+	 * release one lock does not keep the others held; the first failure is
+	 * rethrown once all are released, with any later ones suppressed.
+	 *
+	 * @param held the held locks, with null for those not held
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private static void unlockAll(Locked[] held) throws InterruptedException {
+		Throwable failure = null;
+		for (int i = held.length - 1; i >= 0; i--) {
+			if (held[i] != null) {
+				Locked locked = held[i];
+				held[i] = null;
+				try {
+					locked.unlock();
+				} catch (InterruptedException | RuntimeException | Error e) {
+					if (failure == null)
+						failure = e;
+					else
+						failure.addSuppressed(e);
+				}
+			}
+		}
+
+		if (failure instanceof InterruptedException e)
+			throw e;
+		if (failure instanceof RuntimeException e)
+			throw e;
+		if (failure instanceof Error e)
+			throw e;
+	}
+
+	/**
+	 * Returns a stamp for an optimistic read, to be checked later with
+	 * {@link #validate(long)}. Obtaining and validating a stamp writes to no
+	 * shared memory. By default optimistic reading is not supported, and zero
+	 * is always returned.
+	 *
+	 * @return a non-zero stamp, or zero if optimistic reading is currently not
+	 *         possible
+	 */
+	default long tryOptimisticRead() {
+		return 0L;
+	}
+
+	/**
+	 * Checks that no writer has held the lock since the stamp was issued. By
+	 * default no stamp is ever valid.
+	 *
+	 * @param stamp the stamp from {@link #tryOptimisticRead()}
+	 * @return true, if the stamp is still valid
+	 */
+	default boolean validate(long stamp) {
+		return false;
+	}
+
 }
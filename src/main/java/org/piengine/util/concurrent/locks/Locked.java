@@ -24,6 +24,7 @@
 package org.piengine.util.concurrent.locks;
 
 import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 
 /**
  * The Interface Locked.
@@ -41,13 +42,29 @@ public interface Locked extends AutoCloseable {
 		/** The locked. */
 		private final Locked locked;
 
+		/** Downgrades the write hold, or null if not supported. */
+		private final Supplier<? extends Locked> downgrade;
+
 		/**
 		 * Instantiates a new locked support.
 		 *
 		 * @param locked the locked
 		 */
 		public LockedSupport(Locked locked) {
+			this(locked, null);
+		}
+
+		/**
+		 * Instantiates a new locked support for a write hold that can be
+		 * downgraded.
+		 *
+		 * @param locked    the locked
+		 * @param downgrade converts the write hold into a read hold and returns
+		 *                  the read token, or null if not supported
+		 */
+		public LockedSupport(Locked locked, Supplier<? extends Locked> downgrade) {
 			this.locked = locked;
+			this.downgrade = downgrade;
 		}
 
 		/**
@@ -59,6 +76,20 @@ public interface Locked extends AutoCloseable {
 			this(() -> lock.unlock());
 		}
 
+		/**
+		 * Downgrade.
+		 *
+		 * @return the read token
+		 * @see org.piengine.util.concurrent.locks.Locked#downgrade()
+		 */
+		@Override
+		public Locked downgrade() {
+			if (downgrade == null)
+				return Locked.super.downgrade();
+
+			return downgrade.get();
+		}
+
 		/**
 		 * Unlock.
 		 *
@@ -82,6 +113,21 @@ public interface Locked extends AutoCloseable {
 		unlock();
 	}
 
+	/**
+	 * Converts the write hold this token stands for into a read hold, without
+	 * a window in which another writer could get in. This token must no longer
+	 * be unlocked; the returned read token is unlocked instead.
+	 *
+	 * @return the read token
+	 * @throws UnsupportedOperationException if this is not a write token, or the
+	 *                                       lock cannot downgrade
+	 * @throws IllegalMonitorStateException  if the write lock is not held by the
+	 *                                       current thread exactly once
+	 */
+	default Locked downgrade() {
+		throw new UnsupportedOperationException("Downgrade not supported");
+	}
+
 	/**
 	 * Unlock.
 	 *
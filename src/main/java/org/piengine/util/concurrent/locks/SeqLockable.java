@@ -0,0 +1,684 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.piengine.util.concurrent.locks.Locked.LockedSupport;
+
+/**
+ * A sequence lock, for small values such as transforms, bounding boxes and
+ * camera matrices that many threads read every frame and one thread rarely
+ * writes. Readers never write to shared memory: they read the data between two
+ * reads of a sequence number and retry if a writer intervened. Writers exclude
+ * each other with a mutex and make the sequence odd while they write.
+ *
+ * <p>
+ * {@link #lockForRead()} returns a {@link ReadScope} that must be retried until
+ * the data read was consistent:
+ * </p>
+ *
+ * <pre>{@code
+ * try (ReadScope scope = seq.lockForRead()) {
+ * 	do {
+ * 		x = transform.x;
+ * 		y = transform.y;
+ * 	} while (scope.retry());
+ * }
+ * }</pre>
+ *
+ * <p>
+ * The data read within a scope may be torn until {@link ReadScope#retry()}
+ * returns false, so it must be read into locals and only used afterwards. A
+ * reader that keeps losing to writers eventually takes the mutex, so that it
+ * cannot starve. The same mutex backs {@link #readLock()}, which excludes
+ * writers and other pessimistic readers.
+ * </p>
+ *
+ * <p>
+ * {@link #lockForUpgrade()} takes the mutex without touching the sequence, so
+ * readers keep going until the upgrade lock owner converts with
+ * {@link #lockForWrite()}.
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class SeqLockable implements Lockable<SeqLockable.ReadScope, Locked> {
+
+	/**
+	 * A read scope, which validates the data read against the sequence.
+	 */
+	public static final class ReadScope implements Locked {
+
+		/** The lock. */
+		private final SeqLockable lock;
+
+		/** The sequence the current attempt started at. */
+		private long stamp;
+
+		/** The number of attempts that failed validation. */
+		private int failures;
+
+		/** Whether no writer can intervene, as the reading thread holds the mutex. */
+		private boolean exclusive;
+
+		/** Whether the mutex was taken by this scope and must be released. */
+		private boolean release;
+
+		/**
+		 * Instantiates a new read scope.
+		 *
+		 * @param lock the lock
+		 */
+		private ReadScope(SeqLockable lock) {
+			this.lock = lock;
+			this.exclusive = lock.mutex.isHeldByCurrentThread();
+			if (!exclusive)
+				this.stamp = lock.awaitEven();
+		}
+
+		/**
+		 * Instantiates a new read scope, waiting at most {@code nanos} for an
+		 * active writer to finish.
+		 *
+		 * @param lock  the lock
+		 * @param nanos the maximum time to wait
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     if the writer is still active
+		 */
+		private ReadScope(SeqLockable lock, long nanos) throws InterruptedException, TimeoutException {
+			this.lock = lock;
+			this.exclusive = lock.mutex.isHeldByCurrentThread();
+			if (!exclusive)
+				this.stamp = lock.awaitEven(nanos);
+		}
+
+		/**
+		 * Instantiates a new read scope, taking over a hold of the mutex.
+		 *
+		 * @param lock    the lock
+		 * @param release whether the scope releases the mutex when closed
+		 */
+		private ReadScope(SeqLockable lock, boolean release) {
+			this.lock = lock;
+			this.exclusive = true;
+			this.release = release;
+		}
+
+		/**
+		 * Checks if the data read since the scope was opened, or since the last
+		 * retry, is consistent.
+		 *
+		 * @return true, if no writer intervened
+		 */
+		public boolean isValid() {
+			if (exclusive)
+				return true;
+
+			VarHandle.acquireFence(); // data reads before the sequence read
+			return lock.sequence == stamp;
+		}
+
+		/**
+		 * Checks the data read and prepares the next attempt if it was torn.
+		 * After {@link SeqLockable#MAX_OPTIMISTIC_FAILURES} failures, takes the
+		 * mutex, so that the next attempt is certain to succeed.
+		 *
+		 * @return true, if the data must be read again
+		 */
+		public boolean retry() {
+			if (isValid())
+				return false;
+
+			if (++failures >= MAX_OPTIMISTIC_FAILURES) {
+				lock.mutex.lock();
+				exclusive = true;
+				release = true;
+			} else {
+				stamp = lock.awaitEven();
+			}
+			return true;
+		}
+
+		/**
+		 * Close, which never throws.
+		 *
+		 * @see org.piengine.util.concurrent.locks.Locked#close()
+		 */
+		@Override
+		public void close() {
+			unlock();
+		}
+
+		/**
+		 * Closes the scope, releasing the mutex if a starving reader took it.
+		 *
+		 * @see org.piengine.util.concurrent.locks.Locked#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (release) {
+				release = false;
+				exclusive = false;
+				lock.mutex.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The Class ReadLock. Pessimistic reads, excluding writers through the mutex.
+	 */
+	private final class ReadLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			mutex.lock();
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			mutex.lockInterruptibly();
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			return mutex.tryLock();
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			return mutex.tryLock(time, unit);
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * The Class WriteLock. Takes the mutex and makes the sequence odd on the
+	 * outermost acquisition.
+	 */
+	private final class WriteLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			mutex.lock();
+			beginWrite();
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			mutex.lockInterruptibly();
+			beginWrite();
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			if (!mutex.tryLock())
+				return false;
+
+			beginWrite();
+			return true;
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			if (!mutex.tryLock(time, unit))
+				return false;
+
+			beginWrite();
+			return true;
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (!mutex.isHeldByCurrentThread() || writeHolds == 0)
+				throw new IllegalMonitorStateException("Thread does not hold write lock");
+
+			if (--writeHolds == 0)
+				SEQUENCE.setRelease(SeqLockable.this, sequence + 1); // even, write done
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * The number of failed optimistic attempts after which a reader takes the
+	 * mutex.
+	 */
+	public static final int MAX_OPTIMISTIC_FAILURES = 8;
+
+	/** Spins while a writer is active before yielding. */
+	private static final int SPINS = 64;
+
+	/** The sequence var handle. */
+	private static final VarHandle SEQUENCE;
+
+	static {
+		try {
+			SEQUENCE = MethodHandles.lookup().findVarHandle(SeqLockable.class, "sequence", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** The sequence, odd while a writer is active. Never zero once read. */
+	private volatile long sequence = 2L;
+
+	/** Excludes writers, upgraders and pessimistic readers from each other. */
+	private final ReentrantLock mutex = new ReentrantLock();
+
+	/** The write hold count of the mutex owner. */
+	private int writeHolds;
+
+	/** The read lock view. */
+	private final Lock readLock = new ReadLock();
+
+	/** The write lock view. */
+	private final Lock writeLock = new WriteLock();
+
+	/** The write locked. */
+	private final Locked writeLocked = new LockedSupport(() -> writeLock.unlock(), this::downgrade);
+
+	/** The upgrade locked. */
+	private final Locked upgradeLocked = () -> mutex.unlock();
+
+	/**
+	 * Instantiates a new sequence lockable.
+	 */
+	public SeqLockable() {
+	}
+
+	/**
+	 * Waits while a writer is active.
+	 *
+	 * @return the even sequence
+	 */
+	private long awaitEven() {
+		long s;
+		for (int spins = 0; ((s = sequence) & 1L) != 0L; spins++) {
+			if (spins < SPINS)
+				Thread.onSpinWait();
+			else
+				Thread.yield();
+		}
+		return s;
+	}
+
+	/**
+	 * Waits while a writer is active, for at most {@code nanos}.
+	 *
+	 * @param nanos the maximum time to wait
+	 * @return the even sequence
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     if the writer is still active
+	 */
+	private long awaitEven(long nanos) throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + nanos;
+		long s;
+		for (int spins = 0; ((s = sequence) & 1L) != 0L; spins++) {
+			if (spins < SPINS) {
+				Thread.onSpinWait();
+			} else {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				if (System.nanoTime() - deadline >= 0L)
+					throw new TimeoutException();
+				Thread.yield();
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Counts a write hold of the mutex owner, making the sequence odd on the
+	 * outermost one.
+	 */
+	private void beginWrite() {
+		if (writeHolds++ == 0)
+			SEQUENCE.getAndAdd(this, 1L); // odd, full fence before any data writes
+	}
+
+	/**
+	 * Downgrades the write lock of the current thread to a read scope, which
+	 * keeps the mutex so that no writer can get in. The sequence becomes even,
+	 * so optimistic readers proceed.
+	 *
+	 * @return the read scope, which releases the mutex when closed
+	 * @throws IllegalMonitorStateException if the current thread does not hold
+	 *                                      the write lock exactly once
+	 */
+	public ReadScope downgrade() {
+		if (!mutex.isHeldByCurrentThread() || writeHolds != 1)
+			throw new IllegalMonitorStateException("Thread does not hold write lock exactly once");
+
+		writeHolds = 0;
+		SEQUENCE.setRelease(this, sequence + 1); // even, write done
+
+		return new ReadScope(this, true);
+	}
+
+	/**
+	 * Opens a read scope. Never waits for the mutex, only for an active writer
+	 * to finish.
+	 *
+	 * @return the read scope
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead()
+	 */
+	@Override
+	public ReadScope lockForRead() {
+		return new ReadScope(this);
+	}
+
+	/**
+	 * Opens a read scope, which never waits for the mutex, only for an active
+	 * writer to finish, and for that at most the timeout.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the read scope
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     if a writer is still active
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead(long,
+	 *      java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public ReadScope lockForRead(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return new ReadScope(this, unit.toNanos(timeout));
+	}
+
+	/**
+	 * Lock for upgrade. Takes the mutex without changing the sequence, so that
+	 * optimistic readers are not disturbed until the owner write locks.
+	 *
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade()
+	 */
+	@Override
+	public Locked lockForUpgrade() throws InterruptedException {
+		mutex.lockInterruptibly();
+
+		return upgradeLocked;
+	}
+
+	/**
+	 * Lock for upgrade.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForUpgrade(long,
+	 *      java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Locked lockForUpgrade(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!mutex.tryLock(timeout, unit))
+			throw new TimeoutException();
+
+		return upgradeLocked;
+	}
+
+	/**
+	 * Lock for write.
+	 *
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite()
+	 */
+	@Override
+	public Locked lockForWrite() throws InterruptedException {
+		writeLock.lockInterruptibly();
+
+		return writeLocked;
+	}
+
+	/**
+	 * Lock for write.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the unit
+	 * @return the locked
+	 * @throws InterruptedException the interrupted exception
+	 * @throws TimeoutException     the timeout exception
+	 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite(long,
+	 *      java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Locked lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!writeLock.tryLock(timeout, unit))
+			throw new TimeoutException();
+
+		return writeLocked;
+	}
+
+	/**
+	 * Read lock, excluding writers through the mutex. Prefer
+	 * {@link #lockForRead()} for reads that never block each other.
+	 *
+	 * @return the lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+	 */
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	/**
+	 * Applies a function within a read scope, retrying until what it read is
+	 * consistent. {@code reader} must be free of side effects and tolerate torn
+	 * values, as with {@link #readOptimistically(Supplier)}.
+	 *
+	 * @param <T>    the result type
+	 * @param reader the reader
+	 * @return the result of the last, consistent run
+	 * @see org.piengine.util.concurrent.locks.Lockable#read(java.util.function.Function)
+	 */
+	@Override
+	public <T> T read(Function<? super ReadScope, ? extends T> reader) {
+		ReadScope scope = new ReadScope(this);
+		try {
+			T value;
+			do {
+				value = reader.apply(scope);
+			} while (scope.retry());
+
+			return value;
+		} finally {
+			scope.unlock();
+		}
+	}
+
+	/**
+	 * Reads within a read scope, retrying until the value read is consistent.
+	 * {@code reader} must be free of side effects and tolerate torn values.
+	 *
+	 * @param <T>    the result type
+	 * @param reader the reader
+	 * @return the value read
+	 * @see org.piengine.util.concurrent.locks.Lockable#readOptimistically(java.util.function.Supplier)
+	 */
+	@Override
+	public <T> T readOptimistically(Supplier<T> reader) {
+		ReadScope scope = new ReadScope(this);
+		try {
+			T value;
+			do {
+				value = reader.get();
+			} while (scope.retry());
+
+			return value;
+		} finally {
+			scope.unlock();
+		}
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SeqLockable [sequence=" + sequence + ", mutex=" + mutex + "]";
+	}
+
+	/**
+	 * Try optimistic read.
+	 *
+	 * @return the sequence, or zero while a writer is active
+	 * @see org.piengine.util.concurrent.locks.Lockable#tryOptimisticRead()
+	 */
+	@Override
+	public long tryOptimisticRead() {
+		long s = sequence;
+
+		return ((s & 1L) == 0L) ? s : 0L;
+	}
+
+	/**
+	 * Validate.
+	 *
+	 * @param stamp the stamp
+	 * @return true, if no writer has been active since the stamp was issued
+	 * @see org.piengine.util.concurrent.locks.Lockable#validate(long)
+	 */
+	@Override
+	public boolean validate(long stamp) {
+		VarHandle.acquireFence(); // data reads before the sequence read
+
+		return stamp != 0L && sequence == stamp;
+	}
+
+	/**
+	 * Write lock. The outermost acquisition makes the sequence odd until the
+	 * matching release.
+	 *
+	 * @return the lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+	 */
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+}
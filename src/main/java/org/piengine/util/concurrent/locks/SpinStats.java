@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+/**
+ * A snapshot of the adaptive spinning statistics of a lock, used to tune spin
+ * budgets. Counters are cumulative since the lock was created and only
+ * approximately consistent with each other under concurrent updates.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class SpinStats {
+
+	/** The spin budget. */
+	private final int budget;
+
+	/** The number of spins. */
+	private final long spins;
+
+	/** The number of successful spins. */
+	private final long successes;
+
+	/** The total number of iterations. */
+	private final long iterations;
+
+	/**
+	 * Instantiates a new spin stats snapshot.
+	 *
+	 * @param budget     the spin budget
+	 * @param spins      the number of spins
+	 * @param successes  the number of successful spins
+	 * @param iterations the total number of iterations
+	 */
+	SpinStats(int budget, long spins, long successes, long iterations) {
+		this.budget = budget;
+		this.spins = spins;
+		this.successes = successes;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Gets the current spin budget, in iterations, learned by the lock.
+	 *
+	 * @return the spin budget
+	 */
+	public int getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Gets the total number of spin iterations.
+	 *
+	 * @return the iterations
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Gets the number of spins that exhausted the budget and went on to park.
+	 *
+	 * @return the parks
+	 */
+	public long getParks() {
+		return spins - successes;
+	}
+
+	/**
+	 * Gets the number of contended acquisitions that spun.
+	 *
+	 * @return the spins
+	 */
+	public long getSpins() {
+		return spins;
+	}
+
+	/**
+	 * Gets the number of spins that ended with the lock free, avoiding a park.
+	 *
+	 * @return the successes
+	 */
+	public long getSuccesses() {
+		return successes;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SpinStats [budget=" + budget
+				+ ", spins=" + spins
+				+ ", successes=" + successes
+				+ ", parks=" + getParks()
+				+ ", iterations=" + iterations
+				+ "]";
+	}
+}
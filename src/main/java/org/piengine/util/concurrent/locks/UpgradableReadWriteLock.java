@@ -23,29 +23,150 @@
  */
 package org.piengine.util.concurrent.locks;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.regex.Pattern;
+import java.util.function.BooleanSupplier;
+
+import org.piengine.util.concurrent.locks.LockStats.Mode;
 
 /**
  * A high-performance read-write lock with support for upgrading from read to
  * write lock, optimized for virtual threads in a multi-threaded 3D scene graph.
- * Prevents deadlocks when multiple threads upgrade by allowing upgrades when
- * all readers are upgraders or no readers remain. Used for locking juncture
- * nodes (e.g., physics, audio, geometry).
+ * Prevents deadlocks when multiple threads upgrade by having upgrading readers
+ * give up their read holds before they wait for the write lock. Used for
+ * locking juncture nodes (e.g., physics, audio, geometry).
+ *
+ * <p>
+ * Upgrading from the read lock releases it before the write lock is granted.
+ * Threads that need an atomic upgrade take the {@link #upgradeLock()} instead
+ * of the read lock: it coexists with readers, excludes other upgraders and
+ * writers, and converts to the write lock without releasing.
+ * </p>
+ *
+ * <p>
+ * The reader count, the write hold count and the upgrade lock are encoded in a
+ * single state word, so that an uncontended acquisition or release in any mode
+ * is a single compare-and-set, and a release wakes only the threads that can
+ * make progress.
+ * </p>
+ *
+ * <p>
+ * A lock created with {@code readerBiased} set is optimized for read-mostly
+ * data. While the bias is in effect, readers publish themselves into a shared,
+ * striped table of visible readers and never touch the lock's central state.
+ * A writer revokes the bias, waits for the published readers to drain and
+ * keeps the bias off for a while, proportional to how long the revocation
+ * took, so that write-heavy phases fall back to the regular read path.
+ * </p>
+ *
+ * <p>
+ * Very short reads can skip locking altogether with
+ * {@link #tryOptimisticRead()} and {@link #validate(long)}, falling back to the
+ * read lock if a writer intervened.
+ * </p>
+ *
+ * <p>
+ * The {@link Policy} chosen at construction decides the order in which waiting
+ * readers and writers are served. The default is {@link Policy#FAIR}.
+ * {@link Policy#PHASE_FAIR} bounds waiting on both sides at a much lower cost
+ * and is the better choice for mixed read-write load.
+ * </p>
  */
 public class UpgradableReadWriteLock implements ReadWriteLock {
-	
+
+	/**
+	 * Per-thread read hold count. Only ever touched by its owning thread, so the
+	 * counter needs no synchronization and is reused across acquire/release pairs.
+	 */
+	private static final class HoldCounter {
+
+		/** The hold count. */
+		int count;
+
+		/** The owning thread id, used to validate the cached counter. */
+		final long tid = Thread.currentThread().threadId();
+	}
+
+	/**
+	 * The policy deciding the order in which waiting readers and writers are
+	 * granted the lock.
+	 */
+	public enum Policy {
+
+		/**
+		 * No ordering guarantees. Highest throughput, but a continuous stream of
+		 * readers or writers can delay the other side indefinitely.
+		 */
+		NON_FAIR(false, false),
+
+		/**
+		 * Approximately FIFO arrival order for readers and writers alike. Bounds
+		 * waiting for everyone, at a substantial cost in throughput under mixed
+		 * load. This is the default.
+		 */
+		FAIR(true, true),
+
+		/**
+		 * New readers wait while any writer is waiting or active. Minimizes writer
+		 * latency, but a continuous stream of writers can starve readers.
+		 */
+		WRITER_PREFERRING(false, false),
+
+		/**
+		 * Readers and writers alternate in phases. Readers arriving while a
+		 * writer waits or writes are admitted together as soon as that writer
+		 * releases, before the next writer, and writers are served in FIFO order.
+		 * A writer therefore waits for at most one read phase and a reader for at
+		 * most one write phase, without the cost of fair ordering among readers.
+		 */
+		PHASE_FAIR(false, true);
+
+		/** Whether new readers queue behind waiting threads instead of barging. */
+		private final boolean fairReaders;
+
+		/**
+		 * Whether new writers and upgraders queue behind waiting threads instead of
+		 * barging.
+		 */
+		private final boolean fairWriters;
+
+		/**
+		 * Instantiates a new policy.
+		 *
+		 * @param fairReaders whether readers queue behind waiting threads
+		 * @param fairWriters whether writers queue behind waiting threads
+		 */
+		Policy(boolean fairReaders, boolean fairWriters) {
+			this.fairReaders = fairReaders;
+			this.fairWriters = fairWriters;
+		}
+
+		/**
+		 * Checks if this policy holds back new readers while writers wait.
+		 *
+		 * @return true, if readers are gated
+		 */
+		boolean gatesReaders() {
+			return this == WRITER_PREFERRING || this == PHASE_FAIR;
+		}
+	}
+
 	/**
 	 * The Class ReadLock.
 	 */
 	private class ReadLock implements Lock {
-		
+
 		/**
 		 * Lock.
 		 *
@@ -54,9 +175,20 @@ public class UpgradableReadWriteLock implements ReadWriteLock {
 		@Override
 		public void lock() {
 			Thread current = Thread.currentThread();
-			rwLock.readLock().lock();
-			readHolds.compute(current, (k, v) -> (v == null) ? 1 : v + 1);
-			readerCount.incrementAndGet();
+			if (tryBiasedRead(current)) {
+				recordAcquired(Mode.READ);
+				return;
+			}
+
+			LockStatistics stats = statistics;
+			long start = (stats != null) ? System.nanoTime() : 0L;
+			LockEvents.Contended event = LockEvents.beginContended();
+			long gate = enterReadGate(current);
+			sync.acquireQueuedShared(1L);
+			leaveReadGate(gate);
+			LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.READ);
+			recordAcquired(stats, Mode.READ, start);
+			restoreReaderBias();
 		}
 
 		/**
@@ -68,9 +200,23 @@ public class UpgradableReadWriteLock implements ReadWriteLock {
 		@Override
 		public void lockInterruptibly() throws InterruptedException {
 			Thread current = Thread.currentThread();
-			rwLock.readLock().lockInterruptibly();
-			readHolds.compute(current, (k, v) -> (v == null) ? 1 : v + 1);
-			readerCount.incrementAndGet();
+			if (tryBiasedRead(current)) {
+				recordAcquired(Mode.READ);
+				return;
+			}
+
+			LockStatistics stats = statistics;
+			long start = (stats != null) ? System.nanoTime() : 0L;
+			LockEvents.Contended event = LockEvents.beginContended();
+			long gate = enterReadGateInterruptibly(current, Long.MAX_VALUE);
+			try {
+				sync.acquireQueuedSharedInterruptibly(1L);
+			} finally {
+				leaveReadGate(gate);
+			}
+			LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.READ);
+			recordAcquired(stats, Mode.READ, start);
+			restoreReaderBias();
 		}
 
 		/**
@@ -85,7 +231,7 @@ public class UpgradableReadWriteLock implements ReadWriteLock {
 		}
 
 		/**
-		 * Try lock.
+		 * Try lock. Barges ahead of queued threads, regardless of the policy.
 		 *
 		 * @return true, if successful
 		 * @see java.util.concurrent.locks.Lock#tryLock()
@@ -93,11 +239,17 @@ public class UpgradableReadWriteLock implements ReadWriteLock {
 		@Override
 		public boolean tryLock() {
 			Thread current = Thread.currentThread();
-			if (rwLock.readLock().tryLock()) {
-				readHolds.compute(current, (k, v) -> (v == null) ? 1 : v + 1);
-				readerCount.incrementAndGet();
+			if (tryBiasedRead(current)) {
+				recordAcquired(Mode.READ);
+				return true;
+			}
+
+			if (!readGateClosed(current) && sync.tryAcquireShared(current, 1L, false) >= 0) {
+				recordAcquired(Mode.READ);
+				restoreReaderBias();
 				return true;
 			}
+			recordFailed(Mode.READ);
 			return false;
 		}
 
@@ -114,12 +266,36 @@ public class UpgradableReadWriteLock implements ReadWriteLock {
 		@Override
 		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
 			Thread current = Thread.currentThread();
-			if (rwLock.readLock().tryLock(time, unit)) {
-				readHolds.compute(current, (k, v) -> (v == null) ? 1 : v + 1);
-				readerCount.incrementAndGet();
+			if (tryBiasedRead(current)) {
+				recordAcquired(Mode.READ);
 				return true;
 			}
-			return false;
+
+			LockStatistics stats = statistics;
+			LockEvents.Contended event = LockEvents.beginContended();
+			long start = System.nanoTime();
+			long deadline = start + unit.toNanos(time);
+			long gate = enterReadGateInterruptibly(current, unit.toNanos(time));
+			if (gate == GATE_TIMED_OUT) {
+				recordFailed(Mode.READ);
+				return false;
+			}
+
+			boolean acquired;
+			try {
+				acquired = sync.tryAcquireQueuedSharedNanos(1L, deadline - System.nanoTime());
+			} finally {
+				leaveReadGate(gate);
+			}
+			if (acquired) {
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.READ);
+				recordAcquired(stats, Mode.READ, start);
+				restoreReaderBias();
+			} else {
+				recordFailed(Mode.READ);
+			}
+
+			return acquired;
 		}
 
 		/**
@@ -130,343 +306,2604 @@ public class UpgradableReadWriteLock implements ReadWriteLock {
 		@Override
 		public void unlock() {
 			Thread current = Thread.currentThread();
-			Integer holds = readHolds.get(current);
-			if (holds == null || holds == 0) {
-				throw new IllegalMonitorStateException("Thread does not hold read lock");
-			}
+			if (releaseBiasedReadHold(current))
+				return;
 
-			if (holds == 1) {
-				readHolds.remove(current);
-			} else {
-				readHolds.put(current, holds - 1);
-			}
-			readerCount.decrementAndGet();
-			rwLock.readLock().unlock();
-			// Signal upgraders if no readers remain or all are upgraders
-			if (readerCount.get() == 0 || readHolds.keySet().stream().allMatch(upgraders::containsKey)) {
-				upgradeLock.lock();
-				try {
-					upgradeCondition.signalAll();
-				} finally {
-					upgradeLock.unlock();
-				}
-			}
+			releaseReadHold(current);
+			sync.releaseShared(1L);
 		}
 	}
 
 	/**
-	 * The Class WriteLock.
+	 * The synchronizer holding the entire state of the lock in a single word.
+	 * The low 32 bits count the shared read holds of all threads, one bit marks
+	 * the upgrade lock as held, and the remaining high bits count the reentrant
+	 * write holds of the exclusive owner.
+	 *
+	 * <p>
+	 * Exclusive acquisitions pass the number of shared read holds the acquiring
+	 * thread already owns, or {@link #UPGRADE} to acquire the upgrade lock. A
+	 * thread may take the write lock once the only read holds left are its own,
+	 * which makes the upgrade lock conversion, and any upgrade by a sole reader,
+	 * atomic.
+	 * </p>
 	 */
-	private class WriteLock implements Lock {
-		
+	private final class Sync extends AbstractQueuedLongSynchronizer {
+
+		/** The serial version UID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The acquire and release argument selecting the upgrade lock. */
+		static final long UPGRADE = -1L;
+
+		/** The mask of the shared read hold count. */
+		private static final long READ_MASK = 0xFFFF_FFFFL;
+
+		/** The upgrade lock bit. */
+		private static final long UPGRADE_BIT = 1L << 32;
+
+		/** The shift of the write hold count. */
+		private static final int WRITE_SHIFT = 33;
+
+		/** One write hold. */
+		private static final long WRITE_UNIT = 1L << WRITE_SHIFT;
+
+		/** The maximum write hold count. */
+		private static final long MAX_WRITE = Long.MAX_VALUE >>> WRITE_SHIFT;
+
 		/**
-		 * Lock.
+		 * Adds read holds for the current thread, which holds the write lock, so
+		 * that no other thread can change the read count concurrently.
 		 *
-		 * @see java.util.concurrent.locks.Lock#lock()
+		 * @param holds the number of holds to add
+		 * @return the read count before adding
 		 */
-		@Override
-		public void lock() {
-			Thread current = Thread.currentThread();
-			boolean isReader = isReadLockHeldByCurrentThread();
-			Integer holds = isReader ? readHolds.get(current) : 0;
+		long addReadHolds(long holds) {
+			long s = getState();
+			if ((s & READ_MASK) + holds > READ_MASK)
+				throw new Error("Maximum lock count exceeded");
 
-			if (isReader) {
-				upgraders.put(current, true);
-				try {
-					// Release read lock to allow write lock acquisition
-					for (int i = 0; i < holds; i++) {
-						rwLock.readLock().unlock();
-					}
-					readerCount.addAndGet(-holds);
-					readHolds.remove(current);
-
-					// Coordinate with other readers
-					while (readerCount.get() > 0 && !readHolds.keySet().stream().allMatch(upgraders::containsKey)) {
-						upgradeLock.lock();
-						try {
-							upgradeCondition.await();
-						} finally {
-							upgradeLock.unlock();
-						}
-					}
+			setState(s + holds);
+			return s & READ_MASK;
+		}
 
-					// Acquire write lock
-					rwLock.writeLock().lock();
+		/**
+		 * Converts the single write hold of the current thread into a read hold,
+		 * in one state transition. No other thread can change the state while the
+		 * write lock is held.
+		 *
+		 * @return the read count before the conversion
+		 */
+		long downgrade() {
+			long s = getState();
+			long r = s & READ_MASK;
+			if (r == READ_MASK)
+				throw new Error("Maximum lock count exceeded");
 
-					// Reacquire read lock to maintain state
-					for (int i = 0; i < holds; i++) {
-						rwLock.readLock().lock();
-					}
-					readerCount.addAndGet(holds);
-					readHolds.put(current, holds);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					upgraders.remove(current);
-					throw new RuntimeException(e);
-				}
-				upgraders.remove(current);
-			} else {
-				rwLock.writeLock().lock();
-			}
+			writeHoldEnded();
+			setExclusiveOwnerThread(null);
+			setState(s - WRITE_UNIT + 1L);
+			return r;
 		}
 
 		/**
-		 * Lock interruptibly.
+		 * Gets the write lock owner.
 		 *
-		 * @throws InterruptedException the interrupted exception
-		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 * @return the owner, or null
+		 */
+		Thread getOwner() {
+			return getExclusiveOwnerThread();
+		}
+
+		/**
+		 * Gets the state word.
+		 *
+		 * @return the state
+		 */
+		long state() {
+			return getState();
+		}
+
+		/**
+		 * Hands the write lock, held by no thread or by the current one, to
+		 * another owner. Used to detach an asynchronously acquired write lock
+		 * from the acquiring thread and to attach it to the releasing thread.
+		 *
+		 * @param owner the new owner, or null for none
+		 */
+		void setOwner(Thread owner) {
+			setExclusiveOwnerThread(owner);
+		}
+
+		/**
+		 * Gets the reentrant write hold count of the current thread.
+		 *
+		 * @return the write hold count
+		 */
+		int getWriteHoldCount() {
+			return isHeldExclusively() ? (int) (getState() >>> WRITE_SHIFT) : 0;
+		}
+
+		/**
+		 * Checks if the current thread holds the write lock.
+		 *
+		 * @return true, if held exclusively
+		 * @see java.util.concurrent.locks.AbstractQueuedLongSynchronizer#isHeldExclusively()
 		 */
 		@Override
-		public void lockInterruptibly() throws InterruptedException {
-			Thread current = Thread.currentThread();
-			boolean isReader = isReadLockHeldByCurrentThread();
-			Integer holds = isReader ? readHolds.get(current) : 0;
+		protected boolean isHeldExclusively() {
+			return getExclusiveOwnerThread() == Thread.currentThread();
+		}
 
-			if (isReader) {
-				upgraders.put(current, true);
-				try {
-					for (int i = 0; i < holds; i++) {
-						rwLock.readLock().unlock();
-					}
-					readerCount.addAndGet(-holds);
-					readHolds.remove(current);
-
-					while (readerCount.get() > 0 && !readHolds.keySet().stream().allMatch(upgraders::containsKey)) {
-						upgradeLock.lock();
-						try {
-							upgradeCondition.await();
-						} finally {
-							upgradeLock.unlock();
-						}
-					}
+		/**
+		 * Checks if the lock is held in any mode, other than through biased reads.
+		 *
+		 * @return true, if locked
+		 */
+		boolean isLocked() {
+			return getState() != 0L;
+		}
 
-					rwLock.writeLock().lockInterruptibly();
+		/**
+		 * Checks if the upgrade lock or the write lock is held.
+		 *
+		 * @return true, if an upgrade lock acquisition would have to wait
+		 */
+		boolean isUpgradeOrWriteLocked() {
+			return (getState() & ~READ_MASK) != 0L;
+		}
 
-					for (int i = 0; i < holds; i++) {
-						rwLock.readLock().lock();
-					}
-					readerCount.addAndGet(holds);
-					readHolds.put(current, holds);
-				} finally {
-					upgraders.remove(current);
-				}
-			} else {
-				rwLock.writeLock().lockInterruptibly();
-			}
+		/**
+		 * Checks if the write lock is held.
+		 *
+		 * @return true, if write locked
+		 */
+		boolean isWriteLocked() {
+			return (getState() >>> WRITE_SHIFT) != 0L;
 		}
 
 		/**
-		 * New condition.
+		 * Creates a condition bound to the write lock. Waiting releases the full
+		 * state, which while the write lock is held belongs to the writer alone.
 		 *
 		 * @return the condition
-		 * @see java.util.concurrent.locks.Lock#newCondition()
 		 */
-		@Override
-		public Condition newCondition() {
-			throw new UnsupportedOperationException("Conditions not supported");
+		Condition newCondition() {
+			return new ConditionObject();
 		}
 
 		/**
-		 * Try lock.
+		 * Gets the number of shared read holds of all threads.
 		 *
-		 * @return true, if successful
-		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 * @return the read count
 		 */
-		@Override
-		public boolean tryLock() {
-			Thread current = Thread.currentThread();
-			boolean isReader = isReadLockHeldByCurrentThread();
-			Integer holds = isReader ? readHolds.get(current) : 0;
+		int readCount() {
+			return (int) (getState() & READ_MASK);
+		}
 
-			if (isReader) {
-				if (readerCount.get() > holds || (readerCount.get() > 0 && !readHolds.keySet().stream().allMatch(
-						upgraders::containsKey))) {
-					return false;
-				}
-				upgraders.put(current, true);
-				boolean acquired = rwLock.writeLock().tryLock();
-				upgraders.remove(current);
-				return acquired;
+		/**
+		 * Wakes the first queued thread, if any, so that it can retry. Used after
+		 * a queued upgrade lock acquisition, which unlike a shared acquisition does
+		 * not propagate to the readers queued behind it.
+		 */
+		void signalNext() {
+			releaseShared(0L);
+		}
+
+		/**
+		 * Acquires read holds, counting the current thread in
+		 * {@link UpgradableReadWriteLock#readersQueued} while it is queued.
+		 *
+		 * @param holds the number of read holds
+		 */
+		void acquireQueuedShared(long holds) {
+			if (tryAcquireShared(holds) >= 0L)
+				return;
+
+			readersQueued.incrementAndGet();
+			try {
+				acquireShared(holds);
+			} finally {
+				readersQueued.decrementAndGet();
 			}
-			return rwLock.writeLock().tryLock();
 		}
 
 		/**
-		 * Try lock.
+		 * Acquires read holds interruptibly, counting the current thread in
+		 * {@link UpgradableReadWriteLock#readersQueued} while it is queued.
 		 *
-		 * @param time the time
-		 * @param unit the unit
-		 * @return true, if successful
+		 * @param holds the number of read holds
 		 * @throws InterruptedException the interrupted exception
-		 * @see java.util.concurrent.locks.Lock#tryLock(long,
-		 *      java.util.concurrent.TimeUnit)
 		 */
-		@Override
-		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-			Thread current = Thread.currentThread();
-			boolean isReader = isReadLockHeldByCurrentThread();
-			Integer holds = isReader ? readHolds.get(current) : 0;
+		void acquireQueuedSharedInterruptibly(long holds) throws InterruptedException {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tryAcquireShared(holds) >= 0L)
+				return;
 
-			if (isReader) {
-				upgraders.put(current, true);
-				long deadline = System.nanoTime() + unit.toNanos(time);
-				try {
-					while (readerCount.get() > holds || (readerCount.get() > 0 && !readHolds.keySet().stream().allMatch(
-							upgraders::containsKey))) {
-						long remaining = deadline - System.nanoTime();
-						if (remaining <= 0) {
-							upgraders.remove(current);
-							return false;
-						}
-						upgradeLock.lock();
-						try {
-							upgradeCondition.await(remaining, TimeUnit.NANOSECONDS);
-						} finally {
-							upgradeLock.unlock();
-						}
-					}
-					boolean acquired = rwLock.writeLock().tryLock(time, TimeUnit.NANOSECONDS);
-					upgraders.remove(current);
-					return acquired;
-				} catch (Throwable t) {
-					upgraders.remove(current);
-					throw t;
-				}
+			readersQueued.incrementAndGet();
+			try {
+				acquireSharedInterruptibly(holds);
+			} finally {
+				readersQueued.decrementAndGet();
 			}
-			return rwLock.writeLock().tryLock(time, unit);
 		}
 
 		/**
-		 * Unlock.
+		 * Acquires read holds within a waiting time, counting the current thread
+		 * in {@link UpgradableReadWriteLock#readersQueued} while it is queued.
 		 *
-		 * @see java.util.concurrent.locks.Lock#unlock()
+		 * @param holds the number of read holds
+		 * @param nanos the waiting time
+		 * @return true, if acquired
+		 * @throws InterruptedException the interrupted exception
 		 */
-		@Override
-		public void unlock() {
-			if (!rwLock.isWriteLockedByCurrentThread()) {
-				throw new IllegalMonitorStateException("Thread does not hold write lock");
-			}
-			rwLock.writeLock().unlock();
-			// Signal upgraders using dedicated lock
-			upgradeLock.lock();
+		boolean tryAcquireQueuedSharedNanos(long holds, long nanos) throws InterruptedException {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tryAcquireShared(holds) >= 0L)
+				return true;
+
+			readersQueued.incrementAndGet();
 			try {
-				upgradeCondition.signalAll();
+				return tryAcquireSharedNanos(holds, nanos);
 			} finally {
-				upgradeLock.unlock();
+				readersQueued.decrementAndGet();
 			}
 		}
-	}
 
-	/** The rw lock. */
-	private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true); // fair mode
-	
-	/** The read lock. */
-	private final Lock readLock = new ReadLock();
+		/**
+		 * Try acquire.
+		 *
+		 * @param arg the number of read holds the current thread owns,
+		 *            {@link #UPGRADE}, or the full state saved by a condition
+		 *            wait
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.AbstractQueuedLongSynchronizer#tryAcquire(long)
+		 */
+		@Override
+		protected boolean tryAcquire(long arg) {
+			return tryAcquire(Thread.currentThread(), arg, true);
+		}
 
-	/** The write lock. */
-	private final Lock writeLock = new WriteLock();
+		/**
+		 * Attempts an exclusive acquisition.
+		 *
+		 * @param current the current thread
+		 * @param arg     the number of read holds the current thread owns,
+		 *                {@link #UPGRADE}, or the full state saved by a
+		 *                condition wait
+		 * @param fair    whether to honour the policy and queue behind waiting
+		 *                threads
+		 * @return true, if successful
+		 */
+		boolean tryAcquire(Thread current, long arg, boolean fair) {
+			long s = getState();
+			if (arg >= WRITE_UNIT) {
+				// Reacquiring the saved state after a condition wait
+				if (s != 0L || !compareAndSetState(0L, arg))
+					return false;
 
-	/** The reader count. */
-	// Track total readers
-	private final java.util.concurrent.atomic.AtomicInteger readerCount = new java.util.concurrent.atomic.AtomicInteger(
-			0);
+				setExclusiveOwnerThread(current);
+				writeHoldStarted();
+				if ((arg & UPGRADE_BIT) != 0L) {
+					upgradeOwner = current;
+					upgradeHoldStarted();
+				}
+				return true;
+			}
 
-	/** The read holds. */
-	// Track per-thread reentrant read counts
-	private final ConcurrentHashMap<Thread, Integer> readHolds = new ConcurrentHashMap<>();
+			long w = s >>> WRITE_SHIFT;
+			if (w != 0L && getExclusiveOwnerThread() != current)
+				return false;
 
-	/** The upgraders. */
-	// Track threads attempting to upgrade
-	private final ConcurrentHashMap<Thread, Boolean> upgraders = new ConcurrentHashMap<>();
-	
-	/** The upgrade lock. */
-	// Dedicated lock and condition for upgrade coordination
-	private final ReentrantLock upgradeLock = new ReentrantLock();
+			if (arg == UPGRADE) {
+				if ((s & UPGRADE_BIT) != 0L
+						|| (w == 0L && fair && fairWriters && hasQueuedPredecessors())
+						|| !compareAndSetState(s, s | UPGRADE_BIT))
+					return false;
 
-	/** The upgrade condition. */
-	private final Condition upgradeCondition = upgradeLock.newCondition();
+				upgradeOwner = current;
+				upgradeHoldStarted();
+				return true;
+			}
 
-	/**
-	 * Checks if the current thread holds a read lock.
-	 *
-	 * @return true, if is read lock held by current thread
-	 */
-	public boolean isReadLockHeldByCurrentThread() {
-		return readHolds.containsKey(Thread.currentThread());
-	}
+			if (w != 0L) {
+				if (w == MAX_WRITE)
+					throw new Error("Maximum lock count exceeded");
 
-	/**
-	 * Read lock.
-	 *
-	 * @return the lock
-	 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
-	 */
-	@Override
-	public Lock readLock() {
-		return readLock;
-	}
+				setState(s + WRITE_UNIT);
+				return true;
+			}
 
-	/**
-	 * The Class DbgLockToString.
-	 */
-	private static class DbgLockToString {
+			boolean converting = (upgradeOwner == current);
+			if (((s & UPGRADE_BIT) != 0L && !converting)
+					|| (s & READ_MASK) != arg
+					|| (arg == 0L && !converting && fair && fairWriters && hasQueuedPredecessors())
+					|| !compareAndSetState(s, s + WRITE_UNIT))
+				return false;
 
-		/** The Constant DBG_PATT. */
-		private static final Pattern DBG_PATT = Pattern.compile(""
-				+ "(Write locks = \\d+, Read locks = \\d+)"
-				+ "");
+			setExclusiveOwnerThread(current);
+			writeHoldStarted();
+			return true;
+		}
 
 		/**
-		 * Extract dbg str.
+		 * Try acquire shared.
 		 *
-		 * @param lockToString the lock to string
-		 * @return the string
+		 * @param arg the number of read holds to acquire
+		 * @return a non-negative value, if successful
+		 * @see java.util.concurrent.locks.AbstractQueuedLongSynchronizer#tryAcquireShared(long)
 		 */
-		private static String extractDbgStr(String lockToString) {
-			var match = DBG_PATT.matcher(lockToString);
-
-			if (match.find())
-				return match.group(1);
-
-			return "";
+		@Override
+		protected long tryAcquireShared(long arg) {
+			return tryAcquireShared(Thread.currentThread(), arg, true);
 		}
 
 		/**
-		 * To dbg str.
+		 * Attempts a shared acquisition and records the new holds of the current
+		 * thread.
 		 *
-		 * @param writeCount the write count
-		 * @param readCount  the read count
-		 * @return the string
+		 * @param current the current thread
+		 * @param arg     the number of read holds to acquire
+		 * @param fair    whether to honour the policy and queue behind waiting
+		 *                threads
+		 * @return a non-negative value, if successful
 		 */
-		private static String toDbgStr(int writeCount, int readCount) {
+		long tryAcquireShared(Thread current, long arg, boolean fair) {
+			for (;;) {
+				long s = getState();
+				if ((s >>> WRITE_SHIFT) != 0L && getExclusiveOwnerThread() != current)
+					return -1L;
 
-			return "Write locks = %d, Read locks = %d"
-					.formatted(writeCount, readCount);
-		}
+				if (fair && fairReaders && hasQueuedPredecessors() && !holdsAnyLock(current))
+					return -1L;
 
-	}
+				// The converting upgrade owner waits outside the queue, hold back new readers
+				Thread c = converter;
+				if (c != null && c != current && !holdsAnyLock(current))
+					return -1L;
 
-	/**
-	 * To string.
-	 *
-	 * @return the string
-	 * @see java.lang.Object#toString()
-	 */
-	@Override
-	public String toString() {
-		var dbgStr = DbgLockToString.extractDbgStr(rwLock.toString());
+				long r = s & READ_MASK;
+				if (r + arg > READ_MASK)
+					throw new Error("Maximum lock count exceeded");
 
-		return "UpgradableReadWriteLock [" + dbgStr + "]";
-	}
+				if (compareAndSetState(s, s + arg)) {
+					recordReadHolds(current, (int) arg, r);
+					return 1L;
+				}
+			}
+		}
 
-	/**
-	 * Write lock.
-	 *
-	 * @return the lock
-	 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
-	 */
-	@Override
+		/**
+		 * Try release.
+		 *
+		 * @param arg one write hold, {@link #UPGRADE}, or the full state when a
+		 *            condition wait releases everything the writer holds
+		 * @return true, if waiting threads may now be able to acquire
+		 * @see java.util.concurrent.locks.AbstractQueuedLongSynchronizer#tryRelease(long)
+		 */
+		@Override
+		protected boolean tryRelease(long arg) {
+			if (arg == UPGRADE) {
+				upgradeHoldEnded();
+				upgradeOwner = null;
+				for (;;) {
+					long s = getState();
+					if (compareAndSetState(s, s & ~UPGRADE_BIT))
+						return true;
+				}
+			}
+
+			if (!isHeldExclusively())
+				throw new IllegalMonitorStateException("Thread does not hold write lock");
+
+			if (arg >= WRITE_UNIT) {
+				// Fully released by a condition wait, which holds no other mode
+				writeHoldEnded();
+				if ((arg & UPGRADE_BIT) != 0L) {
+					upgradeHoldEnded();
+					upgradeOwner = null;
+				}
+				setExclusiveOwnerThread(null);
+				setState(getState() - arg);
+				endWritePhase();
+				return true;
+			}
+
+			// No other thread can change the state while the write lock is held
+			long s = getState() - WRITE_UNIT;
+			boolean free = (s >>> WRITE_SHIFT) == 0L;
+			if (free) {
+				writeHoldEnded();
+				setExclusiveOwnerThread(null);
+			}
+			setState(s);
+			return free;
+		}
+
+		/**
+		 * Try release shared.
+		 *
+		 * @param arg the number of read holds to release, or zero to only wake
+		 *            the first queued thread
+		 * @return true, if waiting threads may now be able to acquire
+		 * @see java.util.concurrent.locks.AbstractQueuedLongSynchronizer#tryReleaseShared(long)
+		 */
+		@Override
+		protected boolean tryReleaseShared(long arg) {
+			if (arg == 0L)
+				return true;
+
+			for (;;) {
+				long s = getState();
+				long next = s - arg;
+				if (compareAndSetState(s, next)) {
+					long r = next & READ_MASK;
+					Thread c = converter;
+					if (c != null && r == converterHolds)
+						LockSupport.unpark(c);
+
+					return r == 0L || r <= upgradingReadHolds.get();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thread-local holder of {@link HoldCounter}s, one per thread that has read
+	 * locked this lock.
+	 */
+	private static final class ThreadLocalHoldCounter extends ThreadLocal<HoldCounter> {
+
+		/**
+		 * Initial value.
+		 *
+		 * @return the hold counter
+		 * @see java.lang.ThreadLocal#initialValue()
+		 */
+		@Override
+		protected HoldCounter initialValue() {
+			return new HoldCounter();
+		}
+	}
+
+	/**
+	 * The upgrade lock. Coexists with readers but excludes writers and the
+	 * other upgrade lock holders, so that its owner can later convert to the
+	 * write lock atomically, without a window in which another writer could
+	 * invalidate what it read.
+	 */
+	private class UpgradeLock implements Lock {
+
+		/**
+		 * Lock.
+		 *
+		 * @throws IllegalMonitorStateException if the current thread holds the
+		 *                                      read lock without the write lock
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			Thread current = Thread.currentThread();
+			if (upgradeOwner == current) {
+				upgradeHolds++;
+				recordAcquired(Mode.UPGRADE);
+				return;
+			}
+
+			checkNotReading();
+			if (sync.tryAcquire(current, Sync.UPGRADE, true)) {
+				recordAcquired(Mode.UPGRADE);
+			} else {
+				LockStatistics stats = statistics;
+				long start = (stats != null) ? System.nanoTime() : 0L;
+				LockEvents.Contended event = LockEvents.beginContended();
+				spinner.spinWhile(upgradeBusy);
+				upgradersQueued.incrementAndGet();
+				try {
+					sync.acquire(Sync.UPGRADE);
+				} finally {
+					upgradersQueued.decrementAndGet();
+				}
+				sync.signalNext();
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.UPGRADE);
+				recordAcquired(stats, Mode.UPGRADE, start);
+			}
+			upgradeHolds = 1;
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException         the interrupted exception
+		 * @throws IllegalMonitorStateException if the current thread holds the
+		 *                                      read lock without the write lock
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			Thread current = Thread.currentThread();
+			if (upgradeOwner == current) {
+				upgradeHolds++;
+				recordAcquired(Mode.UPGRADE);
+				return;
+			}
+
+			checkNotReading();
+			if (sync.tryAcquire(current, Sync.UPGRADE, true)) {
+				recordAcquired(Mode.UPGRADE);
+			} else {
+				LockStatistics stats = statistics;
+				long start = (stats != null) ? System.nanoTime() : 0L;
+				LockEvents.Contended event = LockEvents.beginContended();
+				spinner.spinWhile(upgradeBusy);
+				upgradersQueued.incrementAndGet();
+				try {
+					sync.acquireInterruptibly(Sync.UPGRADE);
+				} finally {
+					upgradersQueued.decrementAndGet();
+				}
+				sync.signalNext();
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.UPGRADE);
+				recordAcquired(stats, Mode.UPGRADE, start);
+			}
+			upgradeHolds = 1;
+		}
+
+		/**
+		 * New condition.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Conditions not supported");
+		}
+
+		/**
+		 * Try lock. Barges ahead of queued threads, regardless of the policy.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			Thread current = Thread.currentThread();
+			if (upgradeOwner == current) {
+				upgradeHolds++;
+				recordAcquired(Mode.UPGRADE);
+				return true;
+			}
+
+			if (!sync.tryAcquire(current, Sync.UPGRADE, false)) {
+				recordFailed(Mode.UPGRADE);
+				return false;
+			}
+
+			upgradeHolds = 1;
+			recordAcquired(Mode.UPGRADE);
+			return true;
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException         the interrupted exception
+		 * @throws IllegalMonitorStateException if the current thread holds the
+		 *                                      read lock without the write lock
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			Thread current = Thread.currentThread();
+			if (upgradeOwner == current) {
+				upgradeHolds++;
+				recordAcquired(Mode.UPGRADE);
+				return true;
+			}
+
+			checkNotReading();
+			if (sync.tryAcquire(current, Sync.UPGRADE, true)) {
+				recordAcquired(Mode.UPGRADE);
+			} else {
+				LockStatistics stats = statistics;
+				long start = (stats != null) ? System.nanoTime() : 0L;
+				LockEvents.Contended event = LockEvents.beginContended();
+				spinner.spinWhile(upgradeBusy);
+				boolean acquired;
+				upgradersQueued.incrementAndGet();
+				try {
+					acquired = sync.tryAcquireNanos(Sync.UPGRADE, unit.toNanos(time));
+				} finally {
+					upgradersQueued.decrementAndGet();
+				}
+				if (!acquired) {
+					recordFailed(Mode.UPGRADE);
+					return false;
+				}
+
+				sync.signalNext();
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.UPGRADE);
+				recordAcquired(stats, Mode.UPGRADE, start);
+			}
+			upgradeHolds = 1;
+			return true;
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (upgradeOwner != Thread.currentThread()) {
+				throw new IllegalMonitorStateException("Thread does not hold upgrade lock");
+			}
+			if (--upgradeHolds > 0)
+				return;
+
+			sync.release(Sync.UPGRADE);
+		}
+	}
+
+	/**
+	 * A condition of the write lock. The thread waiting on it gives up every
+	 * mode it holds, the write lock along with any upgrade lock it converted
+	 * from and any read holds it kept, and gets them all back before it returns
+	 * from the wait, the same way {@link java.util.concurrent.locks.ReentrantReadWriteLock}
+	 * conditions restore the write hold count.
+	 */
+	private final class WriteCondition implements Condition {
+
+		/** The condition of the synchronizer, which saves and restores the state. */
+		private final Condition condition;
+
+		/**
+		 * Instantiates a new write condition.
+		 *
+		 * @param condition the condition of the synchronizer
+		 */
+		WriteCondition(Condition condition) {
+			this.condition = condition;
+		}
+
+		/**
+		 * Await.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Condition#await()
+		 */
+		@Override
+		public void await() throws InterruptedException {
+			Thread current = Thread.currentThread();
+			long saved = beforeAwait(current);
+			try {
+				condition.await();
+			} finally {
+				afterAwait(current, saved);
+			}
+		}
+
+		/**
+		 * Await.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return false, if the waiting time elapsed
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Condition#await(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean await(long time, TimeUnit unit) throws InterruptedException {
+			Thread current = Thread.currentThread();
+			long saved = beforeAwait(current);
+			try {
+				return condition.await(time, unit);
+			} finally {
+				afterAwait(current, saved);
+			}
+		}
+
+		/**
+		 * Await nanos.
+		 *
+		 * @param nanosTimeout the nanos timeout
+		 * @return the estimated remaining time
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Condition#awaitNanos(long)
+		 */
+		@Override
+		public long awaitNanos(long nanosTimeout) throws InterruptedException {
+			Thread current = Thread.currentThread();
+			long saved = beforeAwait(current);
+			try {
+				return condition.awaitNanos(nanosTimeout);
+			} finally {
+				afterAwait(current, saved);
+			}
+		}
+
+		/**
+		 * Await uninterruptibly.
+		 *
+		 * @see java.util.concurrent.locks.Condition#awaitUninterruptibly()
+		 */
+		@Override
+		public void awaitUninterruptibly() {
+			Thread current = Thread.currentThread();
+			long saved = beforeAwait(current);
+			try {
+				condition.awaitUninterruptibly();
+			} finally {
+				afterAwait(current, saved);
+			}
+		}
+
+		/**
+		 * Await until.
+		 *
+		 * @param deadline the deadline
+		 * @return false, if the deadline has elapsed
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Condition#awaitUntil(java.util.Date)
+		 */
+		@Override
+		public boolean awaitUntil(Date deadline) throws InterruptedException {
+			Thread current = Thread.currentThread();
+			long saved = beforeAwait(current);
+			try {
+				return condition.awaitUntil(deadline);
+			} finally {
+				afterAwait(current, saved);
+			}
+		}
+
+		/**
+		 * Signal.
+		 *
+		 * @see java.util.concurrent.locks.Condition#signal()
+		 */
+		@Override
+		public void signal() {
+			condition.signal();
+		}
+
+		/**
+		 * Signal all.
+		 *
+		 * @see java.util.concurrent.locks.Condition#signalAll()
+		 */
+		@Override
+		public void signalAll() {
+			condition.signalAll();
+		}
+	}
+
+	/**
+	 * The Class WriteLock.
+	 */
+	private class WriteLock implements Lock {
+
+		/**
+		 * Acquires the write lock. A thread holding the upgrade lock converts to
+		 * the write lock atomically. A thread holding only the read lock releases
+		 * it first, so the data it read may have changed by the time the write
+		 * lock is acquired.
+		 */
+		private void acquire() {
+			Thread current = Thread.currentThread();
+			if (sync.isHeldExclusively()) {
+				sync.acquire(0L);
+				onWriteAcquired(current);
+				return;
+			}
+
+			if (upgradeOwner == current) {
+				// No writer can get in while we hold the upgrade lock
+				LockEvents.Upgrade event = LockEvents.beginUpgrade();
+				awaitConversion(current, false, -1L);
+				onWriteAcquired(current);
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.UPGRADE);
+				return;
+			}
+
+			int holds = getReadHoldCount();
+			if (holds > 0) {
+				// Release read lock to allow write lock acquisition
+				LockEvents.Upgrade event = LockEvents.beginUpgrade();
+				releaseReadHolds(current);
+				lockWrite();
+				onWriteAcquired(current);
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.READ);
+
+				// Reacquire read lock to maintain state
+				restoreReadHolds(current, holds);
+				return;
+			}
+
+			lockWrite();
+			onWriteAcquired(current);
+		}
+
+		/**
+		 * Acquires the write lock interruptibly. If interrupted, the thread still
+		 * holds whatever read and upgrade locks it held on entry.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 */
+		private void acquireInterruptibly() throws InterruptedException {
+			Thread current = Thread.currentThread();
+			if (sync.isHeldExclusively()) {
+				sync.acquire(0L);
+				onWriteAcquired(current);
+				return;
+			}
+
+			if (upgradeOwner == current) {
+				LockEvents.Upgrade event = LockEvents.beginUpgrade();
+				if (!awaitConversion(current, true, -1L)) {
+					Thread.interrupted();
+					throw new InterruptedException();
+				}
+				completeInterruptibly(current);
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.UPGRADE);
+				return;
+			}
+
+			int holds = getReadHoldCount();
+			if (holds > 0) {
+				LockEvents.Upgrade event = LockEvents.beginUpgrade();
+				releaseReadHolds(current);
+				try {
+					lockWriteInterruptibly();
+					completeInterruptibly(current);
+				} catch (InterruptedException e) {
+					sync.acquireQueuedShared(holds);
+					throw e;
+				}
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.READ);
+				restoreReadHolds(current, holds);
+				return;
+			}
+
+			lockWriteInterruptibly();
+			completeInterruptibly(current);
+		}
+
+		/**
+		 * Completes an interruptible write lock acquisition, see
+		 * {@link UpgradableReadWriteLock#tryCompleteWrite(Thread, BooleanSupplier)}.
+		 *
+		 * @param current the current thread
+		 * @throws InterruptedException if interrupted while waiting for biased
+		 *                              readers, with the write lock released
+		 */
+		private void completeInterruptibly(Thread current) throws InterruptedException {
+			if (!tryCompleteWrite(current, INTERRUPTED)) {
+				Thread.interrupted();
+				throw new InterruptedException();
+			}
+		}
+
+		/**
+		 * Lock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			LockStatistics stats = statistics;
+			long start = (stats != null) ? System.nanoTime() : 0L;
+			LockEvents.Contended event = LockEvents.beginContended();
+			boolean counted = writerArrived();
+			try {
+				acquire();
+			} finally {
+				writerLeft(counted);
+			}
+			LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.WRITE);
+			recordAcquired(stats, Mode.WRITE, start);
+		}
+
+		/**
+		 * Lock interruptibly.
+		 *
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			LockStatistics stats = statistics;
+			long start = (stats != null) ? System.nanoTime() : 0L;
+			LockEvents.Contended event = LockEvents.beginContended();
+			boolean counted = writerArrived();
+			try {
+				acquireInterruptibly();
+			} finally {
+				writerLeft(counted);
+			}
+			LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.WRITE);
+			recordAcquired(stats, Mode.WRITE, start);
+		}
+
+		/**
+		 * New condition. Waiting on it releases the write lock fully, along with
+		 * any upgrade and read holds of the waiting thread, and reacquires all of
+		 * them before returning.
+		 *
+		 * @return the condition
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			return new WriteCondition(sync.newCondition());
+		}
+
+		/**
+		 * Try lock. Barges ahead of queued threads, regardless of the policy. A
+		 * reader succeeds only if it is the sole reader, and upgrades in place.
+		 *
+		 * @return true, if successful
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			Thread current = Thread.currentThread();
+			if (!sync.tryAcquire(current, getSharedHoldCount(current), false)
+					|| !tryCompleteWrite(current, NO_WAIT)) {
+				recordFailed(Mode.WRITE);
+				return false;
+			}
+
+			recordAcquired(Mode.WRITE);
+			return true;
+		}
+
+		/**
+		 * Acquires the write lock within the given waiting time. A reader keeps
+		 * its read holds while it waits and upgrades in place once it is the sole
+		 * reader, so that it still holds exactly what it held on entry if it
+		 * times out.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 */
+		private boolean tryAcquire(long time, TimeUnit unit) throws InterruptedException {
+			Thread current = Thread.currentThread();
+			long nanos = unit.toNanos(time);
+			long deadline = System.nanoTime() + nanos;
+			boolean acquired;
+
+			if (sync.isHeldExclusively()) {
+				acquired = sync.tryAcquireNanos(0L, nanos);
+
+			} else if (upgradeOwner == current) {
+				acquired = awaitConversion(current, true, Math.max(0L, nanos));
+				if (!acquired && Thread.interrupted())
+					throw new InterruptedException();
+
+			} else {
+				int holds = getSharedHoldCount(current);
+				if (holds > 0)
+					upgradingReadHolds.addAndGet(holds);
+				try {
+					// A reader is already in, and must not wait for those that are not
+					if (getReadHoldCount() == 0 && !awaitPhaseReaders(Math.max(0L, deadline - System.nanoTime()))) {
+						acquired = false;
+					} else {
+						if (holds == 0)
+							spinner.spinWhile(writeBusy);
+						acquired = sync.tryAcquireNanos(holds, deadline - System.nanoTime());
+					}
+				} finally {
+					if (holds > 0)
+						upgradingReadHolds.addAndGet(-holds);
+				}
+			}
+
+			if (!acquired)
+				return false;
+
+			if (tryCompleteWrite(current, () -> System.nanoTime() - deadline >= 0 || current.isInterrupted()))
+				return true;
+
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			return false;
+		}
+
+		/**
+		 * Try lock.
+		 *
+		 * @param time the time
+		 * @param unit the unit
+		 * @return true, if successful
+		 * @throws InterruptedException the interrupted exception
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			LockStatistics stats = statistics;
+			long start = (stats != null) ? System.nanoTime() : 0L;
+			LockEvents.Contended event = LockEvents.beginContended();
+			boolean counted = writerArrived();
+			boolean acquired;
+			try {
+				acquired = tryAcquire(time, unit);
+			} finally {
+				writerLeft(counted);
+			}
+			if (acquired) {
+				LockEvents.commit(event, UpgradableReadWriteLock.this, LockEvents.WRITE);
+				recordAcquired(stats, Mode.WRITE, start);
+			} else {
+				recordFailed(Mode.WRITE);
+			}
+
+			return acquired;
+		}
+
+		/**
+		 * Unlock.
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			if (!sync.isHeldExclusively()) {
+				throw new IllegalMonitorStateException("Thread does not hold write lock");
+			}
+			boolean outermost = sync.getWriteHoldCount() == 1;
+			if (outermost)
+				VERSION.setRelease(UpgradableReadWriteLock.this, version + 1); // even, write done
+			sync.release(1L);
+			if (outermost)
+				endWritePhase();
+		}
+	}
+
+	/**
+	 * The factor by which the time spent revoking the reader bias is multiplied
+	 * to obtain the time during which the bias stays off.
+	 */
+	private static final int BIAS_INHIBIT_MULTIPLIER = 9;
+
+	/**
+	 * The initial version. Versions are odd while a writer is active, and zero is
+	 * never a valid stamp.
+	 */
+	private static final long VERSION_ORIGIN = 2L;
+
+	/** The version var handle. */
+	private static final VarHandle VERSION;
+
+	/** The write hold start var handle. */
+	private static final VarHandle WRITE_SINCE;
+
+	/** The upgrade hold start var handle. */
+	private static final VarHandle UPGRADE_SINCE;
+
+	/** The watchdog entry var handle. */
+	private static final VarHandle WATCH;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			VERSION = lookup.findVarHandle(UpgradableReadWriteLock.class, "version", long.class);
+			WRITE_SINCE = lookup.findVarHandle(UpgradableReadWriteLock.class, "writeSince", long.class);
+			UPGRADE_SINCE = lookup.findVarHandle(UpgradableReadWriteLock.class, "upgradeSince", long.class);
+			WATCH = lookup.findVarHandle(UpgradableReadWriteLock.class, "watch", LockWatchdog.Entry.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** Gives up waiting for biased readers right away. */
+	private static final BooleanSupplier NO_WAIT = () -> true;
+
+	/** Gives up waiting for biased readers once the current thread is interrupted. */
+	private static final BooleanSupplier INTERRUPTED = () -> Thread.currentThread().isInterrupted();
+
+	/** Returned by the reader gate when the reader did not wait for a phase change. */
+	private static final long NOT_GATED = -1L;
+
+	/** Returned by the reader gate when the reader gave up waiting. */
+	private static final long GATE_TIMED_OUT = -2L;
+
+	/** The policy. */
+	private final Policy policy;
+
+	/** Whether new readers wait at the reader gate while writers wait. */
+	private final boolean gatesReaders;
+
+	/** Whether new readers queue behind waiting threads. */
+	private final boolean fairReaders;
+
+	/** Whether new writers and upgraders queue behind waiting threads. */
+	private final boolean fairWriters;
+
+	/** The synchronizer. */
+	private final Sync sync = new Sync();
+
+	/** The read lock. */
+	private final Lock readLock = new ReadLock();
+
+	/** The write lock. */
+	private final Lock writeLock = new WriteLock();
+
+	/** The read holds. */
+	// Track per-thread reentrant read counts, for readers other than the first
+	private final ThreadLocalHoldCounter readHolds = new ThreadLocalHoldCounter();
+
+	/**
+	 * The hold counter of the last thread to read lock. Saves a thread-local
+	 * lookup when the same thread releases what it just acquired.
+	 */
+	private HoldCounter cachedHoldCounter;
+
+	/**
+	 * The id of the first thread to read lock while no other reader held it, or
+	 * zero. Handled without any thread-local so that an uncontended reader never
+	 * allocates, and kept as an id so that the lock never retains a thread. Only
+	 * written by the thread that takes the read count from zero, or by itself
+	 * when it releases its last hold.
+	 */
+	private long firstReader;
+
+	/** The read hold count of {@link #firstReader}. */
+	private int firstReaderHoldCount;
+
+	/**
+	 * The read holds of timed upgraders that keep them while they wait to
+	 * become the sole reader. A read release that leaves no more readers than
+	 * that wakes the first queued thread, which may be such an upgrader.
+	 */
+	private final AtomicInteger upgradingReadHolds = new AtomicInteger(0);
+
+	/** The upgrade lock. */
+	private final Lock upgradeLock = new UpgradeLock();
+
+	/** The owner of the upgrade lock, written only by the owner itself. */
+	private Thread upgradeOwner;
+
+	/** The reentrant upgrade lock hold count of {@link #upgradeOwner}. */
+	private int upgradeHolds;
+
+	/**
+	 * The upgrade lock owner while it waits for the other readers to leave, to
+	 * be woken directly by each read release. It waits outside of the queue, as
+	 * it may have to overtake writers queued for the upgrade lock it holds.
+	 */
+	private volatile Thread converter;
+
+	/** The number of shared read holds of the {@link #converter}. */
+	private int converterHolds;
+
+	/** Whether this lock was created in reader-biased mode. */
+	private final boolean readerBiased;
+
+	/** Whether readers may currently take the biased fast path. */
+	private volatile boolean readerBias;
+
+	/** The {@link System#nanoTime()} before which the bias stays revoked. */
+	private volatile long biasInhibitUntil;
+
+	/**
+	 * The identity hash used to place this lock's readers in the table, or zero
+	 * until first needed.
+	 */
+	private int biasHash;
+
+	/**
+	 * The write version used for optimistic reads. Incremented when a writer
+	 * first acquires and finally releases the write lock.
+	 */
+	private volatile long version = VERSION_ORIGIN;
+
+	/**
+	 * The number of writers waiting to acquire the write lock. Only maintained
+	 * for policies that gate readers.
+	 */
+	private final AtomicInteger writersWaiting = new AtomicInteger(0);
+
+	/**
+	 * The number of threads queued for the upgrade lock, so that snapshots can
+	 * tell them apart from queued writers.
+	 */
+	private final AtomicInteger upgradersQueued = new AtomicInteger(0);
+
+	/**
+	 * The number of threads queued for read holds, so that snapshots can count
+	 * queued readers without listing the queued threads.
+	 */
+	private final AtomicInteger readersQueued = new AtomicInteger(0);
+
+	/** The name reported by lock events, or null. */
+	private volatile String name;
+
+	/**
+	 * Times the write lock hold while a recording has it enabled. Guarded by the
+	 * write lock.
+	 */
+	private LockEvents.Held writeHeld;
+
+	/**
+	 * Times the upgrade lock hold while a recording has it enabled. Guarded by
+	 * the upgrade lock.
+	 */
+	private LockEvents.Held upgradeHeld;
+
+	/** The entry of the watchdog this lock is registered with, or null. */
+	private volatile LockWatchdog.Entry watch;
+
+	/**
+	 * The {@link System#nanoTime()} the current write hold started at, while
+	 * watched, or zero. Written by the write lock owner, read by the watchdog.
+	 */
+	private long writeSince;
+
+	/**
+	 * The {@link System#nanoTime()} the current upgrade hold started at, while
+	 * watched, or zero. Written by the upgrade lock owner, read by the watchdog.
+	 */
+	private long upgradeSince;
+
+	/** Collects acquisition statistics while enabled, or null. */
+	private volatile LockStatistics statistics;
+
+	/** The statistics collected so far, kept while collection is disabled. */
+	private volatile LockStatistics collectedStatistics;
+
+	/** The gate lock, guarding the reader gate and phase state. */
+	private final ReentrantLock gateLock = new ReentrantLock();
+
+	/** Signalled when gated readers may proceed. */
+	private final Condition readerGate = gateLock.newCondition();
+
+	/** Signalled when the readers admitted by the last write phase are in. */
+	private final Condition writerGate = gateLock.newCondition();
+
+	/** The number of completed write phases, guarded by the gate lock. */
+	private long writePhase;
+
+	/** Readers waiting for the current write phase to end. */
+	private int gatedReaders;
+
+	/**
+	 * The number of readers inside the reader gate, under either gating policy.
+	 * Written holding the gate lock, but read without it so that writers skip
+	 * the gate lock entirely when no reader waits there.
+	 */
+	private volatile int gateWaiters;
+
+	/**
+	 * Readers released by the last write phase that have not yet acquired the
+	 * read lock. The next writer waits for them.
+	 */
+	private int pendingPhaseReaders;
+
+	/** Spins briefly before contended acquisitions park. */
+	private final AdaptiveSpinner spinner = new AdaptiveSpinner();
+
+	/** Reports whether the upgrade lock or the write lock is held. */
+	private final BooleanSupplier upgradeBusy = () -> sync.isUpgradeOrWriteLocked();
+
+	/** Reports whether the lock is held in any mode. */
+	private final BooleanSupplier writeBusy = () -> sync.isLocked();
+
+	/** Reports whether readers other than the converting upgrade lock owner remain. */
+	private final BooleanSupplier conversionBusy = () -> sync.readCount() > converterHolds;
+
+	/**
+	 * Instantiates a new, fair upgradable read write lock.
+	 */
+	public UpgradableReadWriteLock() {
+		this(Policy.FAIR, false);
+	}
+
+	/**
+	 * Instantiates a new, fair upgradable read write lock.
+	 *
+	 * @param readerBiased if true, readers bypass the central reader state
+	 *                     while no writer is active, at the cost of slower
+	 *                     writes
+	 */
+	public UpgradableReadWriteLock(boolean readerBiased) {
+		this(Policy.FAIR, readerBiased);
+	}
+
+	/**
+	 * Instantiates a new upgradable read write lock.
+	 *
+	 * @param policy the policy
+	 */
+	public UpgradableReadWriteLock(Policy policy) {
+		this(policy, false);
+	}
+
+	/**
+	 * Instantiates a new upgradable read write lock.
+	 *
+	 * @param policy       the policy
+	 * @param readerBiased if true, readers bypass the central reader state
+	 *                     while no writer is active, at the cost of slower
+	 *                     writes
+	 */
+	public UpgradableReadWriteLock(Policy policy, boolean readerBiased) {
+		this.policy = policy;
+		this.gatesReaders = policy.gatesReaders();
+		this.fairReaders = policy.fairReaders;
+		this.fairWriters = policy.fairWriters;
+		this.readerBiased = readerBiased;
+		this.readerBias = readerBiased;
+		this.biasInhibitUntil = System.nanoTime();
+	}
+
+	/**
+	 * Gets the identity hash used to place this lock's readers in the table. It
+	 * is computed at the first biased read rather than in the constructor, so
+	 * that {@code this} does not escape before a subclass is initialized.
+	 * Threads racing to compute it store the same value.
+	 *
+	 * @return the bias hash
+	 */
+	private int biasHash() {
+		int h = biasHash;
+		if (h == 0)
+			biasHash = h = System.identityHashCode(this);
+
+		return h;
+	}
+
+	/**
+	 * Records {@code holds} new read holds for {@code current}, which must
+	 * already own them in the lock state.
+	 *
+	 * @param current   the current thread
+	 * @param holds     the number of holds to add
+	 * @param readCount the read count of all threads before the holds were added
+	 */
+	private void recordReadHolds(Thread current, int holds, long readCount) {
+		if (holds == 0)
+			return;
+
+		if (readCount == 0) {
+			firstReader = current.threadId();
+			firstReaderHoldCount = holds;
+		} else if (firstReader == current.threadId()) {
+			firstReaderHoldCount += holds;
+		} else {
+			HoldCounter rh = cachedHoldCounter;
+			if (rh == null || rh.tid != current.threadId())
+				cachedHoldCounter = rh = readHolds.get();
+			else if (rh.count == 0)
+				readHolds.set(rh);
+			rh.count += holds;
+		}
+	}
+
+	/**
+	 * Records an acquisition that did not block, if statistics are enabled.
+	 *
+	 * @param mode the mode
+	 */
+	private void recordAcquired(Mode mode) {
+		LockStatistics stats = statistics;
+		if (stats == null)
+			return;
+
+		stats.acquired(mode);
+		if (mode == Mode.WRITE)
+			recordUpgrade(stats);
+	}
+
+	/**
+	 * Records an acquisition that may have blocked.
+	 *
+	 * @param stats the statistics read before the acquisition, or null
+	 * @param mode  the mode
+	 * @param start the {@link System#nanoTime()} before the acquisition
+	 */
+	private void recordAcquired(LockStatistics stats, Mode mode, long start) {
+		if (stats == null)
+			return;
+
+		stats.acquired(mode, start);
+		if (mode == Mode.WRITE)
+			recordUpgrade(stats);
+	}
+
+	/**
+	 * Records a failed try lock, if statistics are enabled.
+	 *
+	 * @param mode the mode
+	 */
+	private void recordFailed(Mode mode) {
+		LockStatistics stats = statistics;
+		if (stats != null)
+			stats.failed(mode);
+	}
+
+	/**
+	 * Records an upgrade, if the current thread just acquired the outermost
+	 * write hold while holding the upgrade lock or the read lock.
+	 *
+	 * @param stats the statistics
+	 */
+	private void recordUpgrade(LockStatistics stats) {
+		if (sync.getWriteHoldCount() != 1)
+			return;
+
+		if (upgradeOwner == Thread.currentThread())
+			stats.upgraded(Mode.UPGRADE);
+		else if (getReadHoldCount() > 0)
+			stats.upgraded(Mode.READ);
+	}
+
+	/**
+	 * Restores the thread's own hold bookkeeping once a condition wait has
+	 * reacquired the lock state, and marks the version as being written again.
+	 *
+	 * @param current the current thread
+	 * @param saved   the value returned by {@link #beforeAwait(Thread)}
+	 */
+	private void afterAwait(Thread current, long saved) {
+		if (upgradeOwner == current)
+			upgradeHolds = (int) (saved >>> 32);
+		recordReadHolds(current, (int) saved, 0L);
+		revokeReaderBias(current, null);
+		VERSION.getAndAdd(this, 1L); // odd, full fence before any data writes
+	}
+
+	/**
+	 * Waits, as the upgrade lock owner, for all other readers to leave and
+	 * converts to the write lock. No other writer can get in meanwhile, and new
+	 * readers holding no mode of the lock queue behind the owner, so that a
+	 * stream of overlapping readers cannot starve the conversion. The owner
+	 * waits outside of the queue and is woken by every read release.
+	 *
+	 * @param current       the current thread
+	 * @param interruptible whether to give up if interrupted, leaving the
+	 *                      interrupt status set
+	 * @param nanos         the maximum time to wait, or a negative value to wait
+	 *                      without timeout
+	 * @return true, if converted, or false if timed out or interrupted
+	 */
+	private boolean awaitConversion(Thread current, boolean interruptible, long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		int holds = getSharedHoldCount(current);
+		if (sync.tryAcquire(current, holds, false))
+			return true;
+
+		boolean interrupted = false;
+		boolean converted = false;
+		converterHolds = holds;
+		converter = current;
+		try {
+			spinner.spinWhile(conversionBusy);
+			while (!sync.tryAcquire(current, holds, false)) {
+				if (nanos >= 0L) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0L)
+						return false;
+					LockSupport.parkNanos(this, remaining);
+				} else {
+					LockSupport.park(this);
+				}
+
+				if (Thread.interrupted()) {
+					interrupted = true;
+					if (interruptible)
+						return false;
+				}
+			}
+			converted = true;
+			return true;
+		} finally {
+			converter = null;
+			if (!converted)
+				sync.releaseShared(0L); // Wake the readers held back meanwhile
+			if (interrupted)
+				current.interrupt();
+		}
+	}
+
+	/**
+	 * Under the phase-fair policy, waits for the readers admitted by the last
+	 * write phase to acquire the read lock. Must only be called by threads
+	 * holding no mode of the lock, which those readers could be queued behind.
+	 */
+	private void awaitPhaseReaders() {
+		if (policy != Policy.PHASE_FAIR)
+			return;
+
+		gateLock.lock();
+		try {
+			while (pendingPhaseReaders > 0) {
+				writerGate.awaitUninterruptibly();
+			}
+		} finally {
+			gateLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits, like {@link #awaitPhaseReaders()}, for the readers admitted by the
+	 * last write phase, giving up once interrupted or out of time.
+	 *
+	 * @param nanos the maximum time to wait, or a negative value to wait for as
+	 *              long as it takes
+	 * @return true, if no admitted reader is pending, false if the time ran out
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private boolean awaitPhaseReaders(long nanos) throws InterruptedException {
+		if (policy != Policy.PHASE_FAIR)
+			return true;
+
+		gateLock.lockInterruptibly();
+		try {
+			while (pendingPhaseReaders > 0) {
+				if (nanos < 0L) {
+					writerGate.await();
+				} else {
+					if (nanos == 0L)
+						return false;
+					nanos = Math.max(0L, writerGate.awaitNanos(nanos));
+				}
+			}
+			return true;
+		} finally {
+			gateLock.unlock();
+		}
+	}
+
+	/**
+	 * Prepares the write lock owner for a condition wait, which releases the
+	 * whole lock state, by dropping its own hold bookkeeping. Biased read holds,
+	 * which are not part of the state, are turned into regular ones first.
+	 *
+	 * @param current the current thread
+	 * @return the upgrade hold count in the high and the read hold count in the
+	 *         low 32 bits, to be passed to {@link #afterAwait(Thread, long)}
+	 * @throws IllegalMonitorStateException if the current thread does not hold
+	 *                                      the write lock
+	 */
+	private long beforeAwait(Thread current) {
+		if (!sync.isHeldExclusively())
+			throw new IllegalMonitorStateException("Thread does not hold write lock");
+
+		restoreReadHolds(current, clearBiasedReadHolds(current));
+		long saved = (upgradeOwner == current) ? (long) upgradeHolds << 32 : 0L;
+		saved |= clearReadHolds(current);
+		VERSION.setRelease(this, version + 1); // even, write done
+		return saved;
+	}
+
+	/**
+	 * Blocking for the upgrade lock while holding the read lock would deadlock
+	 * with a converting upgrade lock owner waiting for that reader to leave.
+	 *
+	 * @throws IllegalMonitorStateException if the current thread holds the read
+	 *                                      lock without the write lock
+	 */
+	private void checkNotReading() {
+		if (getReadHoldCount() > 0 && !sync.isHeldExclusively()) {
+			throw new IllegalMonitorStateException("Cannot wait for upgrade lock while holding read lock");
+		}
+	}
+
+	/**
+	 * Drops all of {@code current}'s biased read holds and clears its slot in
+	 * the visible readers table.
+	 *
+	 * @param current the current thread
+	 * @return the number of holds dropped
+	 */
+	private int clearBiasedReadHolds(Thread current) {
+		if (!readerBiased)
+			return 0;
+
+		int slot = VisibleReaders.slot(biasHash(), current.threadId());
+		int holds = VisibleReaders.holds(slot, this, current.threadId());
+		if (holds > 0)
+			VisibleReaders.clear(slot);
+		return holds;
+	}
+
+	/**
+	 * Drops all of {@code current}'s shared read hold bookkeeping, leaving the
+	 * lock state untouched.
+	 *
+	 * @param current the current thread
+	 * @return the number of holds dropped
+	 */
+	private int clearReadHolds(Thread current) {
+		int holds;
+		if (firstReader == current.threadId()) {
+			holds = firstReaderHoldCount;
+			firstReader = 0L;
+		} else {
+			HoldCounter rh = cachedHoldCounter;
+			if (rh == null || rh.tid != current.threadId())
+				rh = readHolds.get();
+			holds = rh.count;
+			rh.count = 0;
+			readHolds.remove();
+		}
+		return holds;
+	}
+
+	/**
+	 * Gives up a place at the reader gate. Called holding the gate lock.
+	 *
+	 * @param phase the phase in which the reader started waiting
+	 */
+	private void abandonReadGate(long phase) {
+		if (writePhase == phase)
+			gatedReaders--;
+		else if (--pendingPhaseReaders == 0)
+			writerGate.signalAll();
+	}
+
+	/**
+	 * Ends a write phase after the outermost write unlock, admitting the readers
+	 * held back at the reader gate.
+	 */
+	private void endWritePhase() {
+		if (!gatesReaders || gateWaiters == 0)
+			return;
+
+		gateLock.lock();
+		try {
+			if (policy == Policy.PHASE_FAIR) {
+				writePhase++;
+				pendingPhaseReaders += gatedReaders;
+				gatedReaders = 0;
+			}
+			readerGate.signalAll();
+		} finally {
+			gateLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits at the reader gate, for policies that hold back new readers while
+	 * writers wait. Uninterruptible.
+	 *
+	 * @param current the current thread
+	 * @return the phase the reader waited in, to be passed to
+	 *         {@link #leaveReadGate(long)}, or {@link #NOT_GATED}
+	 */
+	private long enterReadGate(Thread current) {
+		if (!readGateClosed(current))
+			return NOT_GATED;
+
+		gateLock.lock();
+		gateWaiters++;
+		try {
+			if (policy == Policy.WRITER_PREFERRING) {
+				while (isWriterActiveOrWaiting()) {
+					readerGate.awaitUninterruptibly();
+				}
+				return NOT_GATED;
+			}
+
+			long phase = writePhase;
+			gatedReaders++;
+			while (writePhase == phase && isWriterActiveOrWaiting()) {
+				readerGate.awaitUninterruptibly();
+			}
+			return passReadGate(phase);
+		} finally {
+			gateWaiters--;
+			gateLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits at the reader gate, for policies that hold back new readers while
+	 * writers wait.
+	 *
+	 * @param current the current thread
+	 * @param nanos   the maximum time to wait
+	 * @return the phase the reader waited in, to be passed to
+	 *         {@link #leaveReadGate(long)}, {@link #NOT_GATED}, or
+	 *         {@link #GATE_TIMED_OUT}
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private long enterReadGateInterruptibly(Thread current, long nanos) throws InterruptedException {
+		if (!readGateClosed(current))
+			return NOT_GATED;
+
+		boolean phaseFair = (policy == Policy.PHASE_FAIR);
+		gateLock.lockInterruptibly();
+		gateWaiters++;
+		try {
+			long phase = writePhase;
+			if (phaseFair)
+				gatedReaders++;
+
+			try {
+				while ((!phaseFair || writePhase == phase) && isWriterActiveOrWaiting()) {
+					if (nanos <= 0L) {
+						if (phaseFair)
+							abandonReadGate(phase);
+						return GATE_TIMED_OUT;
+					}
+					nanos = readerGate.awaitNanos(nanos);
+				}
+			} catch (InterruptedException e) {
+				if (phaseFair)
+					abandonReadGate(phase);
+				throw e;
+			}
+
+			return phaseFair ? passReadGate(phase) : NOT_GATED;
+		} finally {
+			gateWaiters--;
+			gateLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the name reported by lock events.
+	 *
+	 * @return the name, or null if not set
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the name reported by lock events, defaulting to the class name and
+	 * identity hash code.
+	 *
+	 * @return the event name
+	 */
+	String getEventName() {
+		String n = name;
+
+		return (n != null) ? n : "UpgradableReadWriteLock@" + Integer.toHexString(System.identityHashCode(this));
+	}
+
+	/**
+	 * Gets the owner of a watched hold.
+	 *
+	 * @param mode the write or upgrade mode
+	 * @return the owner, or null if not held or detached from its thread
+	 */
+	Thread getHoldOwner(Mode mode) {
+		return (mode == Mode.WRITE) ? sync.getOwner() : upgradeOwner;
+	}
+
+	/**
+	 * Gets the start of the current write or upgrade hold, as recorded while
+	 * registered with a watchdog.
+	 *
+	 * @param mode the write or upgrade mode
+	 * @return the {@link System#nanoTime()} the hold started at, or zero
+	 */
+	long getHoldStart(Mode mode) {
+		return (mode == Mode.WRITE)
+				? (long) WRITE_SINCE.getOpaque(this)
+				: (long) UPGRADE_SINCE.getOpaque(this);
+	}
+
+	/**
+	 * Gets the entry of the watchdog this lock is registered with.
+	 *
+	 * @return the entry, or null if not watched
+	 */
+	LockWatchdog.Entry getWatch() {
+		return watch;
+	}
+
+	/**
+	 * Registers this lock with, or unregisters it from, a watchdog.
+	 *
+	 * @param expected the expected current entry
+	 * @param entry    the new entry, or null
+	 * @return true, if successful
+	 */
+	boolean compareAndSetWatch(LockWatchdog.Entry expected, LockWatchdog.Entry entry) {
+		return WATCH.compareAndSet(this, expected, entry);
+	}
+
+	/**
+	 * Gets the policy.
+	 *
+	 * @return the policy
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets a snapshot of the adaptive spinning statistics of this lock.
+	 *
+	 * @return the spin statistics
+	 */
+	public SpinStats getSpinStats() {
+		return spinner.stats();
+	}
+
+	/**
+	 * Gets a snapshot of the acquisition statistics collected while statistics
+	 * were enabled, see {@link #setStatisticsEnabled(boolean)}.
+	 *
+	 * @return the lock stats, empty if statistics were never enabled
+	 */
+	public LockStats getStatistics() {
+		LockStatistics stats = collectedStatistics;
+
+		return (stats != null) ? stats.snapshot(name) : new LockStats(name);
+	}
+
+	/**
+	 * Gets the number of reentrant read holds on this lock by the current
+	 * thread.
+	 *
+	 * @return the number of holds on the read lock by the current thread, or zero
+	 *         if the read lock is not held by the current thread
+	 */
+	public int getReadHoldCount() {
+		Thread current = Thread.currentThread();
+
+		return getBiasedHoldCount(current) + getSharedHoldCount(current);
+	}
+
+	/**
+	 * Gets the number of biased read holds of {@code current}, which are kept in
+	 * its visible readers slot rather than in any per-thread structure.
+	 *
+	 * @param current the current thread
+	 * @return the biased hold count
+	 */
+	private int getBiasedHoldCount(Thread current) {
+		if (!readerBiased)
+			return 0;
+
+		long tid = current.threadId();
+		return VisibleReaders.holds(VisibleReaders.slot(biasHash(), tid), this, tid);
+	}
+
+	/**
+	 * Gets the number of read holds of {@code current} in the lock state,
+	 * excluding biased holds.
+	 *
+	 * @param current the current thread
+	 * @return the shared hold count
+	 */
+	private int getSharedHoldCount(Thread current) {
+		if (sync.readCount() == 0)
+			return 0;
+
+		if (firstReader == current.threadId())
+			return firstReaderHoldCount;
+
+		HoldCounter rh = cachedHoldCounter;
+		if (rh != null && rh.tid == current.threadId())
+			return rh.count;
+
+		int count = readHolds.get().count;
+		if (count == 0)
+			readHolds.remove();
+		return count;
+	}
+
+	/**
+	 * Gets the number of reentrant write holds on this lock by the current
+	 * thread.
+	 *
+	 * @return the number of holds on the write lock by the current thread, or
+	 *         zero if the write lock is not held by the current thread
+	 */
+	public int getWriteHoldCount() {
+		return sync.getWriteHoldCount();
+	}
+
+	/**
+	 * Checks if any threads are waiting to acquire this lock in any mode. The
+	 * answer is only a snapshot, meant for monitoring and contention heuristics.
+	 *
+	 * @return true, if threads may be waiting
+	 */
+	public boolean hasQueuedThreads() {
+		return sync.hasQueuedThreads() || converter != null || writersWaiting.get() > 0;
+	}
+
+	/**
+	 * Checks if the current thread holds any mode of this lock. Such threads are
+	 * never held back behind waiting threads, as that could deadlock.
+	 *
+	 * @param current the current thread
+	 * @return true, if the current thread holds the lock in any mode
+	 */
+	private boolean holdsAnyLock(Thread current) {
+		return upgradeOwner == current
+				|| sync.isHeldExclusively()
+				|| getSharedHoldCount(current) > 0;
+	}
+
+	/**
+	 * Acquires the write lock, holding no read holds, spinning first while the
+	 * lock is held.
+	 */
+	private void lockWrite() {
+		awaitPhaseReaders();
+		if (!sync.tryAcquire(Thread.currentThread(), 0L, true)) {
+			spinner.spinWhile(writeBusy);
+			sync.acquire(0L);
+		}
+	}
+
+	/**
+	 * Acquires the write lock interruptibly, holding no read holds, spinning
+	 * first while the lock is held.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private void lockWriteInterruptibly() throws InterruptedException {
+		awaitPhaseReaders(-1L);
+		if (!sync.tryAcquire(Thread.currentThread(), 0L, true)) {
+			spinner.spinWhile(writeBusy);
+			sync.acquireInterruptibly(0L);
+		}
+	}
+
+	/**
+	 * Checks if a writer holds or is waiting for the write lock.
+	 *
+	 * @return true, if a writer is active or waiting
+	 */
+	private boolean isWriterActiveOrWaiting() {
+		return writersWaiting.get() > 0 || sync.isWriteLocked();
+	}
+
+	/**
+	 * Checks if this lock was created in reader-biased mode.
+	 *
+	 * @return true, if reader biased
+	 */
+	public boolean isReaderBiased() {
+		return readerBiased;
+	}
+
+	/**
+	 * Checks if acquisition statistics are being collected.
+	 *
+	 * @return true, if statistics are enabled
+	 */
+	public boolean isStatisticsEnabled() {
+		return statistics != null;
+	}
+
+	/**
+	 * Checks if the current thread holds the upgrade lock.
+	 *
+	 * @return true, if is upgrade lock held by current thread
+	 */
+	public boolean isUpgradeLockHeldByCurrentThread() {
+		return upgradeOwner == Thread.currentThread();
+	}
+
+	/**
+	 * Checks if the current thread holds a read lock.
+	 *
+	 * @return true, if is read lock held by current thread
+	 */
+	public boolean isReadLockHeldByCurrentThread() {
+		return getReadHoldCount() > 0;
+	}
+
+	/**
+	 * Checks if the current thread holds the write lock.
+	 *
+	 * @return true, if is write lock held by current thread
+	 */
+	public boolean isWriteLockedByCurrentThread() {
+		return sync.isHeldExclusively();
+	}
+
+	/**
+	 * Read lock.
+	 *
+	 * @return the lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+	 */
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	/**
+	 * Acquires a read hold without blocking the caller. The future completes
+	 * once the hold is granted, on the executor if given. The hold belongs to
+	 * the returned {@link Locked} rather than to a thread: it is not counted by
+	 * {@link #getReadHoldCount()}, is not reentrant with locks of the completing
+	 * thread, and may be released by any thread.
+	 *
+	 * @param executor the executor to complete on, or null to complete on the
+	 *                 granting thread
+	 * @return the future
+	 */
+	public CompletableFuture<Locked> readLockAsync(Executor executor) {
+		Thread current = Thread.currentThread();
+		if (!sync.hasQueuedThreads()
+				&& !sync.isHeldExclusively()
+				&& !readGateClosed(current)
+				&& sync.tryAcquireShared(current, 1L, true) >= 0) {
+			restoreReaderBias();
+			return AsyncAcquisition.completed(detachReadHold(current), executor);
+		}
+
+		return AsyncAcquisition.detached(() -> {
+			Thread waiter = Thread.currentThread();
+			long gate = enterReadGate(waiter);
+			sync.acquireQueuedShared(1L);
+			leaveReadGate(gate);
+			restoreReaderBias();
+
+			return detachReadHold(waiter);
+		}, executor);
+	}
+
+	/**
+	 * Downgrades the write lock of the current thread to a read hold, in a
+	 * single state transition, so that no writer can get in between. Cheaper
+	 * than acquiring the read lock and then releasing the write lock. An upgrade
+	 * lock held by the thread is kept. The read hold is released as usual,
+	 * through {@link #readLock()}.
+	 *
+	 * @throws IllegalMonitorStateException if the current thread does not hold
+	 *                                      the write lock exactly once
+	 */
+	public void downgrade() {
+		if (!sync.isHeldExclusively())
+			throw new IllegalMonitorStateException("Thread does not hold write lock");
+		if (sync.getWriteHoldCount() != 1)
+			throw new IllegalMonitorStateException("Write lock held reentrantly");
+
+		Thread current = Thread.currentThread();
+		VERSION.setRelease(this, version + 1); // even, write done
+		recordReadHolds(current, 1, sync.downgrade());
+
+		sync.signalNext(); // queued readers may now proceed
+		endWritePhase();
+		restoreReaderBias();
+	}
+
+	/**
+	 * Detaches a shared read hold just acquired by {@code current}, dropping it
+	 * from the thread's bookkeeping so that any thread may release it.
+	 *
+	 * @param current the current thread
+	 * @return the hold
+	 */
+	private AsyncAcquisition.Hold detachReadHold(Thread current) {
+		releaseReadHold(current);
+
+		return new AsyncAcquisition.Hold(() -> sync.releaseShared(1L));
+	}
+
+	/**
+	 * Detaches the write lock just acquired by {@code current}, so that any
+	 * thread may release it. The releasing thread becomes the owner for the
+	 * duration of the release.
+	 *
+	 * @return the hold
+	 */
+	private AsyncAcquisition.Hold detachWriteHold() {
+		sync.setOwner(null);
+
+		return new AsyncAcquisition.Hold(() -> {
+			sync.setOwner(Thread.currentThread());
+			writeLock.unlock();
+		});
+	}
+
+	/**
+	 * Completes passage through the reader gate, after the read lock was
+	 * acquired or the attempt failed.
+	 *
+	 * @param gate the value returned when entering the gate
+	 */
+	private void leaveReadGate(long gate) {
+		if (gate < 0L)
+			return;
+
+		gateLock.lock();
+		try {
+			if (--pendingPhaseReaders == 0)
+				writerGate.signalAll();
+		} finally {
+			gateLock.unlock();
+		}
+	}
+
+	/**
+	 * Passes the reader gate once the wait is over. Called holding the gate
+	 * lock.
+	 *
+	 * @param phase the phase in which the reader started waiting
+	 * @return the phase, if the reader was admitted by the end of that phase and
+	 *         must call {@link #leaveReadGate(long)}, otherwise
+	 *         {@link #NOT_GATED}
+	 */
+	private long passReadGate(long phase) {
+		if (writePhase != phase)
+			return phase;
+
+		gatedReaders--;
+		return NOT_GATED;
+	}
+
+	/**
+	 * Checks if a new reader must wait at the reader gate. Threads already
+	 * holding any mode of this lock are never held back.
+	 *
+	 * @param current the current thread
+	 * @return true, if the reader gate is closed for the current thread
+	 */
+	private boolean readGateClosed(Thread current) {
+		return gatesReaders
+				&& isWriterActiveOrWaiting()
+				&& !holdsAnyLock(current)
+				&& getReadHoldCount() == 0;
+	}
+
+	/**
+	 * Releases all read holds of {@code current}, including biased holds, in
+	 * preparation for acquiring the write lock.
+	 *
+	 * @param current the current thread
+	 * @return the number of read holds released
+	 */
+	private int releaseReadHolds(Thread current) {
+		int biased = clearBiasedReadHolds(current);
+		int shared = clearReadHolds(current);
+		if (shared > 0)
+			sync.releaseShared(shared);
+
+		return biased + shared;
+	}
+
+	/**
+	 * Releases one biased read hold of {@code current}, if it has any, clearing
+	 * its visible readers slot with the last one.
+	 *
+	 * @param current the current thread
+	 * @return true, if a biased hold was released
+	 */
+	private boolean releaseBiasedReadHold(Thread current) {
+		if (!readerBiased)
+			return false;
+
+		int slot = VisibleReaders.slot(biasHash(), current.threadId());
+		int holds = VisibleReaders.holds(slot, this, current.threadId());
+		if (holds == 0)
+			return false;
+
+		if (holds == 1)
+			VisibleReaders.clear(slot);
+		else
+			VisibleReaders.setHolds(slot, holds - 1);
+		return true;
+	}
+
+	/**
+	 * Releases the bookkeeping of one read hold of {@code current}, ahead of
+	 * releasing the hold in the lock state.
+	 *
+	 * @param current the current thread
+	 * @throws IllegalMonitorStateException if the thread does not hold the read
+	 *                                      lock
+	 */
+	private void releaseReadHold(Thread current) {
+		if (firstReader == current.threadId()) {
+			if (firstReaderHoldCount == 1)
+				firstReader = 0L;
+			else
+				firstReaderHoldCount--;
+		} else {
+			HoldCounter rh = cachedHoldCounter;
+			if (rh == null || rh.tid != current.threadId())
+				rh = readHolds.get();
+			int count = rh.count;
+			if (count <= 1) {
+				readHolds.remove();
+				if (count <= 0)
+					throw new IllegalMonitorStateException("Thread does not hold read lock");
+			}
+			--rh.count;
+		}
+	}
+
+	/**
+	 * Called after the write lock was acquired. Revokes the reader bias and, on
+	 * the outermost acquisition, marks the version as being written.
+	 *
+	 * @param current the current thread
+	 */
+	private void onWriteAcquired(Thread current) {
+		revokeReaderBias(current, null);
+		if (sync.getWriteHoldCount() == 1)
+			VERSION.getAndAdd(this, 1L); // odd, full fence before any data writes
+	}
+
+	/**
+	 * Reacquires read holds released by {@link #releaseReadHolds(Thread)}, as
+	 * regular shared holds, while holding the write lock.
+	 *
+	 * @param current the current thread
+	 * @param holds   the number of read holds to restore
+	 */
+	private void restoreReadHolds(Thread current, int holds) {
+		if (holds == 0)
+			return;
+
+		recordReadHolds(current, holds, sync.addReadHolds(holds));
+	}
+
+	/**
+	 * Re-enables the reader bias once it has been off long enough. Called by
+	 * readers after acquiring the read lock, which guarantees no other thread is
+	 * writing.
+	 */
+	private void restoreReaderBias() {
+		if (readerBiased && !readerBias
+				&& System.nanoTime() - biasInhibitUntil >= 0
+				&& !sync.isWriteLocked())
+			readerBias = true;
+	}
+
+	/**
+	 * Revokes the reader bias, if in effect, and waits for all biased readers
+	 * other than the current thread to leave. Must be called while holding the
+	 * write lock. Biased holds of the current thread, which can only exist when
+	 * it acquired the write lock without releasing its read lock, are converted
+	 * into regular read holds.
+	 *
+	 * @param current the current thread
+	 * @param giveUp  returns true to stop waiting for biased readers, or null to
+	 *                wait for as long as it takes
+	 * @return true, if no biased readers other than the current thread remain
+	 */
+	private boolean revokeReaderBias(Thread current, BooleanSupplier giveUp) {
+		if (!readerBias)
+			return true;
+
+		readerBias = false;
+		long start = System.nanoTime();
+
+		int ownSlot = (getBiasedHoldCount(current) > 0) ? VisibleReaders.slot(biasHash(), current.threadId()) : -1;
+		boolean drained = true;
+		if (giveUp == null)
+			VisibleReaders.awaitDrained(this, ownSlot);
+		else
+			drained = VisibleReaders.awaitDrained(this, ownSlot, giveUp);
+
+		if (!drained) {
+			// Biased readers remain, leave them for the next writer to drain
+			readerBias = true;
+			return false;
+		}
+
+		long now = System.nanoTime();
+		biasInhibitUntil = now + (now - start) * BIAS_INHIBIT_MULTIPLIER;
+
+		restoreReadHolds(current, clearBiasedReadHolds(current));
+		return true;
+	}
+
+	/**
+	 * Returns a stamp for an optimistic read, which can later be checked with
+	 * {@link #validate(long)}. Optimistic reads do not write to any shared
+	 * memory, but the data read must be treated as possibly inconsistent until
+	 * the stamp has been validated.
+	 *
+	 * @return a non-zero stamp, or zero if a writer currently holds the lock
+	 */
+	public long tryOptimisticRead() {
+		long v = version;
+
+		return ((v & 1L) == 0) ? v : 0L;
+	}
+
+	/**
+	 * Attempts to read lock through the visible readers table, without touching
+	 * the central reader state. Reentrant acquisitions by a thread that already
+	 * holds a biased read lock always succeed, even while a writer is revoking
+	 * the bias and waiting for that thread to leave.
+	 *
+	 * @param current the current thread
+	 * @return true, if the read lock was acquired
+	 */
+	private boolean tryBiasedRead(Thread current) {
+		if (!readerBiased)
+			return false;
+
+		long tid = current.threadId();
+		int slot = VisibleReaders.slot(biasHash(), tid);
+		int holds = VisibleReaders.holds(slot, this, tid);
+		if (holds > 0) {
+			VisibleReaders.setHolds(slot, holds + 1);
+			return true;
+		}
+
+		if (!readerBias || !VisibleReaders.tryPublish(slot, this, tid))
+			return false;
+
+		// Re-check after publishing, a writer may have revoked in between
+		if (readerBias)
+			return true;
+
+		VisibleReaders.clear(slot);
+		return false;
+	}
+
+	/**
+	 * Completes a non-blocking, timed or interruptible write lock acquisition,
+	 * like {@link #onWriteAcquired(Thread)}, but stops waiting for biased
+	 * readers when {@code giveUp} says so, releasing the write lock again.
+	 *
+	 * @param current the current thread
+	 * @param giveUp  returns true to stop waiting for biased readers
+	 * @return true, if the write lock is held
+	 */
+	private boolean tryCompleteWrite(Thread current, BooleanSupplier giveUp) {
+		if (!revokeReaderBias(current, giveUp)) {
+			sync.release(1L);
+			endWritePhase();
+			return false;
+		}
+
+		if (sync.getWriteHoldCount() == 1)
+			VERSION.getAndAdd(this, 1L); // odd, full fence before any data writes
+		return true;
+	}
+
+	/**
+	 * Sets the name reported by lock events, such as the name of the scene node
+	 * or asset the lock guards.
+	 *
+	 * @param name the name, or null to report the identity
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Enables or disables the collection of acquisition statistics, at any
+	 * time. While disabled, acquisitions pay a single volatile read. While
+	 * enabled, each acquisition updates one or two striped counters, and those that
+	 * may block also read the clock twice. Disabling keeps the statistics
+	 * collected so far, which enabling again resumes.
+	 *
+	 * @param enabled true to collect statistics
+	 * @see #getStatistics()
+	 */
+	public synchronized void setStatisticsEnabled(boolean enabled) {
+		if (enabled && collectedStatistics == null)
+			collectedStatistics = new LockStatistics();
+
+		statistics = enabled ? collectedStatistics : null;
+	}
+
+	/**
+	 * Clears the collected acquisition statistics. Collection continues if
+	 * enabled.
+	 */
+	public synchronized void resetStatistics() {
+		collectedStatistics = (statistics != null) ? new LockStatistics() : null;
+		statistics = collectedStatistics;
+	}
+
+	/**
+	 * Takes a snapshot of the lock state, for monitoring.
+	 *
+	 * @return the lock state
+	 * @see #snapshot(LockState)
+	 */
+	public LockState snapshot() {
+		return snapshot(new LockState());
+	}
+
+	/**
+	 * Takes a snapshot of the lock state into an existing instance. Reads the
+	 * state word once and a few counters, without locking or listing the queued
+	 * threads, and allocates nothing.
+	 *
+	 * @param state the lock state to fill
+	 * @return {@code state}
+	 */
+	public LockState snapshot(LockState state) {
+		long s = sync.state();
+		boolean upgradeLocked = (s & Sync.UPGRADE_BIT) != 0L;
+		int queuedUpgraders = upgradersQueued.get();
+		int queuedShared = readersQueued.get();
+		int queuedReaders = gateWaiters + queuedShared;
+		int queuedWriters = 0;
+
+		if (sync.hasQueuedThreads())
+			queuedWriters = Math.max(0, sync.getQueueLength() - queuedShared - queuedUpgraders);
+
+		return state.set(
+				(int) (s & Sync.READ_MASK),
+				(int) (s >>> Sync.WRITE_SHIFT),
+				sync.getOwner(),
+				upgradeLocked,
+				upgradeLocked ? upgradeOwner : null,
+				converter != null,
+				queuedReaders,
+				queuedWriters,
+				queuedUpgraders);
+	}
+
+	/**
+	 * To string, built on {@link #snapshot()}.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "UpgradableReadWriteLock [" + snapshot() + "]";
+	}
+
+	/**
+	 * Checks that no write lock has been acquired since the stamp was issued by
+	 * {@link #tryOptimisticRead()}. Always false for a zero stamp.
+	 *
+	 * @param stamp the stamp
+	 * @return true, if the data read since the stamp was issued is consistent
+	 */
+	public boolean validate(long stamp) {
+		VarHandle.acquireFence();
+
+		return (stamp != 0L) && (version == stamp);
+	}
+
+	/**
+	 * Returns the upgrade lock. The upgrade lock may be held by a single thread
+	 * at a time, concurrently with any number of readers. While it is held, no
+	 * other thread can acquire the write lock, and its owner acquiring the write
+	 * lock is an atomic upgrade: the write lock is granted as soon as the other
+	 * readers have left, and the state read under the upgrade lock is still
+	 * current.
+	 *
+	 * <p>
+	 * A thread must not block for the upgrade lock while holding the read lock;
+	 * it should acquire the upgrade lock instead of the read lock.
+	 * </p>
+	 *
+	 * @return the lock
+	 */
+	public Lock upgradeLock() {
+		return upgradeLock;
+	}
+
+	/**
+	 * Write lock.
+	 *
+	 * @return the lock
+	 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+	 */
+	@Override
 	public Lock writeLock() {
 		return writeLock;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Starts timing an upgrade hold, for lock events and, while watched, for
+	 * the watchdog. Called by the new upgrade lock owner.
+	 */
+	private void upgradeHoldStarted() {
+		upgradeHeld = LockEvents.beginHeld();
+		if (watch != null)
+			UPGRADE_SINCE.setOpaque(this, System.nanoTime());
+	}
+
+	/**
+	 * Ends timing an upgrade hold. Called by the upgrade lock owner before
+	 * releasing it.
+	 */
+	private void upgradeHoldEnded() {
+		LockEvents.commit(upgradeHeld, this, LockEvents.UPGRADE);
+		upgradeHeld = null;
+		if (upgradeSince != 0L)
+			UPGRADE_SINCE.setOpaque(this, 0L);
+	}
+
+	/**
+	 * Acquires the write lock without blocking the caller. The future completes
+	 * once the lock is granted, on the executor if given. The lock belongs to the
+	 * returned {@link Locked} rather than to a thread: it is not reentrant with
+	 * locks of the completing thread, and may be released by any thread. A
+	 * caller holding this lock in any mode is not upgraded; the acquisition
+	 * waits until it lets go.
+	 *
+	 * @param executor the executor to complete on, or null to complete on the
+	 *                 granting thread
+	 * @return the future
+	 */
+	public CompletableFuture<Locked> writeLockAsync(Executor executor) {
+		Thread current = Thread.currentThread();
+		if (!sync.hasQueuedThreads() && !holdsAnyLock(current) && writeLock.tryLock())
+			return AsyncAcquisition.completed(detachWriteHold(), executor);
+
+		return AsyncAcquisition.detached(() -> {
+			writeLock.lock();
+
+			return detachWriteHold();
+		}, executor);
+	}
+
+	/**
+	 * Starts timing a write hold, for lock events and, while watched, for the
+	 * watchdog. Called by the new write lock owner.
+	 */
+	private void writeHoldStarted() {
+		writeHeld = LockEvents.beginHeld();
+		if (watch != null)
+			WRITE_SINCE.setOpaque(this, System.nanoTime());
+	}
+
+	/**
+	 * Ends timing a write hold. Called by the write lock owner before releasing
+	 * its outermost hold.
+	 */
+	private void writeHoldEnded() {
+		LockEvents.commit(writeHeld, this, LockEvents.WRITE);
+		writeHeld = null;
+		if (writeSince != 0L)
+			WRITE_SINCE.setOpaque(this, 0L);
+	}
+
+	/**
+	 * Registers a writer about to wait for the write lock, so that gated
+	 * readers hold back.
+	 *
+	 * @return true, if the writer was counted and must call
+	 *         {@link #writerLeft(boolean)}
+	 */
+	private boolean writerArrived() {
+		if (!gatesReaders || sync.isHeldExclusively())
+			return false;
+
+		writersWaiting.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Unregisters a writer registered by {@link #writerArrived()}, once it
+	 * acquired the write lock or gave up. Readers held back only for this
+	 * writer are released if it gave up.
+	 *
+	 * @param counted the value returned by {@link #writerArrived()}
+	 */
+	private void writerLeft(boolean counted) {
+		if (!counted)
+			return;
+
+		if (writersWaiting.decrementAndGet() == 0 && gateWaiters > 0 && !sync.isHeldExclusively()) {
+			gateLock.lock();
+			try {
+				readerGate.signalAll();
+			} finally {
+				gateLock.unlock();
+			}
+		}
+	}
+}
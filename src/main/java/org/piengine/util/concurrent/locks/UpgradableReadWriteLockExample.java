@@ -28,7 +28,8 @@ import java.util.concurrent.Executors;
 
 /**
  * Example usage of UpgradableReadWriteLock, demonstrating read-to-write upgrades,
- * write-to-read downgrades, and multiple threads upgrading without deadlock.
+ * write-to-read downgrades, multiple threads upgrading without deadlock, and
+ * atomic upgrades through the upgrade lock.
  */
 public class UpgradableReadWriteLockExample {
 	
@@ -75,20 +76,14 @@ public class UpgradableReadWriteLockExample {
         // Example 2: Write to Read downgrade
         println("\nExample 2: Write to Read downgrade");
         rwLock.writeLock().lock();
+        println("Acquired write lock");
+        rwLock.downgrade();
         try {
-            println("Acquired write lock");
-            rwLock.readLock().lock();
-            try {
-                println("Acquired read lock (now holding both)");
-                rwLock.writeLock().unlock();
-                println("Released write lock, now only holding read lock");
-            } finally {
-                println("Attempting to release read lock");
-                rwLock.readLock().unlock();
-                println("Released read lock");
-            }
+            println("Downgraded atomically, now only holding read lock");
         } finally {
-            // Already unlocked
+            println("Attempting to release read lock");
+            rwLock.readLock().unlock();
+            println("Released read lock");
         }
 
         // Example 3: Multiple threads attempting upgrades
@@ -128,6 +123,43 @@ public class UpgradableReadWriteLockExample {
             Thread.sleep(10);
             var t3 = executor.submit(task);
 
+            try {
+                t1.get();
+                t2.get();
+                t3.get();
+            } catch (ExecutionException e) {
+                System.err.println("Task failed: " + e.getCause());
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        // Example 4: Atomic upgrades using the upgrade lock
+        println("\nExample 4: Atomic upgrades using the upgrade lock");
+        int[] counter = { 0 };
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Runnable task = () -> {
+                String name = Thread.currentThread().getName();
+                rwLock.upgradeLock().lock();
+                try {
+                    int seen = counter[0];
+                    println(name + ": Acquired upgrade lock, counter=" + seen);
+                    rwLock.writeLock().lock();
+                    try {
+                        // No other writer got in, what we read is still current
+                        counter[0] = seen + 1;
+                        println(name + ": Upgraded to write lock, counter=" + counter[0]);
+                    } finally {
+                        rwLock.writeLock().unlock();
+                    }
+                } finally {
+                    rwLock.upgradeLock().unlock();
+                    println(name + ": Released upgrade lock");
+                }
+            };
+
+            var t1 = executor.submit(task);
+            var t2 = executor.submit(task);
+            var t3 = executor.submit(task);
+
             try {
                 t1.get();
                 t2.get();
@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Global table of visible readers shared by all reader-biased
+ * {@link UpgradableReadWriteLock}s. A biased reader publishes the lock it holds
+ * into a slot derived from its thread and the lock, instead of updating the
+ * lock's central reader count. Writers revoke the bias and then wait until no
+ * slot refers to their lock any longer.
+ *
+ * <p>
+ * A slot also records the id of the thread that published into it and that
+ * thread's reentrant hold count. Both are only ever written by the publishing
+ * thread while it owns the slot, so biased readers need no per-thread state
+ * at all, and the memory used for biased read tracking stays fixed no matter
+ * how many threads read.
+ * </p>
+ *
+ * <p>
+ * Based on BRAVO (Biased Locking for Reader-Writer Locks, Dice &amp; Kogan,
+ * USENIX ATC 2019).
+ * </p>
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+final class VisibleReaders {
+
+	/** The number of slots, a power of two. */
+	private static final int SIZE = 4096;
+
+	/** The slot index mask. */
+	private static final int MASK = SIZE - 1;
+
+	/** Spins on a busy slot before yielding while draining. */
+	private static final int DRAIN_SPINS = 64;
+
+	/** The slots, each holding the lock published by a biased reader or null. */
+	private static final AtomicReferenceArray<Object> SLOTS = new AtomicReferenceArray<>(SIZE);
+
+	/**
+	 * The id of the thread owning each slot, or zero. A thread can only ever
+	 * read back its own id from a slot it has published into and not yet
+	 * cleared, as it resets the id itself before clearing.
+	 */
+	private static final long[] OWNERS = new long[SIZE];
+
+	/** The reentrant hold count of each slot's owner. */
+	private static final int[] HOLDS = new int[SIZE];
+
+	/**
+	 * Waits until no slot, other than {@code ownSlot}, refers to {@code lock}.
+	 *
+	 * @param lock    the lock being revoked
+	 * @param ownSlot the slot of the revoking thread, or -1 if it has none
+	 */
+	static void awaitDrained(Object lock, int ownSlot) {
+		for (int i = 0; i < SIZE; i++) {
+			if (i == ownSlot)
+				continue;
+
+			for (int spins = 0; SLOTS.get(i) == lock; spins++) {
+				if (spins < DRAIN_SPINS)
+					Thread.onSpinWait();
+				else
+					Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Waits until no slot, other than {@code ownSlot}, refers to {@code lock}, or
+	 * the waiting thread gives up.
+	 *
+	 * @param lock    the lock being revoked
+	 * @param ownSlot the slot of the revoking thread, or -1 if it has none
+	 * @param giveUp  checked before each yield, returns true to stop waiting
+	 * @return true, if drained
+	 */
+	static boolean awaitDrained(Object lock, int ownSlot, BooleanSupplier giveUp) {
+		for (int i = 0; i < SIZE; i++) {
+			if (i == ownSlot)
+				continue;
+
+			for (int spins = 0; SLOTS.get(i) == lock; spins++) {
+				if (spins < DRAIN_SPINS)
+					Thread.onSpinWait();
+				else if (giveUp.getAsBoolean())
+					return false;
+				else
+					Thread.yield();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Clears a slot previously published by
+	 * {@link #tryPublish(int, Object, long)}. Called by the slot owner only.
+	 *
+	 * @param slot the slot
+	 */
+	static void clear(int slot) {
+		OWNERS[slot] = 0L;
+		HOLDS[slot] = 0;
+		SLOTS.set(slot, null);
+	}
+
+	/**
+	 * Gets the biased hold count of a thread on a lock.
+	 *
+	 * @param slot the slot of the thread for the lock
+	 * @param lock the lock
+	 * @param tid  the id of the current thread
+	 * @return the hold count, or zero if the thread does not own the slot for
+	 *         that lock
+	 */
+	static int holds(int slot, Object lock, long tid) {
+		if (OWNERS[slot] != tid || SLOTS.get(slot) != lock)
+			return 0;
+
+		return HOLDS[slot];
+	}
+
+	/**
+	 * Sets the hold count of a slot. Called by the slot owner only.
+	 *
+	 * @param slot  the slot
+	 * @param holds the new, non-zero hold count
+	 */
+	static void setHolds(int slot, int holds) {
+		HOLDS[slot] = holds;
+	}
+
+	/**
+	 * Computes the slot of a thread for a lock.
+	 *
+	 * @param lockHash the identity hash of the lock
+	 * @param tid      the thread id
+	 * @return the slot index
+	 */
+	static int slot(int lockHash, long tid) {
+		long h = (tid ^ lockHash) * 0x9E3779B97F4A7C15L;
+
+		return (int) (h >>> 40) & MASK;
+	}
+
+	/**
+	 * Attempts to publish {@code lock} into an empty slot, with a hold count of
+	 * one.
+	 *
+	 * @param slot the slot
+	 * @param lock the lock
+	 * @param tid  the id of the current thread
+	 * @return true, if the slot was empty and now refers to the lock
+	 */
+	static boolean tryPublish(int slot, Object lock, long tid) {
+		if (SLOTS.get(slot) != null || !SLOTS.compareAndSet(slot, null, lock))
+			return false;
+
+		HOLDS[slot] = 1;
+		OWNERS[slot] = tid;
+		return true;
+	}
+
+	/**
+	 * Not instantiable.
+	 */
+	private VisibleReaders() {
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A flat-combining write executor. Threads submit small mutations of a target
+ * instead of each acquiring its write lock; whichever thread obtains the write
+ * lock applies every pending mutation in one batch, turning many lock handoffs
+ * into one.
+ *
+ * <pre>{@code
+ * WriteCombiner<Node> combiner = new WriteCombiner<>(node, node);
+ *
+ * combiner.apply(n -> n.velocity += dv); // applied, possibly by another thread
+ * }</pre>
+ *
+ * <p>
+ * Mutations are applied in submission order per thread, under the write lock
+ * of the given lock, so they exclude readers and ordinary writers
+ * as usual. They run on the combining thread, so must be short and must not
+ * depend on thread-local state. A mutation that throws completes its own ticket
+ * exceptionally without affecting the rest of the batch.
+ * </p>
+ *
+ * @param <T> the target type
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+public final class WriteCombiner<T> {
+
+	/**
+	 * A submitted mutation, completed once applied. Waiting on a ticket spins,
+	 * then parks, and takes over combining if the write lock is free.
+	 */
+	public final class Ticket {
+
+		/** The mutation, cleared once applied. */
+		private Consumer<? super T> mutation;
+
+		/** The next older ticket in the pending stack. */
+		private Ticket next;
+
+		/** The waiting thread, if parked. */
+		private volatile Thread waiter;
+
+		/** Whether the mutation has been applied. */
+		private volatile boolean done;
+
+		/** The failure, if the mutation threw. */
+		private Throwable failure;
+
+		/**
+		 * Instantiates a new ticket.
+		 *
+		 * @param mutation the mutation
+		 */
+		private Ticket(Consumer<? super T> mutation) {
+			this.mutation = mutation;
+		}
+
+		/**
+		 * Completes the ticket and wakes its waiter.
+		 *
+		 * @param failure the failure, or null
+		 */
+		private void complete(Throwable failure) {
+			this.mutation = null;
+			this.failure = failure;
+			this.done = true;
+
+			Thread w = waiter;
+			if (w != null)
+				LockSupport.unpark(w);
+		}
+
+		/**
+		 * Checks if the mutation has been applied.
+		 *
+		 * @return true, if done
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Checks if the mutation threw.
+		 *
+		 * @return true, if done and failed
+		 */
+		public boolean isCompletedExceptionally() {
+			return done && failure != null;
+		}
+
+		/**
+		 * Waits until the mutation has been applied, combining pending mutations
+		 * whenever the write lock is free. Not interruptible; the interrupt status
+		 * is preserved.
+		 *
+		 * @throws CompletionException if the mutation threw
+		 */
+		public void join() {
+			boolean interrupted = false;
+			for (int spins = 0; !done; spins++) {
+				if (tryCombine())
+					continue;
+
+				if (spins < SPINS) {
+					Thread.onSpinWait();
+				} else {
+					waiter = Thread.currentThread();
+					if (!done)
+						LockSupport.parkNanos(this, PARK_NANOS);
+					waiter = null;
+					interrupted |= Thread.interrupted();
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+			if (failure != null)
+				throw new CompletionException(failure);
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Ticket [done=" + done + ", failure=" + failure + "]";
+		}
+	}
+
+	/** The maximum number of batches a combining call applies before letting go. */
+	private static final int MAX_PASSES = 8;
+
+	/** Spins before parking while waiting on a ticket. */
+	private static final int SPINS = 128;
+
+	/**
+	 * The park time while waiting on a ticket, after which the waiter retries the
+	 * write lock in case its holder is not combining.
+	 */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/** The pending var handle. */
+	private static final VarHandle PENDING;
+
+	static {
+		try {
+			PENDING = MethodHandles.lookup().findVarHandle(WriteCombiner.class, "pending", WriteCombiner.Ticket.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** The target. */
+	private final T target;
+
+	/** The write lock. */
+	private final Lock writeLock;
+
+	/** The pending tickets, newest first. */
+	private volatile Ticket pending;
+
+	/** The number of batches applied, guarded by the write lock. */
+	private volatile long batchCount;
+
+	/** The number of mutations applied, guarded by the write lock. */
+	private volatile long mutationCount;
+
+	/**
+	 * Instantiates a new write combiner.
+	 *
+	 * @param rwLock the lock, such as a {@link Lockable}, whose write lock guards
+	 *               the target
+	 * @param target the target
+	 */
+	public WriteCombiner(ReadWriteLock rwLock, T target) {
+		this.writeLock = Objects.requireNonNull(rwLock, "rwLock").writeLock();
+		this.target = target;
+	}
+
+	/**
+	 * Applies a mutation, waiting until it has been applied by this or another
+	 * thread.
+	 *
+	 * @param mutation the mutation
+	 * @throws CompletionException if the mutation threw
+	 */
+	public void apply(Consumer<? super T> mutation) {
+		submit(mutation).join();
+	}
+
+	/**
+	 * Submits a mutation without waiting. The mutation is applied by the next
+	 * combining thread; if the write lock is free, that is the calling thread.
+	 *
+	 * @param mutation the mutation
+	 * @return the ticket
+	 */
+	public Ticket submit(Consumer<? super T> mutation) {
+		Ticket t = new Ticket(Objects.requireNonNull(mutation, "mutation"));
+
+		Ticket head;
+		do {
+			head = pending;
+			t.next = head;
+		} while (!PENDING.weakCompareAndSet(this, head, t));
+
+		tryCombine();
+
+		return t;
+	}
+
+	/**
+	 * Applies pending mutations if the write lock is free, at most
+	 * {@link #MAX_PASSES} batches in all. After releasing the lock, tries again
+	 * while batches are left, since more submitters may have failed to obtain
+	 * the lock while it was held here. Whatever is pending beyond that is left
+	 * to the waiters, which retry every {@link #PARK_NANOS}, so that no thread
+	 * keeps combining for others once its own mutation is applied.
+	 *
+	 * @return true, if any batch was applied
+	 */
+	private boolean tryCombine() {
+		int passes = 0;
+
+		while (passes < MAX_PASSES && pending != null && writeLock.tryLock()) {
+			try {
+				do {
+					combine((Ticket) PENDING.getAndSet(this, null));
+				} while (++passes < MAX_PASSES && pending != null);
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		return passes > 0;
+	}
+
+	/**
+	 * Applies a batch in submission order while holding the write lock.
+	 *
+	 * @param head the newest ticket of the batch, or null if another combiner
+	 *             took it
+	 */
+	private void combine(Ticket head) {
+		if (head == null)
+			return;
+
+		Ticket first = null;
+		while (head != null) {
+			Ticket next = head.next;
+			head.next = first;
+			first = head;
+			head = next;
+		}
+
+		long n = 0;
+		for (Ticket t = first; t != null; n++) {
+			Ticket next = t.next;
+			t.next = null;
+
+			Throwable failure = null;
+			try {
+				t.mutation.accept(target);
+			} catch (Throwable e) {
+				failure = e;
+			}
+			t.complete(failure);
+
+			t = next;
+		}
+
+		batchCount++;
+		mutationCount += n;
+	}
+
+	/**
+	 * Gets the number of batches applied. Compared with
+	 * {@link #getMutationCount()}, shows how many lock acquisitions combining
+	 * saved.
+	 *
+	 * @return the batch count
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Gets the number of mutations applied.
+	 *
+	 * @return the mutation count
+	 */
+	public long getMutationCount() {
+		return mutationCount;
+	}
+
+	/**
+	 * Gets the target.
+	 *
+	 * @return the target
+	 */
+	public T getTarget() {
+		return target;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "WriteCombiner [batches=" + batchCount + ", mutations=" + mutationCount + "]";
+	}
+}
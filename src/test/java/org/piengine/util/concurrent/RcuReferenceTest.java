@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link RcuReference}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class RcuReferenceTest {
+
+	/** How long to wait for other threads to reach a state. */
+	private static final long AWAIT_MILLIS = 10_000L;
+
+	/** How long a writer is given to (wrongly) finish its grace period. */
+	private static final long GRACE_MILLIS = 50L;
+
+	/**
+	 * A grace period waits for a read section opened before it.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void graceWaitsForOpenReadSection() throws Exception {
+		List<String> reclaimed = new CopyOnWriteArrayList<>();
+		RcuReference<String> ref = new RcuReference<>("old", reclaimed::add);
+		Lock read = ref.lockable().readLock();
+
+		read.lock();
+		Thread writer = Thread.ofPlatform().start(() -> ref.set("new"));
+		try {
+			awaitPublished(ref, "new");
+			writer.join(GRACE_MILLIS);
+			assertTrue(writer.isAlive(), "grace period ended under a reader");
+			assertTrue(reclaimed.isEmpty());
+		} finally {
+			read.unlock();
+		}
+		writer.join(AWAIT_MILLIS);
+		assertFalse(writer.isAlive());
+		assertEquals(List.of("old"), reclaimed);
+	}
+
+	/**
+	 * Closing a nested read section does not end the grace period of the outer
+	 * section still reading the old version.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void nestedReadSectionKeepsOuterPhase() throws Exception {
+		List<String> reclaimed = new CopyOnWriteArrayList<>();
+		RcuReference<String> ref = new RcuReference<>("old", reclaimed::add);
+		Lock read = ref.lockable().readLock();
+
+		read.lock();
+		Thread writer = Thread.ofPlatform().start(() -> ref.set("new"));
+		try {
+			awaitPublished(ref, "new");
+
+			read.lock();
+			read.unlock();
+
+			writer.join(GRACE_MILLIS);
+			assertTrue(writer.isAlive(), "grace period ended under the outer section");
+			assertTrue(reclaimed.isEmpty());
+		} finally {
+			read.unlock();
+		}
+		writer.join(AWAIT_MILLIS);
+		assertFalse(writer.isAlive());
+		assertEquals(List.of("old"), reclaimed);
+	}
+
+	/**
+	 * A grace period with no readers completes, and a read section opened after
+	 * it does not hold up the next one.
+	 */
+	@Test
+	void synchronizeWithoutReadersCompletes() {
+		List<String> reclaimed = new CopyOnWriteArrayList<>();
+		RcuReference<String> ref = new RcuReference<>("a", reclaimed::add);
+
+		ref.set("b");
+		assertEquals(List.of("a"), reclaimed);
+		assertEquals("B", ref.read(String::toUpperCase));
+		assertEquals("c", ref.update(s -> "c"));
+		ref.synchronize();
+		assertEquals(List.of("a", "b"), reclaimed);
+		assertEquals("c", ref.get());
+	}
+
+	/**
+	 * Waits until a value is published.
+	 *
+	 * @param ref   the reference
+	 * @param value the value
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private static void awaitPublished(RcuReference<String> ref, String value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+		while (!value.equals(ref.get())) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Timed out waiting for " + value);
+			Thread.sleep(1);
+		}
+	}
+}
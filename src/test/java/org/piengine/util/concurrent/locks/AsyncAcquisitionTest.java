@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.LockableTest.PlainLockable;
+
+/**
+ * Tests of {@link AsyncAcquisition#holding}, the asynchronous acquisition of
+ * any {@link Lockable}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class AsyncAcquisitionTest {
+
+	/**
+	 * A dependent stage running on the parked owner releases the lock there.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void holdReleasedOnOwnerThread() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+		AtomicReference<Thread> stage = new AtomicReference<>();
+
+		lockable.rwLock.writeLock().lock();
+		CompletableFuture<Locked> future = AsyncAcquisition.holding(lockable::lockForWrite, null);
+		CompletableFuture<Void> released = future.thenAccept(locked -> {
+			stage.set(Thread.currentThread());
+			assertTrue(lockable.rwLock.isWriteLockedByCurrentThread());
+			try {
+				locked.unlock();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			assertFalse(lockable.rwLock.isWriteLocked());
+		});
+		lockable.rwLock.writeLock().unlock();
+
+		released.get(10L, TimeUnit.SECONDS);
+		assertTrue(stage.get().isVirtual());
+		assertFalse(lockable.rwLock.isWriteLocked());
+		assertThrows(IllegalMonitorStateException.class, future.get()::unlock);
+	}
+
+	/**
+	 * Releasing from another thread returns once the parked owner has released
+	 * the lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void holdReleasedOnAnotherThread() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+
+		Locked locked = AsyncAcquisition.holding(lockable::lockForWrite, null).get(10L, TimeUnit.SECONDS);
+		assertTrue(lockable.rwLock.isWriteLocked());
+		assertFalse(lockable.rwLock.isWriteLockedByCurrentThread());
+
+		AtomicBoolean lockedAfterRelease = new AtomicBoolean(true);
+		Thread releaser = Thread.ofPlatform().start(() -> {
+			try {
+				locked.unlock();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			lockedAfterRelease.set(lockable.rwLock.isWriteLocked());
+		});
+		UpgradableReadWriteLockTest.join(List.of(releaser));
+
+		assertFalse(lockedAfterRelease.get());
+		assertTrue(lockable.rwLock.writeLock().tryLock());
+		lockable.rwLock.writeLock().unlock();
+	}
+
+	/**
+	 * The hold is completed on the executor, if given.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void holdCompletedOnExecutor() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Thread worker = executor.submit(Thread::currentThread).get();
+			AtomicReference<Thread> stage = new AtomicReference<>();
+
+			lockable.rwLock.writeLock().lock();
+			CompletableFuture<Locked> future = AsyncAcquisition.holding(lockable::lockForRead, executor);
+			CompletableFuture<Void> completed = future.thenRun(() -> stage.set(Thread.currentThread()));
+			lockable.rwLock.writeLock().unlock();
+
+			completed.get(10L, TimeUnit.SECONDS);
+			assertSame(worker, stage.get());
+			assertEquals(1, lockable.rwLock.getReadLockCount());
+			future.get().unlock();
+			assertEquals(0, lockable.rwLock.getReadLockCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * An executor rejecting the completion fails the future and releases the
+	 * lock, and a failed acquisition fails the future holding nothing.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void rejectedCompletionReleasesLock() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+
+		CompletableFuture<Locked> rejected = AsyncAcquisition.holding(lockable::lockForWrite, command -> {
+			throw new RejectedExecutionException("rejected");
+		});
+		ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(10L, TimeUnit.SECONDS));
+		assertInstanceOf(RejectedExecutionException.class, e.getCause());
+		assertFalse(lockable.rwLock.isWriteLocked());
+
+		CompletableFuture<Locked> failed = AsyncAcquisition.holding(() -> {
+			throw new IllegalStateException("failed");
+		}, null);
+		e = assertThrows(ExecutionException.class, () -> failed.get(10L, TimeUnit.SECONDS));
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.Lockable.LockableReadWrite;
+
+/**
+ * Tests of {@link CompactUpgradableReadWriteLock}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class CompactUpgradableReadWriteLockTest {
+
+	/** An object laid out like the compact lock: one long and one reference. */
+	static final class LongAndReference {
+
+		/** The long. */
+		long value;
+
+		/** The reference. */
+		Object reference;
+	}
+
+	/**
+	 * Gets the bytes allocated per object by a factory, over many objects.
+	 *
+	 * @param factory the factory
+	 * @return the bytes per object
+	 */
+	private static long bytesPerObject(Supplier<?> factory) {
+		Object[] objects = new Object[100_000];
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = factory.get();
+		long before = threads.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = factory.get();
+		long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+		return Math.round((double) allocated / objects.length);
+	}
+
+	/**
+	 * An idle lock is no larger than an object with one long and one reference,
+	 * which is 24 bytes with compressed references.
+	 */
+	@Test
+	void idleLockIsOneWordAndOneReference() {
+		long lock = bytesPerObject(CompactUpgradableReadWriteLock::new);
+		long reference = bytesPerObject(LongAndReference::new);
+
+		assertEquals(reference, lock);
+		assertTrue(lock <= 32L, lock + " bytes per lock");
+	}
+
+	/**
+	 * Locking through a lockable over a compact lock allocates nothing, as the
+	 * lockable keeps the views.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockableAcquireReleaseAllocatesNothing() throws Exception {
+		LockableReadWrite lockable = new LockableReadWrite(new CompactUpgradableReadWriteLock());
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+
+		long before = 0L;
+		for (int round = 0; round < 21; round++) {
+			if (round == 20)
+				before = threads.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < 100_000; i++) {
+				lockable.lockForRead().unlock();
+				lockable.lockForUpgrade().unlock();
+				lockable.lockForWrite().unlock();
+			}
+		}
+		long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+		assertEquals(0L, allocated / 100_000, allocated + " bytes allocated by 100000 pairs");
+	}
+
+	/**
+	 * Readers share the lock and exclude writers, but not the upgrade lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void readersExcludeWritersOnly() throws Exception {
+		CompactUpgradableReadWriteLock lock = new CompactUpgradableReadWriteLock();
+
+		lock.readLock().lock();
+		assertTrue(onOtherThread(() -> {
+			boolean read = lock.readLock().tryLock();
+			if (read)
+				lock.readLock().unlock();
+			return read;
+		}));
+		assertTrue(onOtherThread(() -> {
+			boolean upgrade = lock.upgradeLock().tryLock();
+			if (upgrade)
+				lock.upgradeLock().unlock();
+			return upgrade;
+		}));
+		assertFalse(onOtherThread(() -> lock.writeLock().tryLock(10L, TimeUnit.MILLISECONDS)));
+		assertEquals(1, lock.getReadLockCount());
+
+		lock.readLock().unlock();
+		assertEquals(0, lock.getReadLockCount());
+		assertTrue(lock.writeLock().tryLock());
+		assertTrue(lock.isWriteLockedByCurrentThread());
+		assertFalse(onOtherThread(() -> lock.readLock().tryLock(10L, TimeUnit.MILLISECONDS)));
+		lock.writeLock().unlock();
+		assertFalse(lock.isWriteLocked());
+	}
+
+	/**
+	 * The upgrade lock owner converts to the write lock once the readers have
+	 * left, and nobody writes in between.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void upgradeConvertsAfterReadersLeave() throws Exception {
+		CompactUpgradableReadWriteLock lock = new CompactUpgradableReadWriteLock();
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread reader = Thread.ofPlatform().start(() -> {
+			lock.readLock().lock();
+			try {
+				reading.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.readLock().unlock();
+			}
+		});
+		reading.await();
+
+		lock.upgradeLock().lock();
+		assertTrue(lock.isUpgradeLockHeldByCurrentThread());
+		assertFalse(onOtherThread(() -> lock.upgradeLock().tryLock()));
+		assertFalse(lock.writeLock().tryLock(10L, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		lock.writeLock().lock();
+		assertTrue(lock.isWriteLockedByCurrentThread());
+		assertFalse(onOtherThread(() -> lock.readLock().tryLock()));
+		lock.writeLock().unlock();
+		assertTrue(lock.isUpgradeLockHeldByCurrentThread());
+		lock.upgradeLock().unlock();
+
+		UpgradableReadWriteLockTest.join(List.of(reader));
+		assertFalse(lock.isWriteLocked());
+	}
+
+	/**
+	 * A thread waiting for the lock gives up once interrupted.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockInterruptiblyHonoursInterrupt() throws Exception {
+		CompactUpgradableReadWriteLock lock = new CompactUpgradableReadWriteLock();
+		AtomicBoolean interrupted = new AtomicBoolean();
+
+		lock.writeLock().lock();
+		try {
+			Thread reader = Thread.ofPlatform().start(() -> {
+				try {
+					lock.readLock().lockInterruptibly();
+					lock.readLock().unlock();
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			});
+			Thread.sleep(20);
+			reader.interrupt();
+			UpgradableReadWriteLockTest.join(List.of(reader));
+			assertTrue(interrupted.get());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writers, upgraders and readers contending for the lock never overlap, and
+	 * all waiters are woken.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void contendedLockExcludesWriters() throws Exception {
+		CompactUpgradableReadWriteLock lock = new CompactUpgradableReadWriteLock();
+		int[] counter = new int[1];
+		AtomicInteger torn = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < 8; t++) {
+			int role = t % 3;
+			threads.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < 20_000; i++) {
+					if (role == 0) {
+						lock.readLock().lock();
+						int before = counter[0];
+						Thread.onSpinWait();
+						if (counter[0] != before)
+							torn.incrementAndGet();
+						lock.readLock().unlock();
+					} else if (role == 1) {
+						lock.upgradeLock().lock();
+						lock.writeLock().lock();
+						counter[0]++;
+						lock.writeLock().unlock();
+						lock.upgradeLock().unlock();
+					} else {
+						lock.writeLock().lock();
+						counter[0]++;
+						lock.writeLock().unlock();
+					}
+				}
+			}));
+		}
+		UpgradableReadWriteLockTest.join(threads);
+
+		assertEquals(0, torn.get());
+		assertEquals(20_000 * 5, counter[0]);
+		assertEquals(0, lock.getReadLockCount());
+		assertFalse(lock.isWriteLocked());
+	}
+
+	/**
+	 * A task returning a boolean, which may be interrupted.
+	 */
+	@FunctionalInterface
+	interface Task {
+
+		/**
+		 * Runs the task.
+		 *
+		 * @return the result
+		 * @throws InterruptedException the interrupted exception
+		 */
+		boolean run() throws InterruptedException;
+	}
+
+	/**
+	 * Runs a task on another thread and waits for its result.
+	 *
+	 * @param task the task
+	 * @return the result
+	 * @throws InterruptedException the interrupted exception
+	 */
+	static boolean onOtherThread(Task task) throws InterruptedException {
+		AtomicBoolean result = new AtomicBoolean();
+		Thread thread = Thread.ofPlatform().start(() -> {
+			try {
+				result.set(task.run());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		UpgradableReadWriteLockTest.join(List.of(thread));
+
+		return result.get();
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.HierarchicalLock.Mode;
+
+/**
+ * Tests of {@link HierarchicalLock}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class HierarchicalLockTest {
+
+	/**
+	 * The compatibility of the modes is symmetric and follows the standard
+	 * matrix.
+	 */
+	@Test
+	void modeCompatibilityIsSymmetric() {
+		for (Mode a : Mode.values())
+			for (Mode b : Mode.values())
+				assertEquals(a.isCompatibleWith(b), b.isCompatibleWith(a), a + " " + b);
+
+		assertTrue(Mode.IS.isCompatibleWith(Mode.SIX));
+		assertTrue(Mode.IX.isCompatibleWith(Mode.IX));
+		assertFalse(Mode.IX.isCompatibleWith(Mode.S));
+		assertFalse(Mode.SIX.isCompatibleWith(Mode.SIX));
+		assertFalse(Mode.X.isCompatibleWith(Mode.IS));
+		assertEquals(Mode.IS, Mode.S.intention());
+		assertEquals(Mode.IX, Mode.SIX.intention());
+	}
+
+	/**
+	 * Locking a node locks its ancestors in the intention mode, and unlocking
+	 * releases the whole path.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockTakesIntentionModesOnAncestors() throws Exception {
+		HierarchicalLock root = new HierarchicalLock();
+		HierarchicalLock child = root.newChild();
+		HierarchicalLock leaf = child.newChild();
+
+		Locked read = leaf.lockForRead();
+		assertEquals(1, leaf.getHoldCount(Mode.S));
+		assertEquals(1, child.getHoldCount(Mode.IS));
+		assertEquals(1, root.getHoldCount(Mode.IS));
+
+		Locked write = root.newChild().lockForWrite();
+		assertEquals(1, root.getHoldCount(Mode.IX));
+		write.unlock();
+		read.unlock();
+
+		for (HierarchicalLock node : List.of(root, child, leaf))
+			for (Mode mode : Mode.values())
+				assertEquals(0, node.getHoldCount(mode), node + " " + mode);
+	}
+
+	/**
+	 * A reader of one subtree and a writer of a sibling subtree proceed in
+	 * parallel, while a writer of their common ancestor waits, and gives up
+	 * holding nothing.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void siblingSubtreesLockInParallel() throws Exception {
+		HierarchicalLock root = new HierarchicalLock();
+		HierarchicalLock left = root.newChild();
+		HierarchicalLock right = root.newChild();
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread reader = Thread.ofPlatform().start(() -> {
+			try {
+				Locked locked = left.lockForRead();
+				try {
+					reading.countDown();
+					release.await();
+				} finally {
+					locked.unlock();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		try {
+			reading.await();
+
+			right.lockForWrite(0L, TimeUnit.NANOSECONDS).unlock();
+			assertThrows(TimeoutException.class, () -> root.lockForWrite(10L, TimeUnit.MILLISECONDS));
+			assertThrows(TimeoutException.class, () -> left.lockForWrite(10L, TimeUnit.MILLISECONDS));
+			assertEquals(0, root.getHoldCount(Mode.IX));
+			assertEquals(0, root.getHoldCount(Mode.X));
+			assertEquals(1, root.getHoldCount(Mode.IS));
+		} finally {
+			release.countDown();
+		}
+		UpgradableReadWriteLockTest.join(List.of(reader));
+
+		root.lockForWrite(0L, TimeUnit.NANOSECONDS).unlock();
+	}
+
+	/**
+	 * The owner of SIX on a node converts to X once the other readers below it
+	 * have left.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void upgradeConvertsOnceReadersLeave() throws Exception {
+		HierarchicalLock root = new HierarchicalLock();
+		HierarchicalLock leaf = root.newChild();
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread reader = Thread.ofPlatform().start(() -> {
+			try {
+				Locked locked = leaf.lockForRead();
+				try {
+					reading.countDown();
+					release.await();
+				} finally {
+					locked.unlock();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		reading.await();
+
+		Locked upgrade = root.lockForUpgrade();
+		try {
+			assertEquals(1, root.getHoldCount(Mode.SIX));
+			assertThrows(TimeoutException.class, () -> root.lockForWrite(10L, TimeUnit.MILLISECONDS));
+
+			release.countDown();
+			Locked write = root.lockForWrite();
+			assertEquals(1, root.getHoldCount(Mode.X));
+			assertEquals(0, root.getHoldCount(Mode.IS));
+			write.unlock();
+		} finally {
+			release.countDown();
+			upgrade.unlock();
+		}
+		UpgradableReadWriteLockTest.join(List.of(reader));
+		assertEquals(0, root.getHoldCount(Mode.SIX));
+	}
+
+	/**
+	 * The upgrade owner converts to exclusive while holding a child, whose
+	 * intention hold on the node is its own.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void upgradeConvertsPastOwnChildHold() throws Exception {
+		HierarchicalLock root = new HierarchicalLock();
+		HierarchicalLock child = root.newChild();
+
+		Locked upgrade = root.lockForUpgrade();
+		try {
+			Locked read = child.lockForRead();
+			try {
+				assertEquals(1, root.getHoldCount(Mode.IS));
+
+				Locked write = root.lockForWrite(10L, TimeUnit.SECONDS);
+				assertEquals(1, root.getHoldCount(Mode.X));
+				write.unlock();
+			} finally {
+				read.unlock();
+			}
+		} finally {
+			upgrade.unlock();
+		}
+		assertEquals(0, root.getHoldCount(Mode.IS));
+		assertEquals(0, root.getHoldCount(Mode.SIX));
+	}
+
+	/**
+	 * An interrupted acquisition leaves nothing held on the path.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void interruptedLockHoldsNothing() throws Exception {
+		HierarchicalLock root = new HierarchicalLock();
+		HierarchicalLock leaf = root.newChild();
+		AtomicBoolean interrupted = new AtomicBoolean();
+
+		Locked write = leaf.lockForWrite();
+		try {
+			Thread reader = Thread.ofPlatform().start(() -> {
+				try {
+					leaf.lockForRead().unlock();
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			});
+			UpgradableReadWriteLockTest.await(() -> root.getHoldCount(Mode.IS) == 1);
+			reader.interrupt();
+			UpgradableReadWriteLockTest.join(List.of(reader));
+			assertTrue(interrupted.get());
+			assertEquals(0, root.getHoldCount(Mode.IS));
+		} finally {
+			write.unlock();
+		}
+	}
+}
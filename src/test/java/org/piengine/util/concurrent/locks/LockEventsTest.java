@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests of {@link LockEvents}, recorded through JFR.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class LockEventsTest {
+
+	/** The lock event names. */
+	private static final List<String> EVENTS = List.of(
+			"org.piengine.LockContended",
+			"org.piengine.LockHeld",
+			"org.piengine.LockUpgrade");
+
+	/**
+	 * Makes a lock emit each event: a contended read, an upgrade to the write
+	 * lock, and the write and upgrade holds.
+	 *
+	 * @param lock the lock
+	 * @throws Exception the exception
+	 */
+	private static void exercise(UpgradableReadWriteLock lock) throws Exception {
+		Thread reader;
+		lock.writeLock().lock();
+		try {
+			reader = Thread.ofPlatform().start(() -> {
+				lock.readLock().lock();
+				lock.readLock().unlock();
+			});
+			UpgradableReadWriteLockTest.await(lock::hasQueuedThreads);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		UpgradableReadWriteLockTest.join(List.of(reader));
+
+		lock.upgradeLock().lock();
+		try {
+			lock.writeLock().lock();
+			lock.writeLock().unlock();
+		} finally {
+			lock.upgradeLock().unlock();
+		}
+	}
+
+	/**
+	 * Records the events of a named lock.
+	 *
+	 * @param enabled whether the lock events are enabled in the recording
+	 * @param name    the lock name
+	 * @return the events of the lock, as event name and mode
+	 * @throws Exception the exception
+	 */
+	private static Set<String> record(boolean enabled, String name) throws Exception {
+		Path file = Files.createTempFile("lock-events", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				for (String event : EVENTS) {
+					if (enabled)
+						recording.enable(event).withThreshold(Duration.ZERO);
+					else
+						recording.disable(event);
+				}
+				recording.start();
+
+				UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+				lock.setName(name);
+				exercise(lock);
+
+				recording.stop();
+				recording.dump(file);
+			}
+
+			return RecordingFile.readAllEvents(file).stream()
+					.filter(e -> EVENTS.contains(e.getEventType().getName()))
+					.peek(e -> assertEquals(name, e.getString("lock")))
+					.map(LockEventsTest::describe)
+					.collect(Collectors.toSet());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Describes an event by its name and mode.
+	 *
+	 * @param event the event
+	 * @return the description
+	 */
+	private static String describe(RecordedEvent event) {
+		String mode = event.hasField("mode") ? event.getString("mode") : event.getString("from");
+
+		return event.getEventType().getName() + " " + mode;
+	}
+
+	/**
+	 * Enabled events are emitted with the lock name and mode.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void enabledEventsCarryLockNameAndMode() throws Exception {
+		Set<String> events = record(true, "recorded");
+
+		assertTrue(events.contains("org.piengine.LockContended read"), events::toString);
+		assertTrue(events.contains("org.piengine.LockHeld write"), events::toString);
+		assertTrue(events.contains("org.piengine.LockHeld upgrade"), events::toString);
+		assertTrue(events.contains("org.piengine.LockUpgrade upgrade"), events::toString);
+	}
+
+	/**
+	 * Disabled events are neither emitted nor begun.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void disabledEventsAreNotEmitted() throws Exception {
+		assertEquals(Set.of(), record(false, "unrecorded"));
+
+		assertNull(LockEvents.beginContended());
+		assertNull(LockEvents.beginHeld());
+		assertNull(LockEvents.beginUpgrade());
+	}
+}
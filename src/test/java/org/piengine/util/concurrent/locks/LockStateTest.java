@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.UpgradableReadWriteLock.Policy;
+
+/**
+ * Tests of {@link LockState} and {@link UpgradableReadWriteLock#snapshot()}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class LockStateTest {
+
+	/**
+	 * Starts a thread that locks and unlocks a lock.
+	 *
+	 * @param lock the lock
+	 * @return the thread
+	 */
+	private static Thread lockAndUnlock(Lock lock) {
+		return Thread.ofPlatform().start(() -> {
+			lock.lock();
+			lock.unlock();
+		});
+	}
+
+	/**
+	 * An idle lock has nothing held or queued.
+	 */
+	@Test
+	void idleSnapshotIsEmpty() {
+		LockState state = new UpgradableReadWriteLock().snapshot();
+
+		assertEquals(0, state.getReadCount());
+		assertEquals(0, state.getWriteHoldCount());
+		assertFalse(state.isWriteLocked());
+		assertNull(state.getOwner());
+		assertFalse(state.isUpgradeLocked());
+		assertNull(state.getUpgradeOwner());
+		assertFalse(state.isUpgradeInProgress());
+		assertFalse(state.hasWaiters());
+		assertEquals("Write locks = 0, Read locks = 0", state.toString());
+	}
+
+	/**
+	 * The snapshot reports the holders and counts the queued threads per mode.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void snapshotCountsQueuedThreadsPerMode() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(Policy.NON_FAIR);
+		List<Thread> threads = new ArrayList<>();
+
+		lock.writeLock().lock();
+		try {
+			threads.add(lockAndUnlock(lock.readLock()));
+			threads.add(lockAndUnlock(lock.readLock()));
+			threads.add(lockAndUnlock(lock.writeLock()));
+			threads.add(lockAndUnlock(lock.upgradeLock()));
+			UpgradableReadWriteLockTest.await(() -> lock.snapshot().getQueuedReaders() == 2
+					&& lock.snapshot().getQueuedWriters() == 1
+					&& lock.snapshot().getQueuedUpgraders() == 1);
+
+			LockState state = lock.snapshot();
+			assertTrue(state.isWriteLocked());
+			assertEquals(1, state.getWriteHoldCount());
+			assertSame(Thread.currentThread(), state.getOwner());
+			assertTrue(state.hasWaiters());
+			assertEquals("Write locks = 1, Read locks = 0, Owner = " + Thread.currentThread().getName()
+					+ ", Queued readers = 2, Queued writers = 1, Queued upgraders = 1", state.toString());
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		UpgradableReadWriteLockTest.join(threads);
+		assertFalse(lock.snapshot().hasWaiters());
+	}
+
+	/**
+	 * The upgrade lock holder is reported alongside the readers.
+	 */
+	@Test
+	void snapshotReportsUpgradeOwner() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.upgradeLock().lock();
+		try {
+			lock.readLock().lock();
+			try {
+				LockState state = lock.snapshot();
+				assertTrue(state.isUpgradeLocked());
+				assertSame(Thread.currentThread(), state.getUpgradeOwner());
+				assertEquals(1, state.getReadCount());
+				assertFalse(state.isWriteLocked());
+			} finally {
+				lock.readLock().unlock();
+			}
+		} finally {
+			lock.upgradeLock().unlock();
+		}
+	}
+
+	/**
+	 * Refilling an existing state allocates nothing, even with threads queued.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void snapshotIntoExistingStateAllocatesNothing() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(Policy.NON_FAIR);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+		LockState state = new LockState();
+		List<Thread> queued = new ArrayList<>();
+
+		lock.writeLock().lock();
+		try {
+			queued.add(lockAndUnlock(lock.readLock()));
+			queued.add(lockAndUnlock(lock.writeLock()));
+			UpgradableReadWriteLockTest.await(() -> lock.snapshot().getQueuedReaders() == 1
+					&& lock.snapshot().getQueuedWriters() == 1);
+
+			long before = 0L;
+			for (int round = 0; round < 21; round++) {
+				if (round == 20)
+					before = threads.getThreadAllocatedBytes(tid);
+				for (int i = 0; i < 100_000; i++)
+					lock.snapshot(state);
+			}
+			long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+			assertEquals(0L, allocated / 100_000, allocated + " bytes allocated by 100000 snapshots");
+			assertEquals(1, state.getQueuedReaders());
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		UpgradableReadWriteLockTest.join(queued);
+	}
+
+	/**
+	 * The lock's string is built on its snapshot.
+	 */
+	@Test
+	void lockToStringIsBuiltOnSnapshot() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.writeLock().lock();
+		try {
+			assertEquals("UpgradableReadWriteLock [" + lock.snapshot() + "]", lock.toString());
+			assertTrue(lock.toString().contains("Write locks = 1"));
+		} finally {
+			lock.writeLock().unlock();
+		}
+		assertEquals("UpgradableReadWriteLock [Write locks = 0, Read locks = 0]", lock.toString());
+	}
+}
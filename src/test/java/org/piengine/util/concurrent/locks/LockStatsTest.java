@@ -0,0 +1,352 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.Lockable.LockableReadWrite;
+import org.piengine.util.concurrent.locks.LockStats.Mode;
+
+/**
+ * Tests of {@link LockStats} and the statistics collected by
+ * {@link UpgradableReadWriteLock} and {@link Lockable.LockableSupport}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class LockStatsTest {
+
+	/**
+	 * Takes each lock once without waiting, through try lock.
+	 *
+	 * @param lock the lock
+	 */
+	private static void tryLockEachMode(UpgradableReadWriteLock lock) {
+		assertTrue(lock.readLock().tryLock());
+		lock.readLock().unlock();
+		assertTrue(lock.upgradeLock().tryLock());
+		lock.upgradeLock().unlock();
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * Statistics are collected only while enabled, kept while disabled, and
+	 * cleared by a reset.
+	 */
+	@Test
+	void collectionSwitchesPerLockAtRuntime() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		UpgradableReadWriteLock other = new UpgradableReadWriteLock();
+
+		assertFalse(lock.isStatisticsEnabled());
+		tryLockEachMode(lock);
+		assertEquals(0L, lock.getStatistics().getAcquisitions(Mode.READ));
+
+		lock.setStatisticsEnabled(true);
+		tryLockEachMode(lock);
+		tryLockEachMode(other);
+		assertTrue(lock.isStatisticsEnabled());
+		assertFalse(other.isStatisticsEnabled());
+		assertEquals(1L, lock.getStatistics().getAcquisitions(Mode.READ));
+		assertEquals(0L, other.getStatistics().getAcquisitions(Mode.READ));
+
+		lock.setStatisticsEnabled(false);
+		tryLockEachMode(lock);
+		assertEquals(1L, lock.getStatistics().getAcquisitions(Mode.READ));
+
+		lock.setStatisticsEnabled(true);
+		tryLockEachMode(lock);
+		assertEquals(2L, lock.getStatistics().getAcquisitions(Mode.WRITE));
+
+		lock.resetStatistics();
+		assertEquals(0L, lock.getStatistics().getAcquisitions(Mode.WRITE));
+		tryLockEachMode(lock);
+		assertEquals(1L, lock.getStatistics().getAcquisitions(Mode.WRITE));
+	}
+
+	/**
+	 * Acquisitions are counted per mode, and write acquisitions by holders of
+	 * the upgrade or read lock count as upgrades from that mode.
+	 */
+	@Test
+	void countsAcquisitionsAndUpgradesPerMode() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		lock.setName("counted");
+		lock.setStatisticsEnabled(true);
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(lock.readLock().tryLock());
+			lock.readLock().unlock();
+		}
+
+		assertTrue(lock.upgradeLock().tryLock());
+		assertTrue(lock.writeLock().tryLock());
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+		lock.writeLock().unlock();
+		lock.upgradeLock().unlock();
+
+		assertTrue(lock.readLock().tryLock());
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+		lock.readLock().unlock();
+
+		LockStats stats = lock.getStatistics();
+		assertEquals("counted", stats.getName());
+		assertEquals(4L, stats.getAcquisitions(Mode.READ));
+		assertEquals(1L, stats.getAcquisitions(Mode.UPGRADE));
+		assertEquals(3L, stats.getAcquisitions(Mode.WRITE));
+		assertEquals(1L, stats.getUpgrades(Mode.UPGRADE));
+		assertEquals(1L, stats.getUpgrades(Mode.READ));
+		assertEquals(2L, stats.getUpgrades());
+		for (Mode mode : Mode.values()) {
+			assertEquals(0L, stats.getContended(mode));
+			assertEquals(0L, stats.getFailedTryLocks(mode));
+		}
+	}
+
+	/**
+	 * Failed try locks are counted per mode, and an acquisition that waited
+	 * for another thread counts as contended in a higher bucket.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void countsFailedAndContendedAcquisitions() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		lock.setStatisticsEnabled(true);
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread writer = Thread.ofPlatform().start(() -> {
+			lock.writeLock().lock();
+			try {
+				writing.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+		try {
+			writing.await();
+			assertFalse(lock.readLock().tryLock());
+			assertFalse(lock.readLock().tryLock(1L, TimeUnit.MILLISECONDS));
+			assertFalse(lock.writeLock().tryLock(1L, TimeUnit.MILLISECONDS));
+
+			Thread.ofPlatform().start(() -> {
+				try {
+					Thread.sleep(10L);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					release.countDown();
+				}
+			});
+			lock.readLock().lock();
+			lock.readLock().unlock();
+		} finally {
+			release.countDown();
+		}
+		UpgradableReadWriteLockTest.join(List.of(writer));
+
+		LockStats stats = lock.getStatistics();
+		assertEquals(2L, stats.getFailedTryLocks(Mode.READ));
+		assertEquals(1L, stats.getFailedTryLocks(Mode.WRITE));
+		assertEquals(0L, stats.getFailedTryLocks(Mode.UPGRADE));
+		assertEquals(1L, stats.getAcquisitions(Mode.READ));
+		assertEquals(1L, stats.getContended(Mode.READ));
+		assertTrue(stats.getWaitNanos(Mode.READ) >= TimeUnit.MILLISECONDS.toNanos(1L));
+
+		long[] histogram = stats.getWaitHistogram(Mode.READ);
+		assertEquals(LockStats.BUCKETS, histogram.length);
+		assertEquals(0L, histogram[0]);
+		assertEquals(1L, histogram[LockStats.bucket(stats.getWaitNanos(Mode.READ))]);
+	}
+
+	/**
+	 * Each bucket holds the waits from the bound of the one before, up to its
+	 * own exclusive bound, doubling from {@link LockStats#CONTENDED_NANOS}.
+	 */
+	@Test
+	void histogramBucketsDoubleFromContendedBound() {
+		assertEquals(0, LockStats.bucket(-1L));
+		assertEquals(0, LockStats.bucket(0L));
+		assertEquals(LockStats.CONTENDED_NANOS, LockStats.getUpperBound(0));
+		assertEquals(Long.MAX_VALUE, LockStats.getUpperBound(LockStats.BUCKETS - 1));
+		assertEquals(LockStats.BUCKETS - 1, LockStats.bucket(Long.MAX_VALUE));
+
+		for (int i = 0; i < LockStats.BUCKETS - 1; i++) {
+			long bound = LockStats.getUpperBound(i);
+			assertEquals(i, LockStats.bucket(bound - 1L));
+			assertEquals(i + 1, LockStats.bucket(bound));
+			if (i > 0)
+				assertEquals(2L * LockStats.getUpperBound(i - 1), bound);
+		}
+	}
+
+	/**
+	 * The exporter receives every counter and histogram of each mode, under
+	 * the lock name, with upgrades only from the modes that can upgrade.
+	 */
+	@Test
+	void exportsEveryMetricPerMode() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		lock.setName("exported");
+		lock.setStatisticsEnabled(true);
+		tryLockEachMode(lock);
+		assertTrue(lock.upgradeLock().tryLock());
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+		lock.upgradeLock().unlock();
+
+		Map<String, Long> counters = new HashMap<>();
+		Map<Mode, long[]> histograms = new HashMap<>();
+		lock.getStatistics().exportTo(new LockStats.Exporter() {
+
+			@Override
+			public void counter(String name, String metric, Mode mode, long value) {
+				assertEquals("exported", name);
+				assertNull(counters.put(metric + "." + mode, value));
+			}
+
+			@Override
+			public void histogram(String name, String metric, Mode mode, long[] upperBounds, long[] counts,
+					long sum) {
+				assertEquals("exported", name);
+				assertEquals(LockStats.METRIC_WAIT_TIME, metric);
+				assertEquals(LockStats.BUCKETS, upperBounds.length);
+				assertEquals(LockStats.BUCKETS, counts.length);
+				assertEquals(LockStats.getUpperBound(1), upperBounds[1]);
+				assertNull(histograms.put(mode, counts));
+			}
+		});
+
+		assertEquals(3 * 3 + 2, counters.size());
+		assertEquals(3, histograms.size());
+		assertEquals(1L, counters.get(LockStats.METRIC_ACQUISITIONS + "." + Mode.READ));
+		assertEquals(2L, counters.get(LockStats.METRIC_ACQUISITIONS + "." + Mode.UPGRADE));
+		assertEquals(2L, counters.get(LockStats.METRIC_ACQUISITIONS + "." + Mode.WRITE));
+		assertEquals(1L, counters.get(LockStats.METRIC_UPGRADES + "." + Mode.UPGRADE));
+		assertEquals(0L, counters.get(LockStats.METRIC_UPGRADES + "." + Mode.READ));
+		assertFalse(counters.containsKey(LockStats.METRIC_UPGRADES + "." + Mode.WRITE));
+		assertEquals(2L, histograms.get(Mode.WRITE)[0]);
+	}
+
+	/**
+	 * A lockable over a lock that collects no statistics of its own counts
+	 * the acquisitions made through it.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockableCountsForPlainLock() throws Exception {
+		ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+		LockableReadWrite lockable = new LockableReadWrite(rwLock);
+
+		lockable.lockForRead().unlock();
+		lockable.setStatisticsEnabled(true);
+		lockable.lockForRead().unlock();
+		lockable.lockForWrite().unlock();
+
+		rwLock.writeLock().lock();
+		try {
+			assertFalse(CompactUpgradableReadWriteLockTest.onOtherThread(() -> {
+				try {
+					lockable.lockForRead(1L, TimeUnit.MILLISECONDS).unlock();
+					return true;
+				} catch (TimeoutException e) {
+					return false;
+				}
+			}));
+		} finally {
+			rwLock.writeLock().unlock();
+		}
+
+		LockStats stats = lockable.getStatistics();
+		assertEquals(1L, stats.getAcquisitions(Mode.READ));
+		assertEquals(1L, stats.getAcquisitions(Mode.WRITE));
+		assertEquals(1L, stats.getFailedTryLocks(Mode.READ));
+
+		lockable.setStatisticsEnabled(false);
+		lockable.lockForRead().unlock();
+		assertFalse(lockable.isStatisticsEnabled());
+		assertEquals(1L, lockable.getStatistics().getAcquisitions(Mode.READ));
+	}
+
+	/**
+	 * With collection disabled, or after it is switched off, acquisitions
+	 * allocate nothing.
+	 */
+	@Test
+	void disabledStatisticsAllocateNothing() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		assertZeroAllocation(lock);
+
+		lock.setStatisticsEnabled(true);
+		lock.setStatisticsEnabled(false);
+		assertZeroAllocation(lock);
+		assertEquals(0L, lock.getStatistics().getAcquisitions(Mode.READ));
+	}
+
+	/**
+	 * Asserts that read, upgrade and write acquisitions allocate nothing.
+	 *
+	 * @param lock the lock
+	 */
+	private static void assertZeroAllocation(UpgradableReadWriteLock lock) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+
+		long before = 0L;
+		for (int round = 0; round < 21; round++) {
+			if (round == 20)
+				before = threads.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < 100_000; i++) {
+				lock.readLock().lock();
+				lock.readLock().unlock();
+				lock.upgradeLock().lock();
+				lock.upgradeLock().unlock();
+				lock.writeLock().lock();
+				lock.writeLock().unlock();
+			}
+		}
+		long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+		assertEquals(0L, allocated / 100_000, allocated + " bytes allocated by 100000 rounds");
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link LockStripes}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class LockStripesTest {
+
+	/**
+	 * Finds a key mapping to a stripe.
+	 *
+	 * @param stripes the stripes
+	 * @param stripe  the stripe index
+	 * @param after   the key to search after
+	 * @return the key
+	 */
+	private static long keyOf(LockStripes stripes, int stripe, long after) {
+		long key = after + 1;
+		while (stripes.stripeIndex(key) != stripe)
+			key++;
+
+		return key;
+	}
+
+	/**
+	 * The stripe count is rounded up to a power of two, and every key maps to
+	 * the same stripe each time.
+	 */
+	@Test
+	void keysMapToStableStripes() {
+		LockStripes stripes = new LockStripes(5);
+
+		assertEquals(8, stripes.getStripeCount());
+		for (long key = 0; key < 1000; key++) {
+			int index = stripes.stripeIndex(key);
+			assertTrue(index >= 0 && index < 8);
+			assertEquals(index, stripes.stripeIndex(key));
+			assertSame(stripes.forKey(key), stripes.forKey(key));
+		}
+		assertThrows(IllegalArgumentException.class, () -> new LockStripes(0));
+	}
+
+	/**
+	 * Keys sharing a stripe lock it once, and closing the result twice releases
+	 * it once.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockAllLocksSharedStripeOnceAndReleasesOnce() throws Exception {
+		LockStripes stripes = new LockStripes(4);
+		long a = keyOf(stripes, 1, 0);
+		long b = keyOf(stripes, 1, a);
+		long c = keyOf(stripes, 2, 0);
+
+		Locked all = stripes.lockAllForRead(a, b, c);
+		assertEquals(1, stripes.getLock(1).getReadHoldCount());
+		assertEquals(1, stripes.getLock(2).getReadHoldCount());
+
+		stripes.getLock(2).readLock().lock();
+		all.close();
+		all.close();
+		assertEquals(0, stripes.getLock(1).getReadHoldCount());
+		assertEquals(1, stripes.getLock(2).getReadHoldCount());
+		stripes.getLock(2).readLock().unlock();
+	}
+
+	/**
+	 * A stripe that fails to release does not keep the others held, and its
+	 * failure is rethrown.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockAllReleasesPastFailedUnlock() throws Exception {
+		LockStripes stripes = new LockStripes(4);
+		long[] keys = { keyOf(stripes, 0, 0), keyOf(stripes, 1, 0), keyOf(stripes, 2, 0) };
+
+		Locked all = stripes.lockAllForWrite(keys);
+		stripes.getLock(1).writeLock().unlock();
+
+		assertThrows(IllegalMonitorStateException.class, all::unlock);
+		for (int i = 0; i < 3; i++)
+			assertFalse(stripes.getLock(i).snapshot().isWriteLocked(), "stripe " + i);
+	}
+
+	/**
+	 * An interrupted bulk acquisition holds none of the stripes.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void interruptedLockAllHoldsNothing() throws Exception {
+		LockStripes stripes = new LockStripes(4);
+		long first = keyOf(stripes, 0, 0);
+		long busy = keyOf(stripes, 3, 0);
+		AtomicBoolean interrupted = new AtomicBoolean();
+
+		Locked held = stripes.forKey(busy).lockForWrite();
+		try {
+			Thread locker = Thread.ofPlatform().start(() -> {
+				try {
+					stripes.lockAllForWrite(first, busy).unlock();
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			});
+			UpgradableReadWriteLockTest.await(() -> stripes.getLock(3).hasQueuedThreads());
+			locker.interrupt();
+			UpgradableReadWriteLockTest.join(List.of(locker));
+			assertTrue(interrupted.get());
+			assertFalse(stripes.getLock(0).snapshot().isWriteLocked());
+			assertEquals(1, stripes.getContentionCount(3));
+		} finally {
+			held.unlock();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.LockStats.Mode;
+import org.piengine.util.concurrent.locks.LockWatchdog.Report;
+
+/**
+ * Tests of {@link LockWatchdog}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class LockWatchdogTest {
+
+	/** The threshold of the watchdogs expected to report. */
+	private static final long THRESHOLD_MILLIS = 20L;
+
+	/** How long a hold expected to be reported lasts, several thresholds. */
+	private static final long HOLD_MILLIS = 10 * THRESHOLD_MILLIS;
+
+	/**
+	 * A write hold longer than the threshold is reported once, with its owner
+	 * and the owner's stack.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void longWriteHoldIsReportedOnceWithStack() throws Exception {
+		List<Report> reports = new CopyOnWriteArrayList<>();
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		lock.setName("watched");
+
+		try (LockWatchdog watchdog = new LockWatchdog(THRESHOLD_MILLIS, TimeUnit.MILLISECONDS, reports::add)) {
+			watchdog.register(lock);
+
+			lock.writeLock().lock();
+			try {
+				UpgradableReadWriteLockTest.await(() -> !reports.isEmpty());
+				Thread.sleep(HOLD_MILLIS);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		assertEquals(1, reports.size());
+		Report report = reports.get(0);
+		assertEquals("watched", report.getLockName());
+		assertEquals(Mode.WRITE, report.getMode());
+		assertSame(Thread.currentThread(), report.getOwner());
+		assertTrue(report.getHeld(TimeUnit.MILLISECONDS) >= THRESHOLD_MILLIS);
+		assertTrue(Arrays.stream(report.getStackTrace())
+				.anyMatch(e -> e.getMethodName().equals("longWriteHoldIsReportedOnceWithStack")));
+	}
+
+	/**
+	 * Holds shorter than the threshold are not reported, however many.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void shortHoldsAreNotReported() throws Exception {
+		List<Report> reports = new CopyOnWriteArrayList<>();
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		try (LockWatchdog watchdog = new LockWatchdog(HOLD_MILLIS, TimeUnit.MILLISECONDS, reports::add)) {
+			watchdog.register(lock);
+
+			long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2 * HOLD_MILLIS);
+			while (System.nanoTime() < end) {
+				lock.upgradeLock().lock();
+				lock.writeLock().lock();
+				lock.writeLock().unlock();
+				lock.upgradeLock().unlock();
+			}
+		}
+
+		assertEquals(List.of(), reports);
+	}
+
+	/**
+	 * An unregistered lock is not reported, and a closed watchdog lets its
+	 * locks go and refuses new ones.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void unregisterAndCloseStopWatching() throws Exception {
+		List<Report> reports = new CopyOnWriteArrayList<>();
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		LockWatchdog watchdog = new LockWatchdog(THRESHOLD_MILLIS, TimeUnit.MILLISECONDS, reports::add);
+
+		watchdog.register(lock);
+		watchdog.register(lock);
+		assertThrows(IllegalStateException.class,
+				() -> new LockWatchdog(1L, TimeUnit.SECONDS, reports::add).register(lock));
+
+		watchdog.unregister(lock);
+		assertNull(lock.getWatch());
+		lock.writeLock().lock();
+		try {
+			Thread.sleep(HOLD_MILLIS);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		assertEquals(List.of(), reports);
+
+		watchdog.register(lock);
+		watchdog.close();
+		UpgradableReadWriteLockTest.await(() -> lock.getWatch() == null);
+		assertThrows(IllegalStateException.class, () -> watchdog.register(lock));
+
+		try (LockWatchdog next = new LockWatchdog(THRESHOLD_MILLIS, TimeUnit.MILLISECONDS, reports::add)) {
+			next.register(lock);
+			next.unregister(lock);
+		}
+		assertEquals(List.of(), reports);
+	}
+
+	/**
+	 * An asynchronous hold belongs to no thread and is reported without an
+	 * owner or a stack.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void asyncHoldIsReportedWithoutOwner() throws Exception {
+		List<Report> reports = new CopyOnWriteArrayList<>();
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		try (LockWatchdog watchdog = new LockWatchdog(THRESHOLD_MILLIS, TimeUnit.MILLISECONDS, reports::add)) {
+			watchdog.register(lock);
+
+			Locked hold = lock.writeLockAsync(null).get(10L, TimeUnit.SECONDS);
+			try {
+				UpgradableReadWriteLockTest.await(() -> !reports.isEmpty());
+			} finally {
+				hold.unlock();
+			}
+		}
+
+		Report report = reports.get(0);
+		assertEquals(Mode.WRITE, report.getMode());
+		assertNull(report.getOwner());
+		assertEquals(0, report.getStackTrace().length);
+		assertTrue(report.getLockName().startsWith("UpgradableReadWriteLock@"));
+	}
+
+	/**
+	 * A threshold too long to add to a time is clamped, and holds are not
+	 * reported early.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void saturatedThresholdIsClampedAndNotReportedEarly() throws Exception {
+		List<Report> reports = new CopyOnWriteArrayList<>();
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		try (LockWatchdog watchdog = new LockWatchdog(Long.MAX_VALUE, TimeUnit.DAYS, reports::add)) {
+			long threshold = watchdog.getThreshold(TimeUnit.NANOSECONDS);
+			assertTrue(threshold > TimeUnit.DAYS.toNanos(365L));
+			assertTrue(threshold <= Long.MAX_VALUE / 2);
+
+			watchdog.register(lock);
+			lock.writeLock().lock();
+			try {
+				Thread.sleep(HOLD_MILLIS);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		assertEquals(List.of(), reports);
+	}
+}
@@ -0,0 +1,520 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.RcuReference;
+import org.piengine.util.concurrent.locks.HierarchicalLock.Mode;
+import org.piengine.util.concurrent.locks.Lockable.LockRequest;
+import org.piengine.util.concurrent.locks.Lockable.LockableReadWrite;
+
+/**
+ * Tests of {@link Lockable}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class LockableTest {
+
+	/**
+	 * A lockable implemented outside this package, over a reentrant read-write
+	 * lock, relying on the interface defaults where it can.
+	 */
+	static class PlainLockable implements Lockable<Locked, Locked> {
+
+		/** The lock. */
+		final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+		/**
+		 * Read lock.
+		 *
+		 * @return the lock
+		 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+		 */
+		@Override
+		public Lock readLock() {
+			return rwLock.readLock();
+		}
+
+		/**
+		 * Write lock.
+		 *
+		 * @return the lock
+		 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+		 */
+		@Override
+		public Lock writeLock() {
+			return rwLock.writeLock();
+		}
+
+		/**
+		 * Lock for read.
+		 *
+		 * @return the locked
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead()
+		 */
+		@Override
+		public Locked lockForRead() {
+			rwLock.readLock().lock();
+			return rwLock.readLock()::unlock;
+		}
+
+		/**
+		 * Lock for read.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForRead(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForRead(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!rwLock.readLock().tryLock(timeout, unit))
+				throw new TimeoutException();
+			return rwLock.readLock()::unlock;
+		}
+
+		/**
+		 * Lock for write.
+		 *
+		 * @return the locked
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite()
+		 */
+		@Override
+		public Locked lockForWrite() {
+			rwLock.writeLock().lock();
+			return rwLock.writeLock()::unlock;
+		}
+
+		/**
+		 * Lock for write.
+		 *
+		 * @param timeout the timeout
+		 * @param unit    the unit
+		 * @return the locked
+		 * @throws InterruptedException the interrupted exception
+		 * @throws TimeoutException     the timeout exception
+		 * @see org.piengine.util.concurrent.locks.Lockable#lockForWrite(long,
+		 *      java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Locked lockForWrite(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!rwLock.writeLock().tryLock(timeout, unit))
+				throw new TimeoutException();
+			return rwLock.writeLock()::unlock;
+		}
+	}
+
+	/**
+	 * A lockable without optimistic reads reads under the read lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void readOptimisticallyFallsBackToReadLock() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+
+		assertEquals(0L, lockable.tryOptimisticRead());
+		assertFalse(lockable.validate(1L));
+		assertEquals(1, (int) lockable.readOptimistically(lockable.rwLock::getReadHoldCount));
+		assertEquals(0, lockable.rwLock.getReadHoldCount());
+	}
+
+	/**
+	 * A lockable without upgrade support takes the write lock for an upgrade.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockForUpgradeDefaultsToWriteLock() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+
+		Locked upgrade = lockable.lockForUpgrade();
+		assertTrue(lockable.rwLock.isWriteLockedByCurrentThread());
+		Locked write = lockable.lockForWrite();
+		assertEquals(2, lockable.rwLock.getWriteHoldCount());
+		write.unlock();
+		upgrade.unlock();
+		assertFalse(lockable.rwLock.isWriteLocked());
+
+		lockable.lockForUpgrade(0L, TimeUnit.NANOSECONDS).unlock();
+		assertFalse(lockable.rwLock.isWriteLocked());
+	}
+
+	/**
+	 * A lockable over an upgradable lock reads without locking when no writer
+	 * intervenes.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void readOptimisticallyWithoutWriterTakesNoLock() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		LockableReadWrite lockable = new LockableReadWrite(lock);
+		AtomicInteger runs = new AtomicInteger();
+
+		assertEquals(0, (int) lockable.readOptimistically(() -> {
+			runs.incrementAndGet();
+			return lock.getReadHoldCount();
+		}));
+		assertEquals(1, runs.get());
+	}
+
+	/**
+	 * Bulk locking merges requests for the same lockable, the write request
+	 * winning, and closing the result twice releases each lock once.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockAllMergesRequestsAndReleasesOnce() throws Exception {
+		ReentrantReadWriteLock a = new ReentrantReadWriteLock();
+		ReentrantReadWriteLock b = new ReentrantReadWriteLock();
+		LockableReadWrite lockableA = new LockableReadWrite(a);
+		LockableReadWrite lockableB = new LockableReadWrite(b);
+
+		Locked all = Lockable.lockAll(
+				LockRequest.read(lockableA),
+				LockRequest.read(lockableB),
+				LockRequest.write(lockableA));
+		assertTrue(a.isWriteLockedByCurrentThread());
+		assertEquals(0, a.getReadHoldCount());
+		assertEquals(1, b.getReadHoldCount());
+
+		// A second read hold keeps b read locked across a double close
+		b.readLock().lock();
+		all.close();
+		all.close();
+		assertFalse(a.isWriteLocked());
+		assertEquals(1, b.getReadHoldCount());
+		b.readLock().unlock();
+	}
+
+	/**
+	 * A lock that fails to release does not keep the others held, and its
+	 * failure is rethrown.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockAllReleasesPastFailedUnlock() throws Exception {
+		List<ReentrantReadWriteLock> locks = new ArrayList<>();
+		List<LockRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+			locks.add(lock);
+			requests.add(LockRequest.write(new LockableReadWrite(lock)));
+		}
+
+		Locked all = Lockable.lockAll(requests.toArray(LockRequest[]::new));
+		ReentrantReadWriteLock failing = locks.get(1);
+		failing.writeLock().unlock();
+
+		assertThrows(IllegalMonitorStateException.class, all::close);
+		for (ReentrantReadWriteLock lock : locks)
+			assertFalse(lock.isWriteLocked());
+
+		all.close();
+	}
+
+	/**
+	 * Threads bulk locking the same lockables in opposite orders do not
+	 * deadlock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void lockAllInOppositeOrdersDoesNotDeadlock() throws Exception {
+		LockableReadWrite a = new LockableReadWrite();
+		LockableReadWrite b = new LockableReadWrite();
+		int[] counter = new int[1];
+
+		Thread forward = Thread.ofPlatform().start(() -> increment(counter,
+				LockRequest.write(a), LockRequest.write(b)));
+		Thread backward = Thread.ofPlatform().start(() -> increment(counter,
+				LockRequest.write(b), LockRequest.write(a)));
+		UpgradableReadWriteLockTest.join(List.of(forward, backward));
+
+		assertEquals(2 * 10_000, counter[0]);
+	}
+
+	/**
+	 * Increments a counter under a bulk lock, many times.
+	 *
+	 * @param counter  the counter
+	 * @param requests the lock requests
+	 */
+	private static void increment(int[] counter, LockRequest... requests) {
+		try {
+			for (int i = 0; i < 10_000; i++) {
+				Locked all = Lockable.lockAll(requests);
+				try {
+					counter[0]++;
+				} finally {
+					all.unlock();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The functional accessors run under the lock they name and release it.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void accessorsRunUnderTheirLock() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		LockableReadWrite lockable = new LockableReadWrite(lock);
+
+		assertEquals(1, (int) lockable.read(locked -> lock.getReadHoldCount()));
+		assertEquals(0, lock.getReadHoldCount());
+
+		AtomicBoolean written = new AtomicBoolean();
+		lockable.write(locked -> written.set(lock.isWriteLockedByCurrentThread()));
+		assertTrue(written.get());
+		assertFalse(lock.snapshot().isWriteLocked());
+
+		written.set(false);
+		assertFalse(lockable.readThenMaybeWrite(locked -> {
+			assertTrue(lock.isUpgradeLockHeldByCurrentThread());
+			return lock.getReadHoldCount() == 0;
+		}, locked -> written.set(true)));
+		assertFalse(written.get());
+
+		assertTrue(lockable.readThenMaybeWrite(locked -> true,
+				locked -> written.set(lock.isWriteLockedByCurrentThread())));
+		assertTrue(written.get());
+		assertFalse(lock.snapshot().isUpgradeLocked());
+		assertFalse(lock.snapshot().isWriteLocked());
+	}
+
+	/**
+	 * A reader or writer that throws releases the lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void throwingAccessorReleasesLock() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		LockableReadWrite lockable = new LockableReadWrite(lock);
+
+		assertThrows(IllegalStateException.class, () -> lockable.read(locked -> {
+			throw new IllegalStateException();
+		}));
+		assertThrows(IllegalStateException.class, () -> lockable.readThenMaybeWrite(locked -> true, locked -> {
+			throw new IllegalStateException();
+		}));
+		assertEquals(0, lock.getReadHoldCount());
+		assertFalse(lock.snapshot().isUpgradeLocked());
+		assertFalse(lock.snapshot().isWriteLocked());
+	}
+
+	/**
+	 * An accessor interrupted while waiting keeps waiting and re-asserts the
+	 * interrupt once it holds the lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void interruptedAccessorReassertsInterrupt() throws Exception {
+		HierarchicalLock root = new HierarchicalLock();
+		HierarchicalLock leaf = root.newChild();
+		AtomicBoolean read = new AtomicBoolean();
+		AtomicBoolean interrupted = new AtomicBoolean();
+
+		Locked write = leaf.lockForWrite();
+		Thread reader;
+		try {
+			reader = Thread.ofPlatform().start(() -> {
+				read.set(leaf.read(locked -> leaf.getHoldCount(Mode.S) == 1));
+				interrupted.set(Thread.currentThread().isInterrupted());
+			});
+			UpgradableReadWriteLockTest.await(() -> root.getHoldCount(Mode.IS) == 1);
+			reader.interrupt();
+			UpgradableReadWriteLockTest.await(() -> !reader.isInterrupted()
+					&& reader.getState() == Thread.State.WAITING
+					&& root.getHoldCount(Mode.IS) == 1);
+		} finally {
+			write.unlock();
+		}
+
+		UpgradableReadWriteLockTest.join(List.of(reader));
+		assertTrue(read.get());
+		assertTrue(interrupted.get());
+		assertEquals(0, root.getHoldCount(Mode.IS));
+	}
+
+	/**
+	 * The functional accessors allocate nothing per call over the lockables
+	 * that hand out preallocated tokens.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void accessorsAllocateNothing() throws Exception {
+		assertAccessorsAllocateNothing(new LockableReadWrite(new UpgradableReadWriteLock()));
+		assertAccessorsAllocateNothing(new LockStripes(4).forKey(1L));
+		assertAccessorsAllocateNothing(new HierarchicalLock().newChild());
+		assertAccessorsAllocateNothing(new RcuReference<>("value").lockable());
+	}
+
+	/**
+	 * Asserts that reading, writing and conditionally writing allocate nothing.
+	 *
+	 * @param lockable the lockable
+	 */
+	private static void assertAccessorsAllocateNothing(Lockable<? extends Locked, ? extends Locked> lockable) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+		Function<Locked, Locked> reader = locked -> locked;
+		Consumer<Locked> writer = locked -> {};
+		Predicate<Locked> needsWrite = locked -> true;
+
+		long before = 0L;
+		for (int round = 0; round < 21; round++) {
+			if (round == 20)
+				before = threads.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < 100_000; i++) {
+				lockable.read(reader);
+				lockable.write(writer);
+				lockable.readThenMaybeWrite(needsWrite, writer);
+			}
+		}
+		long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+		assertEquals(0L, allocated / 100_000, allocated + " bytes allocated by 100000 rounds over " + lockable);
+	}
+
+	/**
+	 * The write token of a lockable over an upgradable lock downgrades to its
+	 * read token, which is then unlocked instead.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void writeTokenDowngradesToReadToken() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		LockableReadWrite lockable = new LockableReadWrite(lock);
+
+		Locked read = lockable.lockForWrite().downgrade();
+		assertFalse(lock.isWriteLockedByCurrentThread());
+		assertEquals(1, lock.getReadHoldCount());
+		assertFalse(CompactUpgradableReadWriteLockTest.onOtherThread(() -> lock.writeLock().tryLock()));
+		read.unlock();
+		assertEquals(0, lock.snapshot().getReadCount());
+
+		Locked write = lockable.lockForWrite();
+		lock.writeLock().lock();
+		try {
+			assertThrows(IllegalMonitorStateException.class, write::downgrade);
+		} finally {
+			lock.writeLock().unlock();
+			write.unlock();
+		}
+		assertFalse(lock.snapshot().isWriteLocked());
+	}
+
+	/**
+	 * Tokens that cannot downgrade refuse to, and still hold their lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void unsupportedDowngradeKeepsHold() throws Exception {
+		ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+		LockableReadWrite lockable = new LockableReadWrite(rwLock);
+
+		Locked write = lockable.lockForWrite();
+		try {
+			assertThrows(UnsupportedOperationException.class, write::downgrade);
+			assertTrue(rwLock.isWriteLockedByCurrentThread());
+		} finally {
+			write.unlock();
+		}
+
+		Locked read = new LockableReadWrite(new UpgradableReadWriteLock()).lockForRead();
+		try {
+			assertThrows(UnsupportedOperationException.class, read::downgrade);
+		} finally {
+			read.unlock();
+		}
+
+		PlainLockable plain = new PlainLockable();
+		Locked plainWrite = plain.lockForWrite();
+		try {
+			assertThrows(UnsupportedOperationException.class, plainWrite::downgrade);
+			assertTrue(plain.rwLock.isWriteLockedByCurrentThread());
+		} finally {
+			plainWrite.unlock();
+		}
+	}
+
+	/**
+	 * A lockable without detachable holds keeps the acquiring virtual thread
+	 * as owner until any thread releases the asynchronous hold.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void asyncHoldFallsBackToParkedOwner() throws Exception {
+		PlainLockable lockable = new PlainLockable();
+
+		lockable.rwLock.writeLock().lock();
+		CompletableFuture<Locked> future = lockable.lockForReadAsync();
+		assertFalse(future.isDone());
+		lockable.rwLock.writeLock().unlock();
+
+		Locked locked = future.get(10L, TimeUnit.SECONDS);
+		assertEquals(1, lockable.rwLock.getReadLockCount());
+		assertEquals(0, lockable.rwLock.getReadHoldCount());
+		assertFalse(lockable.rwLock.writeLock().tryLock());
+
+		locked.unlock();
+		UpgradableReadWriteLockTest.await(() -> lockable.rwLock.getReadLockCount() == 0);
+		assertThrows(IllegalMonitorStateException.class, locked::unlock);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.piengine.util.concurrent.locks.SeqLockable.ReadScope;
+
+/**
+ * Tests of {@link SeqLockable}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class SeqLockableTest {
+
+	/**
+	 * A timed read scope gives up while a writer stays active, and opens once
+	 * it is done.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void timedReadScopeHonoursTimeout() throws Exception {
+		SeqLockable seq = new SeqLockable();
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread writer = Thread.ofPlatform().start(() -> {
+			try {
+				Locked locked = seq.lockForWrite();
+				try {
+					writing.countDown();
+					release.await();
+				} finally {
+					locked.unlock();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		try {
+			writing.await();
+			assertThrows(TimeoutException.class, () -> seq.lockForRead(0L, TimeUnit.NANOSECONDS));
+			assertThrows(TimeoutException.class, () -> seq.lockForRead(10L, TimeUnit.MILLISECONDS));
+		} finally {
+			release.countDown();
+		}
+		UpgradableReadWriteLockTest.join(List.of(writer));
+
+		ReadScope scope = seq.lockForRead(0L, TimeUnit.NANOSECONDS);
+		assertTrue(scope.isValid());
+		scope.unlock();
+	}
+
+	/**
+	 * Readers retrying their scope never see a torn pair of values.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void readScopeRetriesTornReads() throws Exception {
+		SeqLockable seq = new SeqLockable();
+		long[] pair = new long[2];
+		AtomicBoolean done = new AtomicBoolean();
+
+		Thread writer = Thread.ofPlatform().start(() -> {
+			try {
+				for (long i = 1; i <= 20_000; i++) {
+					Locked locked = seq.lockForWrite();
+					try {
+						pair[0] = i;
+						pair[1] = -i;
+					} finally {
+						locked.unlock();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				done.set(true);
+			}
+		});
+
+		while (!done.get()) {
+			long a, b;
+			ReadScope scope = seq.lockForRead();
+			try {
+				do {
+					a = pair[0];
+					b = pair[1];
+				} while (scope.retry());
+			} finally {
+				scope.unlock();
+			}
+			assertEquals(a, -b);
+		}
+		UpgradableReadWriteLockTest.join(List.of(writer));
+	}
+}
@@ -0,0 +1,1104 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.piengine.util.concurrent.locks.UpgradableReadWriteLock.Policy;
+
+/**
+ * Tests of {@link UpgradableReadWriteLock}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class UpgradableReadWriteLockTest {
+
+	/** How long to wait for other threads to reach a state. */
+	private static final long AWAIT_MILLIS = 10_000L;
+
+	/** How long an acquisition that must not wait may take at most. */
+	private static final long PROMPT_MILLIS = 100L;
+
+	/**
+	 * Waits for a condition to become true, failing after {@link #AWAIT_MILLIS}.
+	 *
+	 * @param condition the condition
+	 * @throws InterruptedException the interrupted exception
+	 */
+	static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Timed out waiting for condition");
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Joins threads, failing if any is still running after
+	 * {@link #AWAIT_MILLIS}.
+	 *
+	 * @param threads the threads
+	 * @throws InterruptedException the interrupted exception
+	 */
+	static void join(List<Thread> threads) throws InterruptedException {
+		for (Thread t : threads) {
+			t.join(AWAIT_MILLIS);
+			assertFalse(t.isAlive(), t.getName() + " did not finish");
+		}
+	}
+
+	/**
+	 * Under the phase-fair policy, ends a write phase with gated readers and
+	 * lets an upgrade lock owner convert to the write lock before those readers
+	 * get in, so that they stay pending while it holds the write lock.
+	 *
+	 * @param lock    a phase-fair lock
+	 * @param release released to let the upgrade lock owner unlock
+	 * @param threads receives the started threads
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private static void holdWithPendingPhaseReaders(UpgradableReadWriteLock lock, CountDownLatch release,
+			List<Thread> threads) throws InterruptedException {
+		lock.writeLock().lock();
+		for (int i = 0; i < 3; i++) {
+			threads.add(Thread.ofPlatform().start(() -> {
+				lock.readLock().lock();
+				lock.readLock().unlock();
+			}));
+		}
+		await(() -> lock.snapshot().getQueuedReaders() >= 3);
+
+		Thread upgrader = Thread.ofPlatform().start(() -> {
+			lock.upgradeLock().lock();
+			lock.writeLock().lock();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.writeLock().unlock();
+				lock.upgradeLock().unlock();
+			}
+		});
+		threads.add(upgrader);
+		await(() -> lock.snapshot().getQueuedUpgraders() == 1);
+
+		lock.writeLock().unlock();
+		await(() -> lock.snapshot().getOwner() == upgrader);
+	}
+
+	/**
+	 * A timed write lock gives up on time under the phase-fair policy, rather
+	 * than waiting for the readers of the last write phase.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void phaseFairTimedWriteLockHonoursTimeout() throws Exception {
+		for (int run = 0; run < 10; run++) {
+			UpgradableReadWriteLock lock = new UpgradableReadWriteLock(Policy.PHASE_FAIR);
+			CountDownLatch release = new CountDownLatch(1);
+			List<Thread> threads = new ArrayList<>();
+			try {
+				holdWithPendingPhaseReaders(lock, release, threads);
+
+				long start = System.nanoTime();
+				assertFalse(lock.writeLock().tryLock(0L, TimeUnit.NANOSECONDS));
+				assertFalse(lock.writeLock().tryLock(10L, TimeUnit.MILLISECONDS));
+				assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(PROMPT_MILLIS));
+			} finally {
+				release.countDown();
+			}
+			join(threads);
+			assertTrue(lock.writeLock().tryLock());
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * An interruptible write lock gives up once interrupted under the
+	 * phase-fair policy, rather than waiting for the readers of the last write
+	 * phase.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void phaseFairInterruptibleWriteLockHonoursInterrupt() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(Policy.PHASE_FAIR);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		AtomicBoolean interrupted = new AtomicBoolean();
+		try {
+			holdWithPendingPhaseReaders(lock, release, threads);
+
+			Thread writer = Thread.ofPlatform().start(() -> {
+				try {
+					lock.writeLock().lockInterruptibly();
+					lock.writeLock().unlock();
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			});
+			Thread.sleep(20);
+			writer.interrupt();
+			writer.join(AWAIT_MILLIS / 10);
+			assertFalse(writer.isAlive(), "writer ignored the interrupt");
+			assertTrue(interrupted.get());
+		} finally {
+			release.countDown();
+		}
+		join(threads);
+	}
+
+	/**
+	 * Biased readers, which bypass the lock state, still exclude writers and
+	 * are counted as holds of their own thread only.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void biasedReadersExcludeWriters() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(true);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread reader = Thread.ofPlatform().start(() -> {
+			lock.readLock().lock();
+			lock.readLock().lock();
+			try {
+				locked.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.readLock().unlock();
+				lock.readLock().unlock();
+			}
+		});
+		try {
+			locked.await();
+			assertEquals(0, lock.getReadHoldCount());
+			assertFalse(lock.writeLock().tryLock());
+			assertFalse(lock.writeLock().tryLock(10L, TimeUnit.MILLISECONDS));
+		} finally {
+			release.countDown();
+		}
+		join(List.of(reader));
+
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+		lock.readLock().lock();
+		assertEquals(1, lock.getReadHoldCount());
+		lock.readLock().unlock();
+	}
+
+	/**
+	 * Uncontended acquire and release pairs allocate nothing once warmed up,
+	 * for nested reads as for writes.
+	 *
+	 * @param readerBiased whether the lock is reader biased
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void acquireReleaseAllocatesNothing(boolean readerBiased) {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(readerBiased);
+		Runnable pairs = () -> {
+			for (int i = 0; i < 100_000; i++) {
+				lock.readLock().lock();
+				lock.readLock().lock();
+				lock.readLock().unlock();
+				lock.readLock().unlock();
+				lock.writeLock().lock();
+				lock.writeLock().unlock();
+			}
+		};
+
+		for (int i = 0; i < 20; i++)
+			pairs.run();
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+		long before = threads.getThreadAllocatedBytes(tid);
+		pairs.run();
+		long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+		assertEquals(0L, allocated / 100_000, allocated + " bytes allocated by 100000 pairs");
+	}
+
+	/**
+	 * The state word counts reentrant write holds and the read holds of all
+	 * threads.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void stateCountsHolds() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.writeLock().lock();
+		lock.writeLock().lock();
+		lock.writeLock().lock();
+		assertEquals(3, lock.getWriteHoldCount());
+		assertEquals(3, lock.snapshot().getWriteHoldCount());
+		assertSame(Thread.currentThread(), lock.snapshot().getOwner());
+		for (int i = 0; i < 3; i++)
+			lock.writeLock().unlock();
+		assertFalse(lock.snapshot().isWriteLocked());
+
+		CountDownLatch reading = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> readers = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			readers.add(Thread.ofPlatform().start(() -> {
+				lock.readLock().lock();
+				try {
+					reading.countDown();
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					lock.readLock().unlock();
+				}
+			}));
+		}
+		try {
+			reading.await();
+			lock.readLock().lock();
+			assertEquals(1, lock.getReadHoldCount());
+			assertEquals(3, lock.snapshot().getReadCount());
+			lock.readLock().unlock();
+		} finally {
+			release.countDown();
+		}
+		join(readers);
+		assertEquals(0, lock.snapshot().getReadCount());
+	}
+
+	/**
+	 * A sole reader gets the write lock without giving up its read hold, while
+	 * another reader keeps writers out but lets an upgrader in.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void writeLockWaitsForOtherReadersOnly() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.readLock().lock();
+		assertTrue(lock.writeLock().tryLock());
+		assertEquals(1, lock.getReadHoldCount());
+		assertTrue(lock.isWriteLockedByCurrentThread());
+		lock.writeLock().unlock();
+		lock.readLock().unlock();
+
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread reader = Thread.ofPlatform().start(() -> {
+			lock.readLock().lock();
+			try {
+				reading.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.readLock().unlock();
+			}
+		});
+		try {
+			reading.await();
+			assertFalse(lock.writeLock().tryLock());
+			assertTrue(lock.upgradeLock().tryLock());
+			assertFalse(lock.writeLock().tryLock(10L, TimeUnit.MILLISECONDS));
+			assertTrue(lock.snapshot().isUpgradeLocked());
+		} finally {
+			release.countDown();
+		}
+		lock.writeLock().lock();
+		assertTrue(lock.isWriteLockedByCurrentThread());
+		assertTrue(lock.isUpgradeLockHeldByCurrentThread());
+		lock.writeLock().unlock();
+		lock.upgradeLock().unlock();
+		join(List.of(reader));
+
+		assertFalse(lock.snapshot().isUpgradeLocked());
+		assertFalse(lock.hasQueuedThreads());
+	}
+
+	/**
+	 * A reader waiting in a timed upgrade, keeping its read hold, is woken as
+	 * soon as the other readers leave, and two such readers waiting for each
+	 * other both time out still holding their read locks.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void timedReaderUpgradeWaitsOnlyForOtherReaders() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		AtomicBoolean upgraded = new AtomicBoolean();
+
+		lock.readLock().lock();
+		Thread upgrader = Thread.ofPlatform().start(() -> {
+			lock.readLock().lock();
+			try {
+				if (lock.writeLock().tryLock(AWAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+					upgraded.set(lock.getReadHoldCount() == 1);
+					lock.writeLock().unlock();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.readLock().unlock();
+			}
+		});
+		try {
+			await(lock::hasQueuedThreads);
+		} finally {
+			lock.readLock().unlock();
+		}
+		join(List.of(upgrader));
+		assertTrue(upgraded.get());
+
+		CountDownLatch reading = new CountDownLatch(2);
+		CountDownLatch attempted = new CountDownLatch(2);
+		AtomicInteger timedOut = new AtomicInteger();
+		List<Thread> upgraders = new ArrayList<>();
+		for (int i = 0; i < 2; i++)
+			upgraders.add(Thread.ofPlatform().start(() -> {
+				lock.readLock().lock();
+				try {
+					reading.countDown();
+					reading.await();
+					if (lock.writeLock().tryLock(PROMPT_MILLIS, TimeUnit.MILLISECONDS))
+						lock.writeLock().unlock();
+					else if (lock.getReadHoldCount() == 1)
+						timedOut.incrementAndGet();
+					attempted.countDown();
+					attempted.await(AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					lock.readLock().unlock();
+				}
+			}));
+		join(upgraders);
+		assertEquals(2, timedOut.get());
+		assertEquals(0, lock.snapshot().getReadCount());
+		assertFalse(lock.hasQueuedThreads());
+	}
+
+	/**
+	 * A nested read release costs the same, and allocates nothing, however
+	 * many other readers hold the lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void readReleaseAmongManyReadersAllocatesNothing() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		CountDownLatch reading = new CountDownLatch(64);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> readers = new ArrayList<>();
+
+		try {
+			for (int i = 0; i < 64; i++)
+				readers.add(Thread.ofPlatform().start(() -> {
+					lock.readLock().lock();
+					try {
+						reading.countDown();
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						lock.readLock().unlock();
+					}
+				}));
+			reading.await();
+			lock.readLock().lock();
+
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+					.getThreadMXBean();
+			long tid = Thread.currentThread().threadId();
+			long before = 0L;
+			for (int round = 0; round < 21; round++) {
+				if (round == 20)
+					before = threads.getThreadAllocatedBytes(tid);
+				for (int i = 0; i < 100_000; i++) {
+					lock.readLock().lock();
+					lock.readLock().unlock();
+				}
+			}
+			long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+			lock.readLock().unlock();
+
+			assertEquals(0L, allocated / 100_000, allocated + " bytes allocated by 100000 pairs");
+			assertEquals(64, lock.snapshot().getReadCount());
+		} finally {
+			release.countDown();
+		}
+		join(readers);
+	}
+
+	/**
+	 * A stream of overlapping readers does not starve an upgrade lock owner
+	 * converting to the write lock, and readers resume once a timed conversion
+	 * gives up.
+	 *
+	 * @param policy the policy
+	 * @throws Exception the exception
+	 */
+	@ParameterizedTest
+	@EnumSource(Policy.class)
+	void cyclingReadersDoNotStarveConversion(Policy policy) throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(policy);
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicInteger reads = new AtomicInteger();
+		List<Thread> readers = new ArrayList<>();
+
+		for (int t = 0; t < 4; t++) {
+			readers.add(Thread.ofPlatform().start(() -> {
+				while (!stop.get()) {
+					lock.readLock().lock();
+					try {
+						reads.incrementAndGet();
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						return;
+					} finally {
+						lock.readLock().unlock();
+					}
+				}
+			}));
+		}
+		try {
+			await(() -> reads.get() > 100);
+
+			lock.upgradeLock().lock();
+			try {
+				assertTrue(lock.writeLock().tryLock(2L, TimeUnit.SECONDS), "conversion starved");
+				lock.writeLock().unlock();
+			} finally {
+				lock.upgradeLock().unlock();
+			}
+
+			// A reader held back by a conversion that times out is let in again
+			CountDownLatch reading = new CountDownLatch(1);
+			Thread holder = Thread.ofPlatform().start(() -> {
+				lock.readLock().lock();
+				try {
+					reading.countDown();
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					lock.readLock().unlock();
+				}
+			});
+			readers.add(holder);
+			reading.await();
+			lock.upgradeLock().lock();
+			try {
+				assertFalse(lock.writeLock().tryLock(20L, TimeUnit.MILLISECONDS));
+			} finally {
+				lock.upgradeLock().unlock();
+			}
+			int before = reads.get();
+			await(() -> reads.get() > before + 10);
+		} finally {
+			stop.set(true);
+		}
+		join(readers);
+	}
+
+	/**
+	 * Readers, upgraders and writers contending for the lock never see a write
+	 * in progress, no write is lost and all waiters are woken, under every
+	 * policy.
+	 *
+	 * @param policy the policy
+	 * @throws Exception the exception
+	 */
+	@ParameterizedTest
+	@EnumSource(Policy.class)
+	void contendedLockExcludesWriters(Policy policy) throws Exception {
+		for (boolean readerBiased : new boolean[] { false, true }) {
+			UpgradableReadWriteLock lock = new UpgradableReadWriteLock(policy, readerBiased);
+			long[] pair = new long[2];
+			AtomicInteger torn = new AtomicInteger();
+			List<Thread> threads = new ArrayList<>();
+
+			for (int t = 0; t < 8; t++) {
+				int role = t % 3;
+				threads.add(Thread.ofPlatform().start(() -> {
+					for (int i = 0; i < 10_000; i++) {
+						if (role == 0) {
+							lock.readLock().lock();
+							if (pair[0] != -pair[1])
+								torn.incrementAndGet();
+							lock.readLock().unlock();
+						} else if (role == 1) {
+							lock.upgradeLock().lock();
+							long next = pair[0] + 1;
+							lock.writeLock().lock();
+							pair[0] = next;
+							pair[1] = -next;
+							lock.writeLock().unlock();
+							lock.upgradeLock().unlock();
+						} else {
+							lock.writeLock().lock();
+							pair[0]++;
+							pair[1] = -pair[0];
+							lock.writeLock().unlock();
+						}
+					}
+				}));
+			}
+			join(threads);
+
+			assertEquals(0, torn.get(), lock.toString());
+			assertEquals(10_000 * 5, pair[0], lock.toString());
+			LockState state = lock.snapshot();
+			assertEquals(0, state.getReadCount());
+			assertFalse(state.isWriteLocked());
+			assertFalse(state.isUpgradeLocked());
+			assertFalse(state.hasWaiters());
+		}
+	}
+
+	/**
+	 * An upgrade lock owner converting while holding reads of its own is woken
+	 * once only its own holds remain, however the other readers leave.
+	 *
+	 * @param policy the policy
+	 * @throws Exception the exception
+	 */
+	@ParameterizedTest
+	@EnumSource(Policy.class)
+	void converterWithOwnReadHoldsIsWoken(Policy policy) throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(policy);
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicBoolean converted = new AtomicBoolean();
+
+		Thread reader = Thread.ofPlatform().start(() -> {
+			lock.readLock().lock();
+			lock.readLock().lock();
+			try {
+				reading.countDown();
+				release.await();
+				lock.readLock().unlock();
+				Thread.sleep(10L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.readLock().unlock();
+			}
+		});
+		reading.await();
+
+		Thread converter = Thread.ofPlatform().start(() -> {
+			lock.upgradeLock().lock();
+			lock.readLock().lock();
+			lock.readLock().lock();
+			try {
+				lock.writeLock().lock();
+				converted.set(lock.getReadHoldCount() == 2);
+				lock.writeLock().unlock();
+			} finally {
+				lock.readLock().unlock();
+				lock.readLock().unlock();
+				lock.upgradeLock().unlock();
+			}
+		});
+		try {
+			await(() -> lock.snapshot().isUpgradeInProgress());
+		} finally {
+			release.countDown();
+		}
+
+		join(List.of(reader, converter));
+		assertTrue(converted.get());
+		assertFalse(lock.snapshot().hasWaiters());
+	}
+
+	/**
+	 * Timed readers racing write releases are all admitted well before they
+	 * time out.
+	 *
+	 * @param policy the policy
+	 * @throws Exception the exception
+	 */
+	@ParameterizedTest
+	@EnumSource(Policy.class)
+	void timedReadersRacingWriteReleasesAreWoken(Policy policy) throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(policy);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicInteger timedOut = new AtomicInteger();
+		List<Thread> readers = new ArrayList<>();
+
+		Thread writer = Thread.ofPlatform().start(() -> {
+			while (!done.get()) {
+				lock.writeLock().lock();
+				Thread.onSpinWait();
+				lock.writeLock().unlock();
+			}
+		});
+		try {
+			for (int i = 0; i < 4; i++)
+				readers.add(Thread.ofPlatform().start(() -> {
+					try {
+						for (int j = 0; j < 2_000; j++) {
+							if (!lock.readLock().tryLock(AWAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+								timedOut.incrementAndGet();
+								return;
+							}
+							lock.readLock().unlock();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}));
+			join(readers);
+		} finally {
+			done.set(true);
+		}
+		join(List.of(writer));
+
+		assertEquals(0, timedOut.get());
+		assertEquals(0, lock.snapshot().getReadCount());
+		assertFalse(lock.snapshot().hasWaiters());
+	}
+
+	/**
+	 * Gets a busy check that reports busy a number of times, then free.
+	 *
+	 * @param times the number of times to report busy
+	 * @return the busy check
+	 */
+	private static BooleanSupplier busyFor(int times) {
+		AtomicInteger checks = new AtomicInteger();
+
+		return () -> checks.incrementAndGet() <= times;
+	}
+
+	/**
+	 * The spin budget shrinks to its floor while spins fail, grows back while
+	 * they succeed late, and virtual threads only yield a few times.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void spinBudgetAdaptsToOutcomes() throws Exception {
+		assumeTrue(Runtime.getRuntime().availableProcessors() > 1, "spinning needs several processors");
+		AdaptiveSpinner spinner = new AdaptiveSpinner();
+
+		assertTrue(spinner.spinWhile(busyFor(0)));
+		assertEquals(0L, spinner.stats().getSpins());
+
+		int initial = spinner.stats().getBudget();
+		assertFalse(spinner.spinWhile(() -> true));
+		SpinStats stats = spinner.stats();
+		assertEquals(1L, stats.getSpins());
+		assertEquals(0L, stats.getSuccesses());
+		assertEquals(1L, stats.getParks());
+		assertEquals(initial, stats.getIterations());
+		assertTrue(stats.getBudget() < initial);
+
+		for (int i = 0; i < 100; i++)
+			spinner.spinWhile(() -> true);
+		int floor = spinner.stats().getBudget();
+		assertTrue(floor > 0);
+		assertFalse(spinner.spinWhile(() -> true));
+		assertEquals(floor, spinner.stats().getBudget());
+
+		assertTrue(spinner.spinWhile(busyFor(floor)));
+		assertTrue(spinner.stats().getBudget() > floor);
+		assertEquals(1L, spinner.stats().getSuccesses());
+
+		int budget = spinner.stats().getBudget();
+		AtomicBoolean yielded = new AtomicBoolean();
+		Thread virtual = Thread.ofVirtual().start(() -> yielded.set(!spinner.spinWhile(() -> true)));
+		join(List.of(virtual));
+		assertTrue(yielded.get());
+		assertEquals(budget, spinner.stats().getBudget());
+		assertTrue(spinner.stats().getIterations() - stats.getIterations() < 101L * initial);
+	}
+
+	/**
+	 * A writer waiting for a short write hold spins first, and writers that
+	 * went on to queue under the fair policy are still granted in order.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void contendedWritersSpinThenQueueInOrder() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(Policy.FAIR);
+		List<Integer> order = new ArrayList<>();
+		List<Thread> writers = new ArrayList<>();
+
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < 3; i++) {
+				int id = i;
+				writers.add(Thread.ofPlatform().start(() -> {
+					lock.writeLock().lock();
+					try {
+						order.add(id);
+					} finally {
+						lock.writeLock().unlock();
+					}
+				}));
+				await(() -> lock.snapshot().getQueuedWriters() == id + 1);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		join(writers);
+
+		assertEquals(List.of(0, 1, 2), order);
+		SpinStats stats = lock.getSpinStats();
+		if (Runtime.getRuntime().availableProcessors() > 1)
+			assertEquals(3L, stats.getSpins());
+		assertEquals(stats.getSpins(), stats.getSuccesses() + stats.getParks());
+	}
+
+	/**
+	 * A writer waiting on a condition gives up its write, upgrade and read
+	 * holds, and gets all of them back once signalled.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void conditionAwaitReleasesAndRestoresAllHolds() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		Condition changed = lock.writeLock().newCondition();
+		CountDownLatch waiting = new CountDownLatch(1);
+		AtomicBoolean restored = new AtomicBoolean();
+
+		Thread waiter = Thread.ofPlatform().start(() -> {
+			lock.upgradeLock().lock();
+			lock.readLock().lock();
+			lock.writeLock().lock();
+			lock.writeLock().lock();
+			try {
+				waiting.countDown();
+				changed.awaitUninterruptibly();
+				restored.set(lock.getWriteHoldCount() == 2
+						&& lock.getReadHoldCount() == 1
+						&& lock.isUpgradeLockHeldByCurrentThread());
+			} finally {
+				lock.writeLock().unlock();
+				lock.writeLock().unlock();
+				lock.readLock().unlock();
+				lock.upgradeLock().unlock();
+			}
+		});
+		waiting.await();
+
+		// Granted only once the waiter has given up all it holds
+		lock.upgradeLock().lock();
+		lock.writeLock().lock();
+		assertEquals(1, lock.snapshot().getWriteHoldCount());
+		changed.signal();
+		lock.writeLock().unlock();
+		lock.upgradeLock().unlock();
+		join(List.of(waiter));
+
+		assertTrue(restored.get());
+		assertFalse(lock.snapshot().isWriteLocked());
+		assertFalse(lock.snapshot().isUpgradeLocked());
+		assertEquals(0, lock.snapshot().getReadCount());
+	}
+
+	/**
+	 * A timed condition wait returns once out of time, holding the write lock
+	 * again.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void conditionAwaitNanosTimesOut() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		Condition never = lock.writeLock().newCondition();
+
+		lock.writeLock().lock();
+		try {
+			assertTrue(never.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10L)) <= 0L);
+			assertFalse(never.await(1L, TimeUnit.MILLISECONDS));
+			assertTrue(lock.isWriteLockedByCurrentThread());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Only the write lock supports conditions, and only its owner may wait.
+	 */
+	@Test
+	void conditionRequiresWriteLock() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		assertThrows(UnsupportedOperationException.class, () -> lock.readLock().newCondition());
+		assertThrows(UnsupportedOperationException.class, () -> lock.upgradeLock().newCondition());
+		assertThrows(IllegalMonitorStateException.class, () -> lock.writeLock().newCondition().await());
+	}
+
+	/**
+	 * Many virtual threads holding the read lock at once leave nothing behind
+	 * once they are done: the lock keeps no reference to any of them, and the
+	 * heap returns to where it started.
+	 *
+	 * @param readerBiased whether the lock is reader biased
+	 * @throws Exception the exception
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void virtualThreadReadersLeaveNoState(boolean readerBiased) throws Exception {
+		final int readers = 100_000;
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock(Policy.PHASE_FAIR, readerBiased);
+		CountDownLatch reading = new CountDownLatch(readers);
+		CountDownLatch release = new CountDownLatch(1);
+		List<WeakReference<Thread>> threads = new ArrayList<>(readers);
+
+		long baseline = usedHeap();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < readers; i++) {
+				executor.submit(() -> {
+					synchronized (threads) {
+						threads.add(new WeakReference<>(Thread.currentThread()));
+					}
+					lock.readLock().lock();
+					try {
+						reading.countDown();
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						lock.readLock().unlock();
+					}
+				});
+			}
+			try {
+				reading.await();
+				assertFalse(lock.writeLock().tryLock());
+			} finally {
+				release.countDown();
+			}
+		}
+
+		assertEquals(0, lock.snapshot().getReadCount());
+		for (int i = 0; i < 10 && threads.stream().anyMatch(t -> t.get() != null); i++)
+			usedHeap();
+		assertEquals(0L, threads.stream().filter(t -> t.get() != null).count(), "reader threads retained");
+		assertTrue(usedHeap() - baseline < 32L << 20, "heap not back to baseline");
+
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * Collects garbage and gets the heap in use.
+	 *
+	 * @return the used heap, in bytes
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private static long usedHeap() throws InterruptedException {
+		System.gc();
+		Thread.sleep(10);
+
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Downgrading turns the write hold into a read hold that lets other readers
+	 * in and keeps writers out until released.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void downgradeToReadHoldBlocksWriters() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.writeLock().lock();
+		lock.downgrade();
+		assertFalse(lock.isWriteLockedByCurrentThread());
+		assertEquals(1, lock.getReadHoldCount());
+		assertTrue(CompactUpgradableReadWriteLockTest.onOtherThread(() -> {
+			boolean read = lock.readLock().tryLock();
+			if (read)
+				lock.readLock().unlock();
+			return read;
+		}));
+
+		AtomicBoolean written = new AtomicBoolean();
+		Thread writer = Thread.ofPlatform().start(() -> {
+			lock.writeLock().lock();
+			written.set(true);
+			lock.writeLock().unlock();
+		});
+		try {
+			await(lock::hasQueuedThreads);
+			Thread.sleep(PROMPT_MILLIS);
+			assertFalse(written.get());
+		} finally {
+			lock.readLock().unlock();
+		}
+		join(List.of(writer));
+		assertTrue(written.get());
+	}
+
+	/**
+	 * Downgrading while holding the upgrade lock keeps it, so the thread may
+	 * write again while other threads only read.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void downgradeKeepsUpgradeLock() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.upgradeLock().lock();
+		lock.writeLock().lock();
+		lock.downgrade();
+		assertTrue(lock.isUpgradeLockHeldByCurrentThread());
+		assertFalse(lock.isWriteLockedByCurrentThread());
+		assertEquals(1, lock.getReadHoldCount());
+		assertFalse(CompactUpgradableReadWriteLockTest.onOtherThread(() -> lock.upgradeLock().tryLock()));
+		assertFalse(CompactUpgradableReadWriteLockTest.onOtherThread(() -> lock.writeLock().tryLock()));
+
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+		lock.readLock().unlock();
+		lock.upgradeLock().unlock();
+		assertFalse(lock.snapshot().isUpgradeLocked());
+		assertEquals(0, lock.snapshot().getReadCount());
+	}
+
+	/**
+	 * Only a single write hold of the current thread downgrades, and a rejected
+	 * downgrade changes nothing.
+	 */
+	@Test
+	void downgradeRequiresSingleWriteHold() {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		assertThrows(IllegalMonitorStateException.class, lock::downgrade);
+
+		lock.writeLock().lock();
+		lock.writeLock().lock();
+		assertThrows(IllegalMonitorStateException.class, lock::downgrade);
+		assertEquals(2, lock.getWriteHoldCount());
+		assertEquals(0, lock.getReadHoldCount());
+		lock.writeLock().unlock();
+		lock.downgrade();
+		assertEquals(1, lock.getReadHoldCount());
+		lock.readLock().unlock();
+		assertFalse(lock.snapshot().isWriteLocked());
+		assertEquals(0, lock.snapshot().getReadCount());
+	}
+
+	/**
+	 * An asynchronous read hold belongs to no thread and may be released by
+	 * another thread, exactly once.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void asyncReadHoldIsReleasedByAnyThread() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		CompletableFuture<Locked> future = lock.readLockAsync(null);
+		assertTrue(future.isDone());
+		Locked locked = future.get();
+		assertEquals(0, lock.getReadHoldCount());
+		assertFalse(lock.writeLock().tryLock());
+
+		Thread releaser = Thread.ofPlatform().start(() -> {
+			try {
+				locked.unlock();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		join(List.of(releaser));
+		assertThrows(IllegalMonitorStateException.class, locked::unlock);
+
+		assertTrue(lock.writeLock().tryLock());
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * A contended asynchronous write acquisition completes once the lock is
+	 * free, without blocking the caller, and its hold leaves the lock free for
+	 * any thread once released.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void asyncWriteHoldCompletesOnceGranted() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+
+		lock.readLock().lock();
+		CompletableFuture<Locked> future = lock.writeLockAsync(null);
+		Thread.sleep(10);
+		assertFalse(future.isDone());
+		lock.readLock().unlock();
+
+		Locked locked = future.get(AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+		assertTrue(lock.snapshot().isWriteLocked());
+		assertFalse(lock.isWriteLockedByCurrentThread());
+		assertFalse(CompactUpgradableReadWriteLockTest.onOtherThread(() -> lock.readLock().tryLock()));
+
+		locked.unlock();
+		assertFalse(lock.snapshot().isWriteLocked());
+		assertTrue(CompactUpgradableReadWriteLockTest.onOtherThread(() -> {
+			boolean write = lock.writeLock().tryLock();
+			if (write)
+				lock.writeLock().unlock();
+			return write;
+		}));
+	}
+}
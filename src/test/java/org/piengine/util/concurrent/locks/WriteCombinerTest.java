@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2025 Sly Technologies Inc
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.piengine.util.concurrent.locks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link WriteCombiner}.
+ *
+ * @author Mark Bednarczyk [mark@slytechs.com]
+ * @author Sly Technologies Inc.
+ */
+class WriteCombinerTest {
+
+	/**
+	 * Holds the write lock on another thread until released.
+	 *
+	 * @param lock    the lock
+	 * @param release released to unlock
+	 * @return the holding thread
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private static Thread holdWriteLock(UpgradableReadWriteLock lock, CountDownLatch release)
+			throws InterruptedException {
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread holder = Thread.ofPlatform().start(() -> {
+			lock.writeLock().lock();
+			try {
+				locked.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+		locked.await();
+
+		return holder;
+	}
+
+	/**
+	 * A submission applies at once while the write lock is free.
+	 */
+	@Test
+	void submitAppliesWhileLockIsFree() {
+		List<Integer> target = new ArrayList<>();
+		WriteCombiner<List<Integer>> combiner = new WriteCombiner<>(new UpgradableReadWriteLock(), target);
+
+		WriteCombiner<List<Integer>>.Ticket ticket = combiner.submit(l -> l.add(1));
+		assertTrue(ticket.isDone());
+		ticket.join();
+		combiner.apply(l -> l.add(2));
+
+		assertEquals(List.of(1, 2), target);
+		assertEquals(2, combiner.getMutationCount());
+		assertSame(target, combiner.getTarget());
+	}
+
+	/**
+	 * Mutations submitted while the write lock is busy are applied in one batch,
+	 * in submission order, by whichever thread joins first.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void pendingMutationsApplyInOneBatchInOrder() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		List<Integer> target = new ArrayList<>();
+		WriteCombiner<List<Integer>> combiner = new WriteCombiner<>(lock, target);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread holder = holdWriteLock(lock, release);
+		List<WriteCombiner<List<Integer>>.Ticket> tickets = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			int value = i;
+			tickets.add(combiner.submit(l -> l.add(value)));
+		}
+		assertFalse(tickets.get(0).isDone());
+		release.countDown();
+		UpgradableReadWriteLockTest.join(List.of(holder));
+
+		tickets.get(99).join();
+		for (WriteCombiner<List<Integer>>.Ticket ticket : tickets)
+			assertTrue(ticket.isDone());
+		for (int i = 0; i < 100; i++)
+			assertEquals(i, target.get(i));
+		assertEquals(1, combiner.getBatchCount());
+		assertEquals(100, combiner.getMutationCount());
+	}
+
+	/**
+	 * A mutation that throws fails its own ticket only.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void throwingMutationFailsOnlyItsTicket() throws Exception {
+		UpgradableReadWriteLock lock = new UpgradableReadWriteLock();
+		List<Integer> target = new ArrayList<>();
+		WriteCombiner<List<Integer>> combiner = new WriteCombiner<>(lock, target);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread holder = holdWriteLock(lock, release);
+		WriteCombiner<List<Integer>>.Ticket before = combiner.submit(l -> l.add(1));
+		WriteCombiner<List<Integer>>.Ticket failing = combiner.submit(l -> {
+			throw new IllegalStateException("boom");
+		});
+		WriteCombiner<List<Integer>>.Ticket after = combiner.submit(l -> l.add(2));
+		release.countDown();
+		UpgradableReadWriteLockTest.join(List.of(holder));
+
+		after.join();
+		before.join();
+		CompletionException e = assertThrows(CompletionException.class, failing::join);
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+		assertTrue(failing.isCompletedExceptionally());
+		assertFalse(after.isCompletedExceptionally());
+		assertEquals(List.of(1, 2), target);
+	}
+
+	/**
+	 * A mutation may apply another mutation, which the combining thread applies
+	 * under its reentrant write lock.
+	 */
+	@Test
+	void recursiveApplyCompletes() {
+		List<Integer> target = new ArrayList<>();
+		WriteCombiner<List<Integer>> combiner = new WriteCombiner<>(new UpgradableReadWriteLock(), target);
+
+		combiner.apply(l -> {
+			l.add(1);
+			combiner.apply(m -> m.add(2));
+			l.add(3);
+		});
+
+		assertEquals(List.of(1, 2, 3), target);
+		assertEquals(2, combiner.getMutationCount());
+	}
+
+	/**
+	 * Under heavy contention, no mutation is lost.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void contendedApplyLosesNothing() throws Exception {
+		long[] counter = new long[1];
+		WriteCombiner<long[]> combiner = new WriteCombiner<>(new UpgradableReadWriteLock(), counter);
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < 64; t++) {
+			threads.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < 1000; i++)
+					combiner.apply(c -> c[0]++);
+			}));
+		}
+		UpgradableReadWriteLockTest.join(threads);
+
+		assertEquals(64_000, counter[0]);
+		assertEquals(64_000, combiner.getMutationCount());
+		assertTrue(combiner.getBatchCount() <= combiner.getMutationCount());
+	}
+
+	/**
+	 * A combining thread lets go after a bounded number of batches, even while
+	 * other threads keep submitting, leaving the rest to them.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void combiningIsBounded() throws Exception {
+		long[] counter = new long[1];
+		WriteCombiner<long[]> combiner = new WriteCombiner<>(new UpgradableReadWriteLock(), counter);
+		AtomicBoolean stop = new AtomicBoolean();
+
+		try (ExecutorService other = Executors.newSingleThreadExecutor()) {
+			// Each application has another thread submit the next, which finds the lock busy
+			Consumer<long[]> chain = new Consumer<>() {
+				@Override
+				public void accept(long[] c) {
+					c[0]++;
+					if (stop.get())
+						return;
+					try {
+						other.submit(() -> combiner.submit(this)).get();
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+
+			Thread caller = Thread.ofPlatform().start(() -> combiner.submit(chain));
+			caller.join(TimeUnit.SECONDS.toMillis(5));
+			stop.set(true);
+			assertFalse(caller.isAlive(), "caller kept combining");
+			assertTrue(counter[0] < 100, "caller applied " + counter[0] + " batches");
+
+			combiner.apply(c -> {});
+		}
+	}
+}